@@ -0,0 +1,140 @@
+package org.daodao.elasticsearch.benchmark;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.service.BulkResult;
+import org.daodao.elasticsearch.service.BulkSettings;
+import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.daodao.elasticsearch.service.SampleDataCodec;
+import org.daodao.elasticsearch.util.Constants;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares bulk indexing with and without request compression.
+ *
+ * <p>First the bulk bodies of the generated documents are built and gzip compressed locally,
+ * which gives the compression ratio and the CPU cost per megabyte without any network involved.
+ * Then the same documents are indexed into the configured cluster once with compression "none"
+ * and once with "gzip", reporting throughput and the CPU time of this process.
+ *
+ * <p>Not a JMH benchmark but built with them by the jmh profile; run with {@code java -cp target/benchmarks.jar
+ * org.daodao.elasticsearch.benchmark.CompressionBenchmark <documents>}. The cluster part is skipped if no cluster is reachable.
+ */
+public class CompressionBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(CompressionBenchmark.class);
+
+    private static final int DEFAULT_DOCUMENTS = 100_000;
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet",
+            "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DOCUMENTS;
+        List<SampleData> data = generate(documents);
+
+        measureLocally(data);
+        for (String mode : new String[]{"none", "gzip"}) {
+            measureIngest(data, mode);
+        }
+    }
+
+    private static List<SampleData> generate(int documents) {
+        Random random = new Random(42);
+        List<SampleData> data = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            StringBuilder description = new StringBuilder();
+            for (int w = 0; w < 12; w++) {
+                description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            data.add(new SampleData("item-" + i, description.toString().trim()));
+        }
+        return data;
+    }
+
+    /**
+     * Build bulk bodies the way they go on the wire and compress them
+     */
+    private static void measureLocally(List<SampleData> data) throws IOException {
+        SampleDataCodec codec = new SampleDataCodec();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        byte[] action = ("{\"index\":{\"_index\":\"" + Constants.SAMPLE_INDEX_NAME + "\"}}\n").getBytes(StandardCharsets.UTF_8);
+
+        long rawBytes = 0;
+        long compressedBytes = 0;
+        long compressCpuNanos = 0;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int start = 0; start < data.size(); start += Constants.DEFAULT_BULK_ACTIONS) {
+            body.reset();
+            for (SampleData document : data.subList(start, Math.min(start + Constants.DEFAULT_BULK_ACTIONS, data.size()))) {
+                body.write(action);
+                BytesReference source = codec.encode(document);
+                source.writeTo(body);
+                body.write('\n');
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.size() / 4);
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                body.writeTo(gzip);
+            }
+            compressCpuNanos += threads.getCurrentThreadCpuTime() - cpuStart;
+            rawBytes += body.size();
+            compressedBytes += compressed.size();
+        }
+
+        double rawMegabytes = rawBytes / (1024.0 * 1024.0);
+        log.info("Bulk bodies: {} MB raw, {} MB gzip, ratio {}, gzip costs {} ms CPU ({} MB/s per core)",
+                format(rawMegabytes), format(compressedBytes / (1024.0 * 1024.0)),
+                format((double) rawBytes / compressedBytes), compressCpuNanos / 1_000_000,
+                format(rawMegabytes / (compressCpuNanos / 1e9)));
+    }
+
+    /**
+     * Index the documents with the given compression mode
+     */
+    private static void measureIngest(List<SampleData> data, String mode) {
+        System.setProperty(Constants.ELASTICSEARCH_COMPRESSION, mode);
+        ElasticsearchService service = new ElasticsearchService();
+        String indexName = "compression_benchmark_" + mode;
+        try {
+            if (service.indexExists(indexName)) {
+                service.deleteIndex(indexName);
+            }
+            service.createIndex(indexName);
+
+            com.sun.management.OperatingSystemMXBean os =
+                    (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long cpuStart = os.getProcessCpuTime();
+            long start = System.nanoTime();
+            BulkResult result = service.insertDocuments(indexName, data, new BulkSettings());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long cpuMillis = (os.getProcessCpuTime() - cpuStart) / 1_000_000;
+
+            log.info("Compression {}: {} documents in {} s, {} docs/s, {} ms process CPU, {} failed",
+                    mode, result.getIndexedCount(), format(seconds), format(result.getIndexedCount() / seconds),
+                    cpuMillis, result.getFailedCount());
+            service.deleteIndex(indexName);
+        } catch (IOException | RuntimeException e) {
+            // The client reports refused connections as ElasticsearchException
+            log.warn("Skipping ingest with compression {}, cluster not available: {}", mode, e.getMessage());
+        } finally {
+            service.close();
+        }
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
@@ -0,0 +1,101 @@
+package org.daodao.elasticsearch.benchmark;
+
+import org.daodao.elasticsearch.config.ElasticsearchClientConfig;
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.service.BulkResult;
+import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.daodao.elasticsearch.standin.StandInServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole client round trips against an in-process {@link StandInServer}: building the request,
+ * the HTTP exchange over loopback and parsing the response. The server answers without injected
+ * latency, so the numbers are the client side overhead a real cluster would add its own time to,
+ * plus the stand-in's own work in the same process.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=logback-benchmark.xml", "-Dsun.net.httpserver.nodelay=true"})
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    private static final String INDEX = "benchmark";
+    private static final int BULK_SIZE = 100;
+    private static final Map<String, String> PROPERTIES = Map.of(
+            "elasticsearch.useSingleNode", "true",
+            "elasticsearch.nodeSelector", "round_robin",
+            "elasticsearch.circuitBreakerThreshold", "0",
+            "elasticsearch.sniffInterval", "0");
+
+    private StandInServer server;
+    private ElasticsearchService service;
+    private SampleData document;
+    private List<SampleData> documents;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = new SampleData("benchmark-1", "item-42", "Description of sample item number 42",
+                LocalDateTime.of(2024, 1, 15, 10, 30));
+        server = new StandInServer();
+        PROPERTIES.forEach(System::setProperty);
+        System.setProperty("elasticsearch.hosts", server.getHostAndPort());
+        // Make sure the client picks up the stand-in rather than a previously configured cluster
+        ElasticsearchClientConfig.closeClient();
+        service = new ElasticsearchService();
+
+        documents = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            documents.add(new SampleData("benchmark-" + i, "item-" + i, "Description of sample item number " + i,
+                    LocalDateTime.of(2024, 1, 15, 10, 30).plusMinutes(i)));
+        }
+        // Name searches match every document, so each returns a full page of hits
+        service.insertDocuments(INDEX, documents);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+        server.close();
+        PROPERTIES.keySet().forEach(System::clearProperty);
+        System.clearProperty("elasticsearch.hosts");
+    }
+
+    @Benchmark
+    public SampleData getDocument() throws IOException {
+        return service.getDocument(INDEX, document.getId());
+    }
+
+    @Benchmark
+    public String insertDocument() throws IOException {
+        return service.insertDocument(INDEX, document);
+    }
+
+    @Benchmark
+    public List<SampleData> searchDocumentsByName() throws IOException {
+        return service.searchDocumentsByName(INDEX, document.getName());
+    }
+
+    @Benchmark
+    public BulkResult insertDocuments() throws IOException {
+        return service.insertDocuments(INDEX, documents);
+    }
+}
@@ -0,0 +1,55 @@
+package org.daodao.elasticsearch.benchmark;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.service.SampleDataCodec;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of a single SampleData document.
+ * Run with {@code -prof gc} to see the bytes allocated per document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SampleDataCodecBenchmark {
+
+    private SampleDataCodec codec;
+    private SampleData document;
+    private BytesReference source;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = new SampleDataCodec();
+        document = new SampleData("benchmark-1", "item-42",
+                "A sample item whose description is about as long as the ones in the demo index",
+                LocalDateTime.of(2024, 1, 15, 10, 30));
+        source = codec.encode(document);
+    }
+
+    @Benchmark
+    public BytesReference encode() throws IOException {
+        return codec.encode(document);
+    }
+
+    @Benchmark
+    public SampleData decode() throws IOException {
+        return codec.decode(source, "benchmark-1");
+    }
+}
@@ -0,0 +1,92 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.config.ElasticsearchClientConfig;
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.util.Constants;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building index, bulk and search requests the way the service does before handing them to the client.
+ * Search requests are rendered to JSON, which is what the client spends its time on when sending them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@State(Scope.Benchmark)
+public class RequestBuildingBenchmark {
+
+    private static final String INDEX = "benchmark";
+
+    @Param({"1000"})
+    public int bulkSize;
+
+    private ElasticsearchService service;
+    private SampleData document;
+    private List<SampleData> documents;
+
+    @Setup
+    public void setUp() {
+        service = new ElasticsearchService();
+        document = new SampleData("benchmark-1", "item-42", "Description of sample item number 42",
+                LocalDateTime.of(2024, 1, 15, 10, 30));
+        documents = new ArrayList<>(bulkSize);
+        for (int i = 0; i < bulkSize; i++) {
+            documents.add(new SampleData("benchmark-" + i, "item-" + i, "Description of sample item number " + i,
+                    LocalDateTime.of(2024, 1, 15, 10, 30).plusMinutes(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ElasticsearchClientConfig.closeClient();
+    }
+
+    @Benchmark
+    public IndexRequest indexRequest() throws IOException {
+        return service.buildIndexRequest(INDEX, document);
+    }
+
+    @Benchmark
+    public BulkRequest bulkRequest() throws IOException {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (SampleData data : documents) {
+            bulkRequest.add(service.buildIndexRequest(INDEX, data));
+        }
+        return bulkRequest;
+    }
+
+    @Benchmark
+    public BytesReference nameSearchRequest() throws IOException {
+        return XContentHelper.toXContent(service.buildNameSearchRequest(INDEX, document.getName()).source(), XContentType.JSON, false);
+    }
+
+    @Benchmark
+    public BytesReference dateRangeSearchRequest() throws IOException {
+        return XContentHelper.toXContent(service.buildDateRangeSearchRequest(INDEX, Constants.FIELD_TIMESTAMP,
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 2, 1, 0, 0)).source(), XContentType.JSON, false);
+    }
+}
@@ -0,0 +1,77 @@
+package org.daodao.elasticsearch.service;
+
+import org.apache.lucene.search.TotalHits;
+import org.daodao.elasticsearch.config.ElasticsearchClientConfig;
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchResponseSections;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a page of search hits into SampleData objects, as every search* method does.
+ * The service is created without contacting the cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+@State(Scope.Benchmark)
+public class SearchResultsBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int hits;
+
+    private ElasticsearchService service;
+    private SearchResponse searchResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        service = new ElasticsearchService();
+        SampleDataCodec codec = new SampleDataCodec();
+        Text type = new Text("_doc");
+        SearchHit[] page = new SearchHit[hits];
+        for (int i = 0; i < hits; i++) {
+            SampleData data = new SampleData(null, "item-" + i, "Description of sample item number " + i,
+                    LocalDateTime.of(2024, 1, 15, 10, 30).plusMinutes(i));
+            BytesReference source = codec.encode(data);
+            page[i] = new SearchHit(i, String.valueOf(i), type, Map.of(), Map.of()).sourceRef(source);
+        }
+        SearchHits searchHits = new SearchHits(page, new TotalHits(hits, TotalHits.Relation.EQUAL_TO), 1.0f);
+        SearchResponseSections sections = new SearchResponseSections(searchHits, null, null, false, null, null, 1);
+        searchResponse = new SearchResponse(sections, null, 1, 1, 0, 1,
+                ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ElasticsearchClientConfig.closeClient();
+    }
+
+    @Benchmark
+    public List<SampleData> parseSearchResults() throws IOException {
+        return service.parseSearchResults(searchResponse);
+    }
+}
@@ -2,20 +2,40 @@ package org.daodao.elasticsearch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.daodao.elasticsearch.load.LoadGenerator;
+import org.daodao.elasticsearch.load.LoadSettings;
 import org.daodao.elasticsearch.model.SampleData;
 import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.daodao.elasticsearch.standin.StandInServer;
+import org.daodao.elasticsearch.util.Constants;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Main application to demonstrate Elasticsearch operations
+ * Main application to demonstrate Elasticsearch operations.
+ * Started with {@code load} as the first argument it runs a load test instead, see {@link #runLoadTest(String[])}.
  */
 public class ElasticsearchApplication {
     
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchApplication.class);
     
+    private static final String LOAD_USAGE = "load [--mix=insert:20,get:50,update:10,search:15,delete:5] "
+            + "[--rate=<operations per second, 0 for maximum throughput>] [--duration=<seconds>] [--warmup=<seconds>] "
+            + "[--concurrency=<operations in flight>] [--report-interval=<seconds>] [--documents=<initial documents>] "
+            + "[--index=<index name>] [--stand-in]";
+    
+    private static final String STAND_IN_CLIENT = "stand_in";
+    
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("load")) {
+            runLoadTest(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         ElasticsearchService service = new ElasticsearchService();
         
         try {
@@ -33,6 +53,66 @@ public class ElasticsearchApplication {
         }
     }
     
+    /**
+     * Run a load test against the configured cluster, or with --stand-in against an in-process
+     * {@link StandInServer}, which checks the client itself without a cluster. The stand-in is
+     * reached through a client of its own, whose overrides win over any configured cluster hosts.
+     * @param args load test options, see {@link LoadSettings#parse(String...)}
+     */
+    private static void runLoadTest(String[] args) {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean standIn = options.remove("--stand-in");
+        LoadSettings settings;
+        try {
+            settings = LoadSettings.parse(options.toArray(new String[0]));
+        } catch (IllegalArgumentException e) {
+            log.error("{}. Usage: {}", e.getMessage(), LOAD_USAGE);
+            return;
+        }
+        
+        StandInServer server = null;
+        try {
+            String client = Constants.DEFAULT_CLIENT_NAME;
+            if (standIn) {
+                System.setProperty(StandInServer.NODELAY_PROPERTY, "true");
+                server = new StandInServer();
+                client = STAND_IN_CLIENT;
+                standInProperties(server).forEach(System::setProperty);
+                log.info("Running the load test against the stand-in server at {}", server.getHostAndPort());
+            }
+            ElasticsearchService service = new ElasticsearchService(client);
+            try {
+                new LoadGenerator(service, settings).run();
+            } finally {
+                service.close();
+            }
+        } catch (IOException e) {
+            log.error("Load test failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Load test interrupted");
+        } finally {
+            if (server != null) {
+                standInProperties(server).keySet().forEach(System::clearProperty);
+                server.close();
+            }
+        }
+    }
+    
+    /**
+     * Settings of the stand-in client, as in EndToEndBenchmark: its one host only, no sniffing,
+     * which the stand-in does not answer, and no node selection or circuit breaking
+     */
+    private static Map<String, String> standInProperties(StandInServer server) {
+        String prefix = "elasticsearch." + STAND_IN_CLIENT + ".";
+        return Map.of(
+                prefix + "hosts", server.getHostAndPort(),
+                prefix + "useSingleNode", "true",
+                prefix + "sniffInterval", "0",
+                prefix + "nodeSelector", "round_robin",
+                prefix + "circuitBreakerThreshold", "0");
+    }
+    
     /**
      * Demonstrate CRUD operations
      * @param service Elasticsearch service
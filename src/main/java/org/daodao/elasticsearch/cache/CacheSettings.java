@@ -0,0 +1,57 @@
+package org.daodao.elasticsearch.cache;
+
+/**
+ * Size limits and expiry of a {@link LocalCache}.
+ * Entries are evicted as soon as either limit is exceeded.
+ */
+public class CacheSettings {
+
+    private final long maximumEntries;
+    private final long maximumBytes;
+    private final long ttlMillis;
+
+    /**
+     * Create settings
+     * @param maximumEntries maximum number of entries, 0 for no entry limit
+     * @param maximumBytes maximum total weight of the entries in bytes, 0 for no byte limit
+     * @param ttlMillis time after which an entry expires once written, 0 to never expire
+     */
+    public CacheSettings(long maximumEntries, long maximumBytes, long ttlMillis) {
+        if (maximumEntries < 0) {
+            throw new IllegalArgumentException("maximumEntries must not be negative: " + maximumEntries);
+        }
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException("maximumBytes must not be negative: " + maximumBytes);
+        }
+        if (maximumEntries == 0 && maximumBytes == 0) {
+            throw new IllegalArgumentException("Either maximumEntries or maximumBytes must be set");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must not be negative: " + ttlMillis);
+        }
+        this.maximumEntries = maximumEntries;
+        this.maximumBytes = maximumBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheSettings{" +
+                "maximumEntries=" + maximumEntries +
+                ", maximumBytes=" + maximumBytes +
+                ", ttlMillis=" + ttlMillis +
+                '}';
+    }
+}
@@ -0,0 +1,84 @@
+package org.daodao.elasticsearch.cache;
+
+/**
+ * Snapshot of the counters of a {@link LocalCache}
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long rejections;
+    private final long expirations;
+    private final long invalidations;
+    private final long size;
+    private final long weightBytes;
+
+    public CacheStats(long hits, long misses, long evictions, long rejections,
+                      long expirations, long invalidations, long size, long weightBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.rejections = rejections;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.weightBytes = weightBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return lookups that found no live entry, including expired ones
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return entries removed to make room for new ones
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return new entries dropped right away because they were used less often than the eviction candidate
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    /**
+     * @return share of lookups answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStats{hits=%d, misses=%d, hitRate=%.3f, evictions=%d, rejections=%d, "
+                        + "expirations=%d, invalidations=%d, size=%d, weightBytes=%d}",
+                hits, misses, getHitRate(), evictions, rejections, expirations, invalidations, size, weightBytes);
+    }
+}
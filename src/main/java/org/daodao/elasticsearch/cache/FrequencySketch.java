@@ -0,0 +1,83 @@
+package org.daodao.elasticsearch.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate access frequency of keys (count-min sketch, as used by TinyLFU).
+ * Each key maps to one counter in each of four rows; its estimate is the smallest of them.
+ * Counters saturate at 15 and are halved once enough increments have been recorded,
+ * so keys that were popular a long time ago lose their advantage.
+ *
+ * <p>Updates are not synchronized. A lost increment only makes an estimate slightly lower,
+ * which is acceptable for deciding what to evict.
+ */
+class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xc2b2ae35};
+
+    private final int[] table;
+    private final int rowMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param expectedEntries number of entries the cache is expected to hold
+     */
+    FrequencySketch(long expectedEntries) {
+        int width = Integer.highestOneBit((int) Math.min(Math.max(expectedEntries, 16), 1 << 24) - 1) << 1;
+        this.table = new int[width * ROWS];
+        this.rowMask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, table[indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int minimum = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            minimum = Math.min(minimum, table[indexOf(hash, row)]);
+        }
+        if (minimum == MAX_COUNT) {
+            // Hot keys stop writing here, reads of them stay free of shared writes
+            return;
+        }
+        // Conservative update: only the counters that define the estimate grow
+        for (int row = 0; row < ROWS; row++) {
+            int index = indexOf(hash, row);
+            if (table[index] == minimum) {
+                table[index] = minimum + 1;
+            }
+        }
+        if (additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions.set(0);
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return row * (rowMask + 1) + (h & rowMask);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 15);
+    }
+}
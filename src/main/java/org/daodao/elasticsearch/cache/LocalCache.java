@@ -0,0 +1,295 @@
+package org.daodao.elasticsearch.cache;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-process cache with frequency-aware eviction and expiry.
+ *
+ * <p>Lookups are a single {@link ConcurrentHashMap} read and never take a lock. Writes
+ * and evictions are serialized by one lock. Eviction walks the entries in insertion order
+ * and gives entries read since the last pass a second chance (CLOCK). When a new entry
+ * would push out an older one, the access frequencies of both keys are compared first
+ * and the less popular one goes (TinyLFU admission). A burst of one-off keys therefore
+ * cannot flush out the hot set.
+ *
+ * <p>A value loaded from a remote source can be stale if the key was invalidated while it
+ * was being loaded. To guard against that, take a {@link #stamp()} before loading and pass it
+ * to {@link #put(Object, Object, long, long)}, which drops the value in that case.
+ *
+ * @param <K> key type
+ * @param <V> value type, cached as is; callers that hand out mutable values should copy them
+ */
+public class LocalCache<K, V> {
+
+    // Weight assumed per entry when sizing the frequency sketch of a cache limited by bytes only
+    private static final long EXPECTED_ENTRY_WEIGHT = 1024;
+
+    private final long maximumEntries;
+    private final long maximumBytes;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by evictionLock
+    private final ArrayDeque<Entry<K, V>> clock = new ArrayDeque<>();
+    private long weightBytes;
+    private long staleNodes;
+
+    private final AtomicLong invalidationStamp = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public LocalCache(CacheSettings settings) {
+        this.maximumEntries = settings.getMaximumEntries() > 0 ? settings.getMaximumEntries() : Long.MAX_VALUE;
+        this.maximumBytes = settings.getMaximumBytes() > 0 ? settings.getMaximumBytes() : Long.MAX_VALUE;
+        this.ttlNanos = settings.getTtlMillis() * 1_000_000;
+        this.sketch = new FrequencySketch(settings.getMaximumEntries() > 0
+                ? settings.getMaximumEntries()
+                : settings.getMaximumBytes() / EXPECTED_ENTRY_WEIGHT);
+    }
+
+    /**
+     * Look up a live entry
+     * @param key key
+     * @return cached value, or null if absent or expired
+     */
+    public V get(K key) {
+        sketch.increment(key);
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (ttlNanos > 0 && System.nanoTime() - entry.writtenAt >= ttlNanos) {
+            expire(entry);
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * @return marker to pass to {@link #put(Object, Object, long, long)} for a value that is loaded next
+     */
+    public long stamp() {
+        return invalidationStamp.get();
+    }
+
+    /**
+     * Add or replace an entry
+     * @param key key
+     * @param value value
+     * @param weightBytes approximate size of the entry in bytes
+     */
+    public void put(K key, V value, long weightBytes) {
+        evictionLock.lock();
+        try {
+            insert(key, value, weightBytes);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Add or replace an entry unless any key has been invalidated since the stamp was taken
+     * @param key key
+     * @param value value loaded after the stamp was taken
+     * @param weightBytes approximate size of the entry in bytes
+     * @param stamp result of {@link #stamp()} before the value was loaded
+     * @return true if the value was stored
+     */
+    public boolean put(K key, V value, long weightBytes, long stamp) {
+        evictionLock.lock();
+        try {
+            // Invalidations bump the stamp under the same lock, so this check cannot race with them
+            if (invalidationStamp.get() != stamp) {
+                return false;
+            }
+            insert(key, value, weightBytes);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Remove an entry
+     * @param key key
+     */
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            invalidationStamp.incrementAndGet();
+            Entry<K, V> entry = map.remove(key);
+            if (entry != null) {
+                unlink(entry);
+                invalidations.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every entry whose key matches
+     * @param predicate keys to remove
+     */
+    public void invalidateIf(Predicate<? super K> predicate) {
+        evictionLock.lock();
+        try {
+            invalidationStamp.incrementAndGet();
+            for (Map.Entry<K, Entry<K, V>> mapEntry : map.entrySet()) {
+                if (predicate.test(mapEntry.getKey()) && map.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                    unlink(mapEntry.getValue());
+                    invalidations.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every entry
+     */
+    public void invalidateAll() {
+        invalidateIf(key -> true);
+    }
+
+    /**
+     * @return number of entries, including expired ones that have not been removed yet
+     */
+    public long size() {
+        return map.size();
+    }
+
+    public CacheStats stats() {
+        long weight;
+        evictionLock.lock();
+        try {
+            weight = weightBytes;
+        } finally {
+            evictionLock.unlock();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(),
+                expirations.sum(), invalidations.sum(), map.size(), weight);
+    }
+
+    private void insert(K key, V value, long weight) {
+        Entry<K, V> entry = new Entry<>(key, value, weight, System.nanoTime());
+        Entry<K, V> previous = map.put(key, entry);
+        if (previous != null) {
+            unlink(previous);
+        }
+        clock.addLast(entry);
+        weightBytes += weight;
+        evict(entry);
+        compactClock();
+    }
+
+    private void evict(Entry<K, V> candidate) {
+        long now = System.nanoTime();
+        // Readers may set reference bits again while this runs, so second chances are bounded
+        int secondChances = clock.size();
+        while ((map.size() > maximumEntries || weightBytes > maximumBytes) && !clock.isEmpty()) {
+            Entry<K, V> victim = clock.pollFirst();
+            if (victim.removed) {
+                staleNodes--;
+                continue;
+            }
+            if (victim != candidate) {
+                if (ttlNanos > 0 && now - victim.writtenAt >= ttlNanos) {
+                    remove(victim);
+                    expirations.increment();
+                    continue;
+                }
+                if (victim.referenced && secondChances-- > 0) {
+                    // Second chance for entries read since the last pass
+                    victim.referenced = false;
+                    clock.addLast(victim);
+                    continue;
+                }
+                if (candidate != null && !candidate.removed
+                        && sketch.frequency(candidate.key) < sketch.frequency(victim.key)) {
+                    // The newcomer is less popular than what it would replace, drop it instead
+                    clock.addFirst(victim);
+                    remove(candidate);
+                    rejections.increment();
+                    candidate = null;
+                    continue;
+                }
+            }
+            remove(victim);
+            evictions.increment();
+        }
+    }
+
+    private void expire(Entry<K, V> entry) {
+        evictionLock.lock();
+        try {
+            if (map.remove(entry.key, entry)) {
+                unlink(entry);
+                expirations.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void remove(Entry<K, V> entry) {
+        if (map.remove(entry.key, entry)) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Account for an entry that is no longer in the map; its clock node is skipped later
+     */
+    private void unlink(Entry<K, V> entry) {
+        if (!entry.removed) {
+            entry.removed = true;
+            weightBytes -= entry.weight;
+            staleNodes++;
+        }
+    }
+
+    private void compactClock() {
+        // Without eviction pressure, nodes of replaced and invalidated entries are never polled
+        if (staleNodes > 64 && staleNodes > map.size()) {
+            clock.removeIf(entry -> entry.removed);
+            staleNodes = 0;
+        }
+    }
+
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        final long writtenAt;
+        volatile boolean referenced;
+        // Guarded by evictionLock
+        boolean removed;
+
+        Entry(K key, V value, long weight, long writtenAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
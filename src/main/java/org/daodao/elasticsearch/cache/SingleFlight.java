@@ -0,0 +1,82 @@
+package org.daodao.elasticsearch.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical calls into one.
+ * The first caller for a key starts the call; callers that arrive with the same key while it is
+ * in flight wait for its result instead of starting their own. Once the call completes, the next
+ * caller starts a new one, so results are never reused after the fact.
+ *
+ * <p>All callers of one flight receive the same result object, so results should be immutable
+ * or converted by each caller. Cancelling the future of one caller does not cancel the call
+ * the others are waiting for.
+ *
+ * @param <K> key identifying identical calls
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * Start the call, or join the identical one in flight
+     * @param key key identifying the call
+     * @param call starts the call; only invoked if no identical call is in flight
+     * @return future completed with the result of the call
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        calls.increment();
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> flight = flights.putIfAbsent(key, created);
+        if (flight != null) {
+            collapsed.increment();
+            // A dependent copy, so cancelling it leaves the shared flight alone
+            return flight.copy();
+        }
+
+        CompletableFuture<V> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.handle((value, failure) -> {
+            // Callers arriving from now on start a new call
+            flights.remove(key, created);
+            if (failure != null) {
+                created.completeExceptionally(failure);
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            }
+            created.complete(value);
+            return value;
+        });
+    }
+
+    /**
+     * @return number of calls made through this instance
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return number of calls that joined a call already in flight instead of starting their own
+     */
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    /**
+     * @return number of calls currently in flight
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+}
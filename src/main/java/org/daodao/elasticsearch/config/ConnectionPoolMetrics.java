@@ -0,0 +1,64 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Live view of the HTTP connection pool of the client.
+ * Each {@link PoolStats} reports leased connections (carrying a request), pending requests
+ * (waiting for a connection), available connections (idle in the pool) and the pool limit.
+ * A pending count above zero while the cluster is idle means the pool limits are too low.
+ */
+public class ConnectionPoolMetrics {
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    ConnectionPoolMetrics(PoolingNHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * @return connection counts over all nodes, limited by the total connection limit
+     */
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return connection counts of every node the client has connected to, keyed by node URI
+     */
+    public Map<String, PoolStats> getNodeStats() {
+        Map<String, PoolStats> stats = new TreeMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            stats.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+        }
+        return stats;
+    }
+
+    /**
+     * @param host node
+     * @return requests the node is serving or that wait for a connection to it
+     */
+    public int getInFlight(HttpHost host) {
+        PoolStats stats = connectionManager.getStats(new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName())));
+        return stats.getLeased() + stats.getPending();
+    }
+
+    public int getMaxConnTotal() {
+        return connectionManager.getMaxTotal();
+    }
+
+    public int getMaxConnPerRoute() {
+        return connectionManager.getDefaultMaxPerRoute();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolMetrics{total=" + getTotalStats() + ", nodes=" + getNodeStats() + '}';
+    }
+}
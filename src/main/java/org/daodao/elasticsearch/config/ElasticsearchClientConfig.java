@@ -1,45 +1,149 @@
 package org.daodao.elasticsearch.config;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.daodao.elasticsearch.util.Constants;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 /**
- * Elasticsearch Client Configuration
+ * Elasticsearch Client Configuration.
+ * Clients are shared by name and reference count, see {@link SharedClient}. The client named
+ * {@value Constants#DEFAULT_CLIENT_NAME} is configured by the elasticsearch.* properties; any other
+ * client named N uses the same properties, each overridden by elasticsearch.N.* if set, e.g.
+ * elasticsearch.reporting.hosts for a client named reporting.
  */
 public class ElasticsearchClientConfig {
     
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchClientConfig.class);
     
-    private static RestHighLevelClient client;
+    private static final Pattern CLIENT_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    
+    // Open clients by name; a released client is removed while it drains, so the name can be reused at once
+    private static final Map<String, SharedClient> clients = new HashMap<>();
+    // Reference to the default client taken by getClient(), given back by closeClient()
+    private static SharedClient defaultClient;
+    
+    /**
+     * Take a reference to the default client, creating it if no one holds it
+     * @return client, to be given back with {@link SharedClient#release()}
+     */
+    public static SharedClient acquire() {
+        return acquire(Constants.DEFAULT_CLIENT_NAME);
+    }
     
     /**
-     * Get singleton instance of RestHighLevelClient
+     * Take a reference to the named client, creating it if no one holds it
+     * @param name client name, letters, digits, '_' and '-'
+     * @return client, to be given back with {@link SharedClient#release()}
+     */
+    public static synchronized SharedClient acquire(String name) {
+        if (name == null || !CLIENT_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid client name: " + name);
+        }
+        SharedClient shared = clients.get(name);
+        if (shared == null) {
+            shared = createClient(name);
+            clients.put(name, shared);
+        }
+        return shared.retain();
+    }
+    
+    /**
+     * Remove a client whose last reference was released
+     */
+    static synchronized void unregister(SharedClient shared) {
+        clients.remove(shared.getName(), shared);
+    }
+    
+    /**
+     * Get the default client, taking a reference to it that is held until {@link #closeClient()}
      * @return RestHighLevelClient instance
      */
     public static synchronized RestHighLevelClient getClient() {
-        if (client == null) {
-            client = createClient();
+        if (defaultClient == null) {
+            defaultClient = acquire();
         }
-        return client;
+        return defaultClient.getClient();
     }
     
     /**
-     * Create RestHighLevelClient instance based on configuration
+     * Get the client of the default client to send a request body of the given size with,
+     * see {@link SharedClient#getClient(long)}
+     * @param requestBodyBytes size of the request body in bytes
      * @return RestHighLevelClient instance
      */
-    private static RestHighLevelClient createClient() {
-        Properties props = loadProperties();
+    public static synchronized RestHighLevelClient getClient(long requestBodyBytes) {
+        getClient();
+        return defaultClient.getClient(requestBodyBytes);
+    }
+    
+    /**
+     * Get the connection pool metrics of the default client
+     * @return connection pool metrics, or null if the default client is not open
+     */
+    public static synchronized ConnectionPoolMetrics getConnectionPoolMetrics() {
+        SharedClient shared = clients.get(Constants.DEFAULT_CLIENT_NAME);
+        return shared != null ? shared.getConnectionPoolMetrics() : null;
+    }
+    
+    /**
+     * Get the latency-aware node selector of the default client
+     * @return node selector, or null if the default client is not open or nodes are selected round-robin
+     */
+    public static synchronized LatencyAwareNodeSelector getNodeSelector() {
+        SharedClient shared = clients.get(Constants.DEFAULT_CLIENT_NAME);
+        return shared != null ? shared.getNodeSelector() : null;
+    }
+    
+    /**
+     * Get the per-node circuit breaker of the default client
+     * @return circuit breaker, or null if the default client is not open or circuit breaking is disabled
+     */
+    public static synchronized NodeCircuitBreaker getCircuitBreaker() {
+        SharedClient shared = clients.get(Constants.DEFAULT_CLIENT_NAME);
+        return shared != null ? shared.getCircuitBreaker() : null;
+    }
+    
+    /**
+     * Get the meter reporting HTTP body sizes of the default client to metrics registries
+     * @return traffic meter, or null if the default client is not open
+     */
+    public static synchronized HttpTrafficMeter getTrafficMeter() {
+        SharedClient shared = clients.get(Constants.DEFAULT_CLIENT_NAME);
+        return shared != null ? shared.getTrafficMeter() : null;
+    }
+    
+    /**
+     * Create a client based on configuration
+     * @param name client name, selecting its elasticsearch.name.* overrides
+     * @return client without references
+     */
+    private static SharedClient createClient(String name) {
+        Properties props = loadProperties(name);
         
         // Check if we should use single node configuration
         String useSingleNode = props.getProperty("elasticsearch.useSingleNode", "false");
@@ -71,8 +175,6 @@ public class ElasticsearchClientConfig {
                 .map(host -> parseHttpHost(host, scheme))
                 .toArray(HttpHost[]::new);
         
-        RestClientBuilder builder = RestClient.builder(httpHosts);
-        
         // Configure timeouts
         int connectTimeout = Integer.parseInt(
                 props.getProperty(Constants.ELASTICSEARCH_CONNECT_TIMEOUT, 
@@ -84,17 +186,190 @@ public class ElasticsearchClientConfig {
                 props.getProperty(Constants.ELASTICSEARCH_CONNECTION_REQUEST_TIMEOUT, 
                         String.valueOf(Constants.DEFAULT_CONNECTION_REQUEST_TIMEOUT)));
         
-        builder.setRequestConfigCallback(requestConfigBuilder -> 
+        RestClientBuilder.RequestConfigCallback requestConfigCallback = requestConfigBuilder -> 
                 requestConfigBuilder.setConnectTimeout(connectTimeout)
                         .setSocketTimeout(socketTimeout)
-                        .setConnectionRequestTimeout(connectionRequestTimeout));
+                        .setConnectionRequestTimeout(connectionRequestTimeout);
+        
+        // Configure the connection pool
+        int maxConnTotal = Integer.parseInt(
+                props.getProperty(Constants.ELASTICSEARCH_MAX_CONN_TOTAL, 
+                        String.valueOf(Constants.DEFAULT_MAX_CONN_TOTAL)));
+        int maxConnPerRoute = Integer.parseInt(
+                props.getProperty(Constants.ELASTICSEARCH_MAX_CONN_PER_ROUTE, 
+                        String.valueOf(Constants.DEFAULT_MAX_CONN_PER_ROUTE)));
+        int ioThreadCount = Integer.parseInt(
+                props.getProperty(Constants.ELASTICSEARCH_IO_THREAD_COUNT, 
+                        String.valueOf(Constants.DEFAULT_IO_THREAD_COUNT)));
+        long keepAlive = Long.parseLong(
+                props.getProperty(Constants.ELASTICSEARCH_KEEP_ALIVE, 
+                        String.valueOf(Constants.DEFAULT_KEEP_ALIVE)));
+        
+        PoolingNHttpClientConnectionManager connectionManager = 
+                createConnectionManager(maxConnTotal, maxConnPerRoute, ioThreadCount, socketTimeout);
+        ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics(connectionManager);
+        
+        // Configure compression
+        String compression = props.getProperty(Constants.ELASTICSEARCH_COMPRESSION, 
+                Constants.DEFAULT_COMPRESSION);
+        if (!"none".equalsIgnoreCase(compression) && !"gzip".equalsIgnoreCase(compression)) {
+            throw new IllegalArgumentException("Unsupported compression mode: " + compression);
+        }
+        boolean gzip = "gzip".equalsIgnoreCase(compression);
+        long compressionThreshold = Long.parseLong(
+                props.getProperty(Constants.ELASTICSEARCH_COMPRESSION_THRESHOLD, 
+                        String.valueOf(Constants.DEFAULT_COMPRESSION_THRESHOLD)));
+        
+        // Configure node selection
+        String nodeSelection = props.getProperty(Constants.ELASTICSEARCH_NODE_SELECTOR, 
+                Constants.DEFAULT_NODE_SELECTOR);
+        if (!"round_robin".equalsIgnoreCase(nodeSelection) && !"latency".equalsIgnoreCase(nodeSelection)) {
+            throw new IllegalArgumentException("Unsupported node selector: " + nodeSelection);
+        }
+        LatencyAwareNodeSelector nodeSelector = "latency".equalsIgnoreCase(nodeSelection) 
+                ? new LatencyAwareNodeSelector(connectionPoolMetrics::getInFlight) 
+                : null;
+        int circuitBreakerThreshold = Integer.parseInt(
+                props.getProperty(Constants.ELASTICSEARCH_CIRCUIT_BREAKER_THRESHOLD, 
+                        String.valueOf(Constants.DEFAULT_CIRCUIT_BREAKER_THRESHOLD)));
+        long circuitBreakerOpenTime = Long.parseLong(
+                props.getProperty(Constants.ELASTICSEARCH_CIRCUIT_BREAKER_OPEN_TIME, 
+                        String.valueOf(Constants.DEFAULT_CIRCUIT_BREAKER_OPEN_TIME)));
+        NodeCircuitBreaker circuitBreaker = circuitBreakerThreshold > 0 
+                ? new NodeCircuitBreaker(nodeSelector != null ? nodeSelector : NodeSelector.ANY, 
+                        circuitBreakerThreshold, circuitBreakerOpenTime) 
+                : null;
+        long sniffInterval = Long.parseLong(
+                props.getProperty(Constants.ELASTICSEARCH_SNIFF_INTERVAL, 
+                        String.valueOf(Constants.DEFAULT_SNIFF_INTERVAL)));
+        long drainTimeout = Long.parseLong(
+                props.getProperty(Constants.ELASTICSEARCH_DRAIN_TIMEOUT, 
+                        String.valueOf(Constants.DEFAULT_DRAIN_TIMEOUT)));
         
         // Scheme is set when creating HttpHost objects
         
-        log.info("Creating Elasticsearch client with hosts: {}", 
-                Arrays.toString(hosts));
+        log.info("Creating Elasticsearch client {} with hosts: {}, max connections: {} total, {} per node, compression: {}, node selector: {}, circuit breaker threshold: {}", 
+                name, Arrays.toString(hosts), maxConnTotal, maxConnPerRoute, gzip ? "gzip" : "none", nodeSelection, circuitBreakerThreshold);
         
-        return new RestHighLevelClient(builder);
+        // One meter per client, so its registries only see its own traffic
+        HttpTrafficMeter trafficMeter = new HttpTrafficMeter();
+        RestHighLevelClient plainClient = new RestHighLevelClient(
+                createBuilder(httpHosts, requestConfigCallback, connectionManager, keepAlive, gzip, false, nodeSelector, circuitBreaker, trafficMeter));
+        List<RestClient> lowLevelClients = new ArrayList<>();
+        lowLevelClients.add(plainClient.getLowLevelClient());
+        RestHighLevelClient compressingClient = null;
+        if (gzip) {
+            compressingClient = new RestHighLevelClient(
+                    createBuilder(httpHosts, requestConfigCallback, connectionManager, keepAlive, true, true, nodeSelector, circuitBreaker, trafficMeter));
+            lowLevelClients.add(compressingClient.getLowLevelClient());
+        }
+        NodeSniffer nodeSniffer = sniffInterval > 0 
+                ? new NodeSniffer(lowLevelClients, scheme, sniffInterval) 
+                : null;
+        return new SharedClient(name, plainClient, compressingClient, compressionThreshold, connectionPoolMetrics, 
+                nodeSelector, circuitBreaker, trafficMeter, nodeSniffer, drainTimeout);
+    }
+    
+    /**
+     * Create a client builder on top of the given connection pool
+     * @param httpHosts Elasticsearch nodes
+     * @param requestConfigCallback timeout configuration
+     * @param connectionManager connection pool
+     * @param keepAlive how long idle connections are kept, in milliseconds
+     * @param acceptGzip whether to ask for gzip compressed responses
+     * @param compressRequests whether to gzip request bodies; such a client borrows the pool, and its
+     *                         IO reactor, from the client created first
+     * @param nodeSelector latency-aware node selector, or null to select nodes round-robin
+     * @param circuitBreaker per-node circuit breaker wrapping the node selector, or null to disable circuit breaking
+     * @param trafficMeter meter reporting the HTTP body sizes of the client
+     * @return client builder
+     */
+    private static RestClientBuilder createBuilder(HttpHost[] httpHosts, 
+                                                   RestClientBuilder.RequestConfigCallback requestConfigCallback, 
+                                                   PoolingNHttpClientConnectionManager connectionManager, 
+                                                   long keepAlive, 
+                                                   boolean acceptGzip, 
+                                                   boolean compressRequests, 
+                                                   LatencyAwareNodeSelector nodeSelector, 
+                                                   NodeCircuitBreaker circuitBreaker, 
+                                                   HttpTrafficMeter trafficMeter) {
+        RestClientBuilder builder = RestClient.builder(httpHosts)
+                .setRequestConfigCallback(requestConfigCallback);
+        
+        // A connection manager of our own is the only way to read pool statistics later;
+        // it takes over the connection limits the builder would otherwise apply
+        builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            httpClientBuilder.setConnectionManager(connectionManager)
+                    .setConnectionManagerShared(compressRequests)
+                    .setKeepAliveStrategy((response, context) -> keepAlive)
+                    .addInterceptorLast(trafficMeter.requestInterceptor())
+                    .addInterceptorLast(trafficMeter.responseInterceptor());
+            if (nodeSelector != null) {
+                httpClientBuilder.addInterceptorFirst(nodeSelector.requestInterceptor())
+                        .addInterceptorFirst(nodeSelector.responseInterceptor());
+            }
+            if (circuitBreaker != null) {
+                httpClientBuilder.addInterceptorFirst(circuitBreaker.responseInterceptor());
+            }
+            return httpClientBuilder;
+        });
+        List<RestClient.FailureListener> failureListeners = new ArrayList<>();
+        if (nodeSelector != null) {
+            builder.setNodeSelector(nodeSelector);
+            failureListeners.add(nodeSelector.failureListener());
+        }
+        if (circuitBreaker != null) {
+            // Wraps the latency-aware selector, if any
+            builder.setNodeSelector(circuitBreaker);
+            failureListeners.add(circuitBreaker.failureListener());
+        }
+        if (!failureListeners.isEmpty()) {
+            builder.setFailureListener(new RestClient.FailureListener() {
+                @Override
+                public void onFailure(Node node) {
+                    for (RestClient.FailureListener failureListener : failureListeners) {
+                        failureListener.onFailure(node);
+                    }
+                }
+            });
+        }
+        
+        if (compressRequests) {
+            // Also sends Accept-Encoding: gzip
+            builder.setCompressionEnabled(true);
+        } else if (acceptGzip) {
+            // Compressed responses are decompressed by the client regardless of its compression setting
+            builder.setDefaultHeaders(new Header[]{new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip")});
+        }
+        return builder;
+    }
+    
+    /**
+     * Create the pooling connection manager backing the async HTTP client
+     * @param maxConnTotal maximum number of connections over all nodes
+     * @param maxConnPerRoute maximum number of connections per node
+     * @param ioThreadCount number of IO reactor threads, 0 for one per available processor
+     * @param socketTimeout socket timeout in milliseconds
+     * @return connection manager
+     */
+    private static PoolingNHttpClientConnectionManager createConnectionManager(int maxConnTotal, 
+                                                                               int maxConnPerRoute, 
+                                                                               int ioThreadCount, 
+                                                                               int socketTimeout) {
+        IOReactorConfig.Builder reactorConfig = IOReactorConfig.custom()
+                .setSoTimeout(socketTimeout);
+        if (ioThreadCount > 0) {
+            reactorConfig.setIoThreadCount(ioThreadCount);
+        }
+        try {
+            PoolingNHttpClientConnectionManager connectionManager = 
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig.build()));
+            connectionManager.setMaxTotal(maxConnTotal);
+            connectionManager.setDefaultMaxPerRoute(maxConnPerRoute);
+            return connectionManager;
+        } catch (IOReactorException e) {
+            throw new UncheckedIOException("Failed to start the HTTP IO reactor", e);
+        }
     }
     
     /**
@@ -112,10 +387,12 @@ public class ElasticsearchClientConfig {
     }
     
     /**
-     * Load configuration properties from application.properties
+     * Load configuration properties from application.properties, overridden by elasticsearch.* system properties
+     * and then, for a client other than the default one, by its elasticsearch.name.* properties
+     * @param name client name
      * @return Properties object
      */
-    private static Properties loadProperties() {
+    private static Properties loadProperties(String name) {
         Properties props = new Properties();
         try (InputStream input = ElasticsearchClientConfig.class
                 .getClassLoader()
@@ -123,28 +400,59 @@ public class ElasticsearchClientConfig {
             
             if (input == null) {
                 log.warn("Unable to find application.properties, using defaults");
-                return props;
+            } else {
+                props.load(input);
             }
-            
-            props.load(input);
         } catch (IOException e) {
             log.error("Error loading application.properties", e);
         }
+        // System properties such as -Delasticsearch.compression=gzip override the file
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("elasticsearch.")) {
+                props.setProperty(key, System.getProperty(key));
+            }
+        }
+        if (!Constants.DEFAULT_CLIENT_NAME.equals(name)) {
+            String prefix = "elasticsearch." + name + ".";
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    props.setProperty("elasticsearch." + key.substring(prefix.length()), props.getProperty(key));
+                }
+            }
+        }
         return props;
     }
     
     /**
-     * Close the client and release resources
+     * Give back the reference to the default client taken by {@link #getClient()}.
+     * The client is closed once no service holds it either.
      */
-    public static synchronized void closeClient() {
-        if (client != null) {
-            try {
-                client.close();
-                client = null;
-                log.info("Elasticsearch client closed");
-            } catch (IOException e) {
-                log.error("Error closing Elasticsearch client", e);
+    public static void closeClient() {
+        SharedClient shared;
+        synchronized (ElasticsearchClientConfig.class) {
+            shared = defaultClient;
+            defaultClient = null;
+        }
+        // Draining happens outside the lock, so other clients can be acquired meanwhile
+        if (shared != null) {
+            shared.release();
+        }
+    }
+    
+    /**
+     * Drain and close every open client whatever its references, when shutting down the process
+     */
+    public static void closeAllClients() {
+        List<SharedClient> open;
+        synchronized (ElasticsearchClientConfig.class) {
+            open = new ArrayList<>(clients.values());
+            clients.clear();
+            defaultClient = null;
+        }
+        for (SharedClient shared : open) {
+            if (shared.forceRelease()) {
+                shared.drainAndClose();
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.daodao.elasticsearch.metrics.MetricsRegistry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reports the body sizes of every HTTP exchange of the client to the registered metrics registries.
+ *
+ * <p>Sizes are taken from what is known when the request is sent and the response headers arrive:
+ * the request entity length and the response Content-Length. Gzip compressed requests have no
+ * length up front and are reported as unsized. Exchanges are grouped by REST endpoint, derived
+ * from the method and the first path segment starting with an underscore, so {@code GET /idx/_doc/1}
+ * is "get" and {@code POST /idx/_search} is "search". Paths without such a segment are "indices".
+ *
+ * <p>The meter learns from the interceptors it provides, which must be registered on the client.
+ */
+public class HttpTrafficMeter {
+
+    private static final String EXCHANGE = HttpTrafficMeter.class.getName() + ".exchange";
+
+    private final List<MetricsRegistry> registries = new CopyOnWriteArrayList<>();
+
+    /**
+     * Start reporting exchanges to a registry
+     * @param registry metrics registry
+     */
+    public void addRegistry(MetricsRegistry registry) {
+        registries.add(registry);
+    }
+
+    /**
+     * Stop reporting exchanges to a registry
+     * @param registry metrics registry
+     */
+    public void removeRegistry(MetricsRegistry registry) {
+        registries.remove(registry);
+    }
+
+    /**
+     * @return interceptor noting the endpoint and body size of each request
+     */
+    public HttpRequestInterceptor requestInterceptor() {
+        return (request, context) -> {
+            if (!registries.isEmpty()) {
+                context.setAttribute(EXCHANGE, new Exchange(endpointOf(request), requestBytes(request)));
+            }
+        };
+    }
+
+    /**
+     * @return interceptor reporting each exchange once its response headers arrive
+     */
+    public HttpResponseInterceptor responseInterceptor() {
+        return (response, context) -> {
+            Object exchange = context.getAttribute(EXCHANGE);
+            if (!(exchange instanceof Exchange)) {
+                return;
+            }
+            Exchange sent = (Exchange) exchange;
+            // A body-less response, such as the answer to HEAD, has no entity
+            HttpEntity entity = response.getEntity();
+            long responseBytes = entity != null ? entity.getContentLength() : 0;
+            for (MetricsRegistry registry : registries) {
+                registry.recordTraffic(sent.endpoint(), sent.requestBytes(), responseBytes);
+            }
+        };
+    }
+
+    private static long requestBytes(HttpRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity != null ? entity.getContentLength() : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @param request HTTP request
+     * @return REST endpoint the request is sent to
+     */
+    static String endpointOf(HttpRequest request) {
+        String method = request.getRequestLine().getMethod();
+        String uri = request.getRequestLine().getUri();
+        int query = uri.indexOf('?');
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        for (String segment : path.split("/")) {
+            if (!segment.startsWith("_")) {
+                continue;
+            }
+            if (!segment.equals("_doc")) {
+                return segment.substring(1);
+            }
+            switch (method) {
+                case "GET":
+                case "HEAD":
+                    return "get";
+                case "DELETE":
+                    return "delete";
+                default:
+                    return "index";
+            }
+        }
+        return "indices";
+    }
+
+    /**
+     * Request noted until its response arrives
+     */
+    private record Exchange(String endpoint, long requestBytes) {
+    }
+}
@@ -0,0 +1,164 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.elasticsearch.client.RestClient;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sends each request to the node that is expected to answer it first.
+ *
+ * <p>Every node is scored by its latency, an exponentially weighted moving average of the time
+ * to the response headers, multiplied by the number of requests it is already serving plus one.
+ * The node with the lowest score gets the request; nodes without samples yet score zero, so new
+ * nodes are tried right away. The latency of a node that receives no traffic decays over time,
+ * so a node that was slow once, for example while its first connection was set up, is probed
+ * again later instead of being avoided for good.
+ * Nodes that failed recently and dedicated master nodes are only used if nothing else is left.
+ *
+ * <p>Only the chosen node is left to the client, and RestClient fails over only to the nodes the
+ * selector leaves, so this gives up its built-in failover: a connection error or a 502/503/504 on
+ * the chosen node fails the request instead of trying the next node. Retries, see
+ * {@code ElasticsearchService.enableRetries()}, select a node again.
+ *
+ * <p>The selector learns from the interceptors and the failure listener it provides, which must
+ * be registered on the same client.
+ */
+public class LatencyAwareNodeSelector implements NodeSelector {
+
+    private static final String REQUEST_START = LatencyAwareNodeSelector.class.getName() + ".start";
+    // Weight of the newest sample in the moving average
+    private static final double ALPHA = 0.3;
+    // Time for the latency of an idle node to fall to about a third
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long FAILURE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ToIntFunction<HttpHost> inFlight;
+    private final ConcurrentHashMap<HttpHost, NodeLatency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param inFlight number of requests a node is serving or waiting to be sent to it
+     */
+    public LatencyAwareNodeSelector(ToIntFunction<HttpHost> inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        long now = System.nanoTime();
+        Node best = null;
+        double bestScore = Double.MAX_VALUE;
+        int bestPenalty = Integer.MAX_VALUE;
+        for (Node node : nodes) {
+            int penalty = (isFailed(node.getHost(), now) ? 2 : 0) + (isDedicatedMaster(node) ? 1 : 0);
+            double score = score(node.getHost(), now);
+            if (penalty < bestPenalty || (penalty == bestPenalty && score < bestScore)) {
+                best = node;
+                bestScore = score;
+                bestPenalty = penalty;
+            }
+        }
+        // The client rotates whatever is left over, so only the chosen node may stay
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() != best) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return latency of every node that has answered so far in milliseconds, keyed by node URI
+     */
+    public Map<String, Double> getLatencyMillis() {
+        long now = System.nanoTime();
+        Map<String, Double> millis = new TreeMap<>();
+        for (Map.Entry<HttpHost, NodeLatency> entry : latencies.entrySet()) {
+            millis.put(entry.getKey().toURI(), entry.getValue().latencyNanos(now) / 1e6);
+        }
+        return millis;
+    }
+
+    /**
+     * @return interceptor that marks when a request is sent
+     */
+    public HttpRequestInterceptor requestInterceptor() {
+        return (request, context) -> context.setAttribute(REQUEST_START, System.nanoTime());
+    }
+
+    /**
+     * @return interceptor that records the latency of a node when its response arrives
+     */
+    public HttpResponseInterceptor responseInterceptor() {
+        return (response, context) -> {
+            Object start = context.getAttribute(REQUEST_START);
+            HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+            if (start != null && host != null) {
+                long now = System.nanoTime();
+                latencies.computeIfAbsent(host, h -> new NodeLatency()).record(now - (Long) start, now);
+            }
+        };
+    }
+
+    /**
+     * @return listener that keeps the selector away from a node for a while after it failed
+     */
+    public RestClient.FailureListener failureListener() {
+        return new RestClient.FailureListener() {
+            @Override
+            public void onFailure(Node node) {
+                latencies.computeIfAbsent(node.getHost(), h -> new NodeLatency()).failedAt = System.nanoTime();
+            }
+        };
+    }
+
+    private double score(HttpHost host, long now) {
+        NodeLatency latency = latencies.get(host);
+        if (latency == null) {
+            return 0;
+        }
+        return latency.latencyNanos(now) * (inFlight.applyAsInt(host) + 1);
+    }
+
+    private boolean isFailed(HttpHost host, long now) {
+        NodeLatency latency = latencies.get(host);
+        return latency != null && latency.failedAt != 0 && now - latency.failedAt < FAILURE_COOLDOWN_NANOS;
+    }
+
+    private static boolean isDedicatedMaster(Node node) {
+        // Roles are only known for sniffed nodes
+        Node.Roles roles = node.getRoles();
+        return roles != null && roles.isMasterEligible() && !roles.canContainData() && !roles.isIngest();
+    }
+
+    private static final class NodeLatency {
+        // Guarded by this
+        private double averageNanos;
+        private long sampledAt;
+        volatile long failedAt;
+
+        synchronized void record(long sampleNanos, long now) {
+            if (sampledAt == 0) {
+                averageNanos = sampleNanos;
+            } else {
+                double current = latencyNanos(now);
+                averageNanos = current + ALPHA * (sampleNanos - current);
+            }
+            sampledAt = now;
+        }
+
+        synchronized double latencyNanos(long now) {
+            // Without fresh samples the estimate fades, so the node gets traffic again eventually
+            return averageNanos * Math.exp(-(double) (now - sampledAt) / DECAY_NANOS);
+        }
+    }
+}
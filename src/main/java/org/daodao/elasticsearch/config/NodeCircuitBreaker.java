@@ -0,0 +1,184 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.elasticsearch.client.RestClient;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to a node while it keeps failing.
+ *
+ * <p>The circuit of a node opens after a number of consecutive failures: connection errors,
+ * timeouts and 502/503/504 responses. A 429 rejection is backpressure from the whole cluster
+ * rather than a sign that the node is unhealthy, and is left to retries with backoff; it counts
+ * as an answer from the node like any other response below 500. An open node is not selected at all, so
+ * requests go to the other nodes, or fail right away if there are none, instead of piling up on
+ * a node that cannot serve them. Once the open time has passed, a single trial request is let
+ * through; a successful response closes the circuit, a failure opens it again.
+ * The remaining nodes are passed on to the wrapped selector.
+ *
+ * <p>The breaker learns from the interceptor and the failure listener it provides, which must
+ * be registered on the same client.
+ */
+public class NodeCircuitBreaker implements NodeSelector {
+
+    /**
+     * State of the circuit of a node
+     */
+    public enum State {
+        /** Requests are sent to the node */
+        CLOSED,
+        /** The node failed repeatedly and gets no requests */
+        OPEN,
+        /** The open time has passed and the node gets one trial request */
+        HALF_OPEN
+    }
+
+    private final NodeSelector delegate;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ConcurrentHashMap<HttpHost, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate selects among the nodes whose circuit lets requests through
+     * @param failureThreshold consecutive failures that open the circuit of a node
+     * @param openMillis time an open circuit stays open before a trial request is sent
+     */
+    public NodeCircuitBreaker(NodeSelector delegate, int failureThreshold, long openMillis) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+        }
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("openMillis must be positive: " + openMillis);
+        }
+        this.delegate = delegate;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        long now = System.nanoTime();
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            Circuit circuit = circuits.get(iterator.next().getHost());
+            if (circuit != null && circuit.state(now) == State.OPEN) {
+                iterator.remove();
+            }
+        }
+        delegate.select(nodes);
+        // Only the first request to a half-open node after the selector picked it becomes the trial
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            Circuit circuit = circuits.get(iterator.next().getHost());
+            if (circuit != null && !circuit.tryAcquire(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return state of every node that has failed at least once, keyed by node URI
+     */
+    public Map<String, State> getStates() {
+        long now = System.nanoTime();
+        Map<String, State> states = new TreeMap<>();
+        for (Map.Entry<HttpHost, Circuit> entry : circuits.entrySet()) {
+            states.put(entry.getKey().toURI(), entry.getValue().state(now));
+        }
+        return states;
+    }
+
+    /**
+     * @return interceptor that counts answers below 500, including 429 rejections, as successes
+     */
+    public HttpResponseInterceptor responseInterceptor() {
+        return (response, context) -> {
+            HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+            if (host == null) {
+                return;
+            }
+            int status = response.getStatusLine().getStatusCode();
+            if (status < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                Circuit circuit = circuits.get(host);
+                if (circuit != null) {
+                    circuit.onSuccess();
+                }
+            }
+            // 502, 503 and 504 are reported to the failure listener; other server errors are about the request
+        };
+    }
+
+    /**
+     * @return listener that counts connection errors, timeouts and unavailable responses as failures
+     */
+    public RestClient.FailureListener failureListener() {
+        return new RestClient.FailureListener() {
+            @Override
+            public void onFailure(Node node) {
+                circuit(node.getHost()).onFailure(System.nanoTime());
+            }
+        };
+    }
+
+    private Circuit circuit(HttpHost host) {
+        return circuits.computeIfAbsent(host, h -> new Circuit());
+    }
+
+    @Override
+    public String toString() {
+        // Part of the error when every node is rejected
+        return "NodeCircuitBreaker{states=" + getStates() + ", delegate=" + delegate + "}";
+    }
+
+    private final class Circuit {
+        // Guarded by this
+        private int consecutiveFailures;
+        private long openedAt;
+        private long trialAt;
+        private boolean open;
+        private boolean trialInFlight;
+
+        synchronized State state(long now) {
+            if (!open) {
+                return State.CLOSED;
+            }
+            if (now - openedAt < openNanos) {
+                return State.OPEN;
+            }
+            // A trial whose outcome never arrived, for example because it was rotated away, is not waited for forever
+            return trialInFlight && now - trialAt < openNanos ? State.OPEN : State.HALF_OPEN;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            State state = state(now);
+            if (state == State.HALF_OPEN) {
+                trialInFlight = true;
+                trialAt = now;
+            }
+            return state != State.OPEN;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            open = false;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure(long now) {
+            consecutiveFailures++;
+            if (open || consecutiveFailures >= failureThreshold) {
+                open = true;
+                openedAt = now;
+                trialInFlight = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.daodao.elasticsearch.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically asks the cluster for its nodes and updates the clients with them,
+ * so nodes added to the cluster receive requests without a configuration change.
+ * Only nodes with HTTP enabled are used. If a sniff fails, the previous nodes are kept.
+ */
+class NodeSniffer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeSniffer.class);
+
+    private final List<RestClient> clients;
+    private final String scheme;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param clients clients to update; the first one is used to sniff
+     * @param scheme scheme of the node addresses
+     * @param intervalMillis time between sniffs in milliseconds
+     */
+    NodeSniffer(List<RestClient> clients, String scheme, long intervalMillis) {
+        this.clients = clients;
+        this.scheme = scheme;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-node-sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sniff, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Node sniffing started with an interval of {} ms", intervalMillis);
+    }
+
+    void sniff() {
+        try {
+            List<Node> nodes = readNodes();
+            if (nodes.isEmpty()) {
+                log.warn("Sniffing found no nodes with HTTP enabled, keeping {}", clients.get(0).getNodes());
+                return;
+            }
+            for (RestClient client : clients) {
+                client.setNodes(nodes);
+            }
+            log.debug("Sniffed nodes: {}", nodes);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Sniffing nodes failed, keeping {}: {}", clients.get(0).getNodes(), e.getMessage());
+        }
+    }
+
+    private List<Node> readNodes() throws IOException {
+        Request request = new Request("GET", "/_nodes/http");
+        request.addParameter("timeout", "5s");
+        Response response = clients.get(0).performRequest(request);
+        JsonNode nodes;
+        try (InputStream body = response.getEntity().getContent()) {
+            nodes = objectMapper.readTree(body).path("nodes");
+        }
+
+        List<Node> result = new ArrayList<>();
+        for (Iterator<JsonNode> iterator = nodes.elements(); iterator.hasNext(); ) {
+            JsonNode node = iterator.next();
+            String publishAddress = node.path("http").path("publish_address").asText(null);
+            if (publishAddress == null) {
+                continue;
+            }
+            Set<String> roles = new HashSet<>();
+            node.path("roles").forEach(role -> roles.add(role.asText()));
+            result.add(new Node(toHttpHost(publishAddress), null, node.path("name").asText(null),
+                    node.path("version").asText(null), new Node.Roles(roles), Collections.emptyMap()));
+        }
+        return result;
+    }
+
+    /**
+     * @param publishAddress address in the form host:port or hostname/ip:port
+     * @return host to send requests to, preferring the hostname if there is one
+     */
+    private HttpHost toHttpHost(String publishAddress) {
+        int slash = publishAddress.indexOf('/');
+        int colon = publishAddress.lastIndexOf(':');
+        String host = slash > 0 ? publishAddress.substring(0, slash) : publishAddress.substring(slash + 1, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            // IPv6 literal
+            host = host.substring(1, host.length() - 1);
+        }
+        int port = Integer.parseInt(publishAddress.substring(colon + 1));
+        return new HttpHost(host, port, scheme);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
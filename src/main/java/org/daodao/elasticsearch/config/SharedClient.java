@@ -0,0 +1,238 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.pool.PoolStats;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A named client together with its connection pool, IO reactor, node selection and sniffing,
+ * shared by reference count. Every user takes a reference with {@link ElasticsearchClientConfig#acquire(String)}
+ * or {@link #retain()} and gives it back with {@link #release()}; the client stays open, and its connections
+ * warm, until the last reference is released. It then waits for requests still in flight, up to the drain
+ * timeout, before closing.
+ */
+public final class SharedClient implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedClient.class);
+
+    private static final long DRAIN_POLL_MILLIS = 10;
+
+    private final String name;
+    private final RestHighLevelClient client;
+    private final RestHighLevelClient compressingClient;
+    private final long compressionThreshold;
+    private final ConnectionPoolMetrics connectionPoolMetrics;
+    private final LatencyAwareNodeSelector nodeSelector;
+    private final NodeCircuitBreaker circuitBreaker;
+    private final HttpTrafficMeter trafficMeter;
+    private final NodeSniffer nodeSniffer;
+    private final long drainTimeoutMillis;
+    // Guarded by ElasticsearchClientConfig.class, which also guards the registry of named clients
+    private int references;
+    private boolean released;
+    private boolean forced;
+
+    SharedClient(String name,
+                 RestHighLevelClient client,
+                 RestHighLevelClient compressingClient,
+                 long compressionThreshold,
+                 ConnectionPoolMetrics connectionPoolMetrics,
+                 LatencyAwareNodeSelector nodeSelector,
+                 NodeCircuitBreaker circuitBreaker,
+                 HttpTrafficMeter trafficMeter,
+                 NodeSniffer nodeSniffer,
+                 long drainTimeoutMillis) {
+        this.name = name;
+        this.client = client;
+        this.compressingClient = compressingClient;
+        this.compressionThreshold = compressionThreshold;
+        this.connectionPoolMetrics = connectionPoolMetrics;
+        this.nodeSelector = nodeSelector;
+        this.circuitBreaker = circuitBreaker;
+        this.trafficMeter = trafficMeter;
+        this.nodeSniffer = nodeSniffer;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the client
+     */
+    public RestHighLevelClient getClient() {
+        return client;
+    }
+
+    /**
+     * Get the client to send a request body of the given size with.
+     * With gzip compression enabled, bodies of at least the compression threshold are sent
+     * compressed; smaller ones are not worth the CPU. Both clients share one connection pool.
+     * @param requestBodyBytes size of the request body in bytes
+     * @return RestHighLevelClient instance
+     */
+    public RestHighLevelClient getClient(long requestBodyBytes) {
+        if (compressingClient != null && requestBodyBytes >= compressionThreshold) {
+            return compressingClient;
+        }
+        return client;
+    }
+
+    public ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return connectionPoolMetrics;
+    }
+
+    /**
+     * @return node selector, or null if nodes are selected round-robin
+     */
+    public LatencyAwareNodeSelector getNodeSelector() {
+        return nodeSelector;
+    }
+
+    /**
+     * @return circuit breaker, or null if circuit breaking is disabled
+     */
+    public NodeCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return meter reporting the HTTP body sizes of this client to metrics registries
+     */
+    public HttpTrafficMeter getTrafficMeter() {
+        return trafficMeter;
+    }
+
+    /**
+     * @return number of references not yet released
+     */
+    public int getReferenceCount() {
+        synchronized (ElasticsearchClientConfig.class) {
+            return references;
+        }
+    }
+
+    /**
+     * @return true once the last reference has been released and the client is closing or closed
+     */
+    public boolean isReleased() {
+        synchronized (ElasticsearchClientConfig.class) {
+            return released;
+        }
+    }
+
+    /**
+     * Take another reference, to be given back with {@link #release()}
+     * @return this client
+     * @throws IllegalStateException if the last reference has already been released
+     */
+    public SharedClient retain() {
+        synchronized (ElasticsearchClientConfig.class) {
+            if (released) {
+                throw new IllegalStateException("Elasticsearch client " + name + " has been closed");
+            }
+            references++;
+            return this;
+        }
+    }
+
+    /**
+     * Give back a reference. Releasing the last one drains and closes the client; the next
+     * {@link ElasticsearchClientConfig#acquire(String)} of the same name creates a new one.
+     * Does nothing once {@link ElasticsearchClientConfig#closeAllClients()} has closed the client,
+     * so references can still be given back at shutdown.
+     * @throws IllegalStateException if the last reference has already been released
+     */
+    public void release() {
+        boolean last;
+        synchronized (ElasticsearchClientConfig.class) {
+            if (released && forced) {
+                log.debug("Elasticsearch client {} was already closed at shutdown", name);
+                return;
+            }
+            if (released) {
+                throw new IllegalStateException("Elasticsearch client " + name + " has already been closed");
+            }
+            last = --references == 0;
+            if (last) {
+                released = true;
+                ElasticsearchClientConfig.unregister(this);
+            }
+        }
+        if (last) {
+            drainAndClose();
+        }
+    }
+
+    /**
+     * Same as {@link #release()}, so a reference can be held in a try-with-resources block
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * Mark the client released whatever its reference count, for shutting down the process
+     * @return true if this call released it, false if it already was
+     */
+    boolean forceRelease() {
+        synchronized (ElasticsearchClientConfig.class) {
+            if (released) {
+                return false;
+            }
+            released = true;
+            forced = true;
+            references = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Stop sniffing, wait until no request holds or waits for a connection, or the drain timeout
+     * passes, and close the clients
+     */
+    void drainAndClose() {
+        if (nodeSniffer != null) {
+            nodeSniffer.close();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        int inFlight;
+        try {
+            while ((inFlight = getInFlight()) > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight = getInFlight();
+        }
+        if (inFlight > 0) {
+            log.warn("Closing Elasticsearch client {} with {} requests still in flight", name, inFlight);
+        }
+        try {
+            // Close the client borrowing the pool first, closing the other one shuts the pool down
+            if (compressingClient != null) {
+                compressingClient.close();
+            }
+            client.close();
+            log.info("Elasticsearch client {} closed", name);
+        } catch (IOException e) {
+            log.error("Error closing Elasticsearch client {}", name, e);
+        }
+    }
+
+    private int getInFlight() {
+        PoolStats stats = connectionPoolMetrics.getTotalStats();
+        return stats.getLeased() + stats.getPending();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedClient{name='" + name + "', references=" + getReferenceCount() + ", pool=" + connectionPoolMetrics.getTotalStats() + '}';
+    }
+}
@@ -0,0 +1,295 @@
+package org.daodao.elasticsearch.load;
+
+import org.daodao.elasticsearch.metrics.ClientMetrics;
+import org.daodao.elasticsearch.metrics.OperationStats;
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.service.BulkResult;
+import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.ResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of inserts, gets, updates, searches and deletes through an {@link ElasticsearchService}
+ * and reports throughput and latency percentiles per operation.
+ *
+ * <p>At a fixed rate the load is open loop: every operation has a scheduled start time and its latency
+ * is measured from that time, not from when it was actually sent. When the cluster slows down and the
+ * concurrency limit holds operations back, the time they wait counts against them, so a stall shows
+ * up in the percentiles instead of silently lowering the load (coordinated omission). At maximum
+ * throughput each worker waits for its previous operation, and latency is the service time.
+ */
+public class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final String ID_PREFIX = "load-";
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet",
+            "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango"
+    };
+
+    private final ElasticsearchService service;
+    private final LoadSettings settings;
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+    private final AtomicLong nextId = new AtomicLong();
+    // Replaced rather than reset, so operations completing during a swap are not lost or split
+    private volatile ClientMetrics interval = new ClientMetrics();
+    private volatile ClientMetrics total = new ClientMetrics();
+
+    /**
+     * Create a load generator
+     * @param service service to send the load through, configured as it should be tested
+     * @param settings what to send and for how long
+     */
+    public LoadGenerator(ElasticsearchService service, LoadSettings settings) {
+        this.service = service;
+        this.settings = settings;
+        List<LoadOperation> weighted = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int sum = 0;
+        for (Map.Entry<LoadOperation, Integer> entry : settings.getMix().entrySet()) {
+            if (entry.getValue() > 0) {
+                sum += entry.getValue();
+                weighted.add(entry.getKey());
+                weights.add(sum);
+            }
+        }
+        this.operations = weighted.toArray(new LoadOperation[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Index the initial documents, run the warmup and the measured load, and log the results
+     * @return measurements of the measured period per operation, by {@link LoadOperation#label()}
+     * @throws IOException if the index cannot be prepared
+     * @throws InterruptedException if interrupted while sending load
+     */
+    public Map<String, OperationStats> run() throws IOException, InterruptedException {
+        prepare();
+        return sendLoad();
+    }
+
+    /**
+     * Create the index if needed and index the initial documents
+     */
+    void prepare() throws IOException {
+        String indexName = settings.getIndexName();
+        if (!service.indexExists(indexName)) {
+            service.createIndex(indexName);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<SampleData> documents = new ArrayList<>(settings.getDocuments());
+        for (int i = 0; i < settings.getDocuments(); i++) {
+            documents.add(document(ID_PREFIX + i, random));
+        }
+        if (!documents.isEmpty()) {
+            BulkResult result = service.insertDocuments(indexName, documents);
+            log.info("Indexed {} documents into {}, {} failed", result.getIndexedCount(), indexName, result.getFailedCount());
+        }
+        nextId.set(settings.getDocuments());
+    }
+
+    /**
+     * Run the warmup and the measured load against a prepared index, and log the results
+     */
+    Map<String, OperationStats> sendLoad() throws InterruptedException {
+        log.info("Starting load test with {}", settings);
+        log.info(settings.getRate() > 0
+                ? "Open loop: latency is measured from each operation's scheduled start"
+                : "Closed loop at maximum throughput: latency is measured from each operation's actual start");
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startedAt = System.nanoTime();
+        long warmupNanos = TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+        long endAt = startedAt + warmupNanos + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        try {
+            if (warmupNanos > 0) {
+                reporter.schedule(() -> {
+                    total = new ClientMetrics();
+                    log.info("Warmup finished, measuring for {} s", settings.getDurationSeconds());
+                }, warmupNanos, TimeUnit.NANOSECONDS);
+            }
+            long reportNanos = TimeUnit.SECONDS.toNanos(settings.getReportIntervalSeconds());
+            if (reportNanos > 0) {
+                reporter.scheduleAtFixedRate(() -> {
+                    ClientMetrics finished = interval;
+                    interval = new ClientMetrics();
+                    long elapsedNanos = System.nanoTime() - startedAt;
+                    String title = (elapsedNanos <= warmupNanos ? "Warmup " : "") + TimeUnit.NANOSECONDS.toSeconds(elapsedNanos) + " s";
+                    report(title, finished.getOperations());
+                }, reportNanos, reportNanos, TimeUnit.NANOSECONDS);
+            }
+
+            if (settings.getRate() > 0) {
+                runOpenLoop(startedAt, endAt);
+            } else {
+                runClosedLoop(endAt);
+            }
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        Map<String, OperationStats> results = total.getOperations();
+        report("Total", results);
+        return results;
+    }
+
+    private void runOpenLoop(long startedAt, long endAt) throws InterruptedException {
+        double periodNanos = 1e9 / settings.getRate();
+        Semaphore inFlight = new Semaphore(settings.getConcurrency());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long scheduledStart = startedAt + (long) (i * periodNanos);
+                if (scheduledStart - endAt >= 0) {
+                    break;
+                }
+                long wait;
+                while ((wait = scheduledStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // Operations held back here keep their scheduled start, so the wait counts as latency
+                inFlight.acquire();
+                LoadOperation operation = nextOperation(random);
+                executor.execute(() -> {
+                    try {
+                        execute(operation, scheduledStart);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private void runClosedLoop(long endAt) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.getConcurrency(); i++) {
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() - endAt < 0) {
+                        execute(nextOperation(random), System.nanoTime());
+                    }
+                });
+            }
+        }
+    }
+
+    private void execute(LoadOperation operation, long startedAt) {
+        String status = null;
+        try {
+            perform(operation, ThreadLocalRandom.current());
+        } catch (IOException | RuntimeException e) {
+            status = statusOf(e);
+        }
+        long latencyNanos = System.nanoTime() - startedAt;
+        record(interval, operation, latencyNanos, status);
+        record(total, operation, latencyNanos, status);
+    }
+
+    private static void record(ClientMetrics metrics, LoadOperation operation, long latencyNanos, String status) {
+        if (status == null) {
+            metrics.recordLatency(operation.label(), latencyNanos);
+        } else {
+            metrics.recordError(operation.label(), latencyNanos, status);
+        }
+    }
+
+    private void perform(LoadOperation operation, ThreadLocalRandom random) throws IOException {
+        String indexName = settings.getIndexName();
+        switch (operation) {
+            case INSERT:
+                service.insertDocument(indexName, document(ID_PREFIX + nextId.getAndIncrement(), random));
+                break;
+            case GET:
+                service.getDocument(indexName, randomId(random));
+                break;
+            case UPDATE:
+                String id = randomId(random);
+                service.updateDocument(indexName, id, document(id, random));
+                break;
+            case SEARCH:
+                service.searchDocumentsByName(indexName, WORDS[random.nextInt(WORDS.length)]);
+                break;
+            case DELETE:
+                service.deleteDocument(indexName, randomId(random));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected operation " + operation);
+        }
+    }
+
+    private LoadOperation nextOperation(ThreadLocalRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /**
+     * Pick one of the documents indexed so far; it may have been deleted since
+     */
+    private String randomId(ThreadLocalRandom random) {
+        return ID_PREFIX + random.nextLong(Math.max(1, nextId.get()));
+    }
+
+    private static SampleData document(String id, ThreadLocalRandom random) {
+        String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+        return new SampleData(id, name, "Load test document " + id, LocalDateTime.now());
+    }
+
+    private static String statusOf(Exception e) {
+        if (e instanceof ElasticsearchException) {
+            return String.valueOf(((ElasticsearchException) e).status().getStatus());
+        }
+        if (e instanceof ResponseException) {
+            return String.valueOf(((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private static void report(String title, Map<String, OperationStats> operations) {
+        long count = 0;
+        long errors = 0;
+        double throughput = 0;
+        for (OperationStats stats : operations.values()) {
+            count += stats.getCount();
+            errors += stats.getErrorCount();
+            throughput += stats.getThroughputPerSecond();
+        }
+        log.info("{}: {} operations, {} ops/s, {} errors", title, count, format(throughput), errors);
+        operations.forEach((name, stats) -> log.info(
+                "  {}: {} ops/s, latency mean {} ms, p50 {} ms, p99 {} ms, p99.9 {} ms, max {} ms, errors {}",
+                name, format(stats.getThroughputPerSecond()), format(stats.getLatencyMeanMillis()),
+                format(stats.getLatencyP50Millis()), format(stats.getLatencyP99Millis()),
+                format(stats.getLatencyP999Millis()), format(stats.getLatencyMaxMillis()), stats.getErrors()));
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
@@ -0,0 +1,35 @@
+package org.daodao.elasticsearch.load;
+
+import java.util.Locale;
+
+/**
+ * Operations a load test mixes
+ */
+public enum LoadOperation {
+    INSERT,
+    GET,
+    UPDATE,
+    SEARCH,
+    DELETE;
+
+    /**
+     * @return name used in the mix option and in reports
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param label name as used in the mix option, case insensitive
+     * @return the operation
+     * @throws IllegalArgumentException if no operation has this name
+     */
+    public static LoadOperation fromLabel(String label) {
+        for (LoadOperation operation : values()) {
+            if (operation.label().equalsIgnoreCase(label.trim())) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + label + ", expected one of insert, get, update, search, delete");
+    }
+}
@@ -0,0 +1,194 @@
+package org.daodao.elasticsearch.load;
+
+import org.daodao.elasticsearch.util.Constants;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a load test sends and for how long.
+ * With a positive rate, operations start on a fixed schedule whatever the responses do, and at most
+ * concurrency of them are in flight. With a rate of 0, concurrency workers each send the next operation
+ * as soon as the previous one completes, which finds the maximum throughput.
+ */
+public class LoadSettings {
+
+    private static final Set<String> OPTIONS = Set.of(
+            "mix", "rate", "duration", "warmup", "concurrency", "report-interval", "documents", "index");
+
+    private final Map<LoadOperation, Integer> mix;
+    private final double rate;
+    private final long durationSeconds;
+    private final long warmupSeconds;
+    private final int concurrency;
+    private final long reportIntervalSeconds;
+    private final int documents;
+    private final String indexName;
+
+    /**
+     * Create settings using the defaults from {@link Constants}
+     */
+    public LoadSettings() {
+        this(parseMix(Constants.DEFAULT_LOAD_MIX),
+                Constants.DEFAULT_LOAD_RATE,
+                Constants.DEFAULT_LOAD_DURATION_S,
+                Constants.DEFAULT_LOAD_WARMUP_S,
+                Constants.DEFAULT_LOAD_CONCURRENCY,
+                Constants.DEFAULT_LOAD_REPORT_INTERVAL_S,
+                Constants.DEFAULT_LOAD_DOCUMENTS,
+                Constants.LOAD_INDEX_NAME);
+    }
+
+    /**
+     * Create settings
+     * @param mix relative weight of each operation, operations without a weight are not sent
+     * @param rate operations started per second, 0 for as many as the cluster completes
+     * @param durationSeconds how long to measure, after the warmup
+     * @param warmupSeconds how long to send load before measuring
+     * @param concurrency maximum number of operations in flight
+     * @param reportIntervalSeconds interval between progress reports, 0 for a final report only
+     * @param documents number of documents indexed before the test, for gets, updates and deletes to find
+     * @param indexName index to run against, created if it does not exist
+     */
+    public LoadSettings(Map<LoadOperation, Integer> mix, double rate, long durationSeconds, long warmupSeconds,
+                        int concurrency, long reportIntervalSeconds, int documents, String indexName) {
+        if (mix.values().stream().anyMatch(weight -> weight < 0)) {
+            throw new IllegalArgumentException("mix weights must not be negative: " + mix);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("mix must give at least one operation a positive weight: " + mix);
+        }
+        if (!(rate >= 0)) {
+            throw new IllegalArgumentException("rate must not be negative: " + rate);
+        }
+        if (durationSeconds <= 0) {
+            throw new IllegalArgumentException("durationSeconds must be positive: " + durationSeconds);
+        }
+        if (warmupSeconds < 0) {
+            throw new IllegalArgumentException("warmupSeconds must not be negative: " + warmupSeconds);
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        if (reportIntervalSeconds < 0) {
+            throw new IllegalArgumentException("reportIntervalSeconds must not be negative: " + reportIntervalSeconds);
+        }
+        if (documents < 0) {
+            throw new IllegalArgumentException("documents must not be negative: " + documents);
+        }
+        if (indexName == null || indexName.isEmpty()) {
+            throw new IllegalArgumentException("indexName must not be empty");
+        }
+        this.mix = Collections.unmodifiableMap(new EnumMap<>(mix));
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.concurrency = concurrency;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.documents = documents;
+        this.indexName = indexName;
+    }
+
+    /**
+     * Create settings from command line options of the form --name=value.
+     * Options: --mix (e.g. insert:20,get:50,update:10,search:15,delete:5), --rate, --duration and
+     * --warmup in seconds, --concurrency, --report-interval in seconds, --documents and --index.
+     * Options not given keep their defaults.
+     * @param args command line options
+     * @return settings
+     * @throws IllegalArgumentException if an option is unknown or its value is invalid
+     */
+    public static LoadSettings parse(String... args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, eq);
+            if (!OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name + ", expected one of " + OPTIONS);
+            }
+            options.put(name, arg.substring(eq + 1));
+        }
+        try {
+            return new LoadSettings(
+                    parseMix(options.getOrDefault("mix", Constants.DEFAULT_LOAD_MIX)),
+                    Double.parseDouble(options.getOrDefault("rate", String.valueOf(Constants.DEFAULT_LOAD_RATE))),
+                    Long.parseLong(options.getOrDefault("duration", String.valueOf(Constants.DEFAULT_LOAD_DURATION_S))),
+                    Long.parseLong(options.getOrDefault("warmup", String.valueOf(Constants.DEFAULT_LOAD_WARMUP_S))),
+                    Integer.parseInt(options.getOrDefault("concurrency", String.valueOf(Constants.DEFAULT_LOAD_CONCURRENCY))),
+                    Long.parseLong(options.getOrDefault("report-interval", String.valueOf(Constants.DEFAULT_LOAD_REPORT_INTERVAL_S))),
+                    Integer.parseInt(options.getOrDefault("documents", String.valueOf(Constants.DEFAULT_LOAD_DOCUMENTS))),
+                    options.getOrDefault("index", Constants.LOAD_INDEX_NAME));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parse an operation mix such as {@code insert:20,get:80}
+     * @param mix comma separated operation:weight pairs
+     * @return weight per operation
+     */
+    static Map<LoadOperation, Integer> parseMix(String mix) {
+        Map<LoadOperation, Integer> weights = new EnumMap<>(LoadOperation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight but got " + part);
+            }
+            weights.put(LoadOperation.fromLabel(pair[0]), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    public Map<LoadOperation, Integer> getMix() {
+        return mix;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadSettings{" +
+                "mix=" + mix +
+                ", rate=" + rate +
+                ", durationSeconds=" + durationSeconds +
+                ", warmupSeconds=" + warmupSeconds +
+                ", concurrency=" + concurrency +
+                ", reportIntervalSeconds=" + reportIntervalSeconds +
+                ", documents=" + documents +
+                ", indexName='" + indexName + '\'' +
+                '}';
+    }
+}
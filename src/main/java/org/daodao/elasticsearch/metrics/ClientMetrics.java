@@ -0,0 +1,187 @@
+package org.daodao.elasticsearch.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link MetricsRegistry} with latency histograms per operation and byte counts per
+ * REST endpoint. Snapshots can be read directly or over JMX once {@link #registerMBean(String)}
+ * has been called. Recording takes no locks and does not allocate after the first call of an
+ * operation, so it can stay enabled in production.
+ */
+public class ClientMetrics implements MetricsRegistry, ClientMetricsMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientMetrics.class);
+
+    public static final String JMX_DOMAIN = "org.daodao.elasticsearch";
+
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Traffic> traffic = new ConcurrentHashMap<>();
+    private volatile long startedAt = System.nanoTime();
+    private ObjectName objectName;
+
+    @Override
+    public void recordLatency(String operation, long latencyNanos) {
+        operation(operation).latency.record(latencyNanos);
+    }
+
+    @Override
+    public void recordError(String operation, long latencyNanos, String status) {
+        Operation stats = operation(operation);
+        stats.latency.record(latencyNanos);
+        stats.errors.computeIfAbsent(status, ignored -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordServerTime(String operation, long tookMillis, long roundTripNanos) {
+        Operation stats = operation(operation);
+        stats.serverTime.record(TimeUnit.MILLISECONDS.toNanos(tookMillis));
+        stats.roundTrip.record(roundTripNanos);
+    }
+
+    @Override
+    public void recordTraffic(String endpoint, long requestBytes, long responseBytes) {
+        Traffic counts = traffic.computeIfAbsent(endpoint, ignored -> new Traffic());
+        counts.exchanges.increment();
+        if (requestBytes >= 0) {
+            counts.requestBytes.add(requestBytes);
+        } else {
+            counts.unsizedRequests.increment();
+        }
+        if (responseBytes >= 0) {
+            counts.responseBytes.add(responseBytes);
+        } else {
+            counts.unsizedResponses.increment();
+        }
+    }
+
+    /**
+     * @param operation operation name
+     * @return measurements of the operation, or null if it has not been called
+     */
+    public OperationStats getOperation(String operation) {
+        Operation stats = operations.get(operation);
+        return stats != null ? stats.snapshot(elapsedSeconds()) : null;
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        double elapsedSeconds = elapsedSeconds();
+        Map<String, OperationStats> snapshot = new TreeMap<>();
+        operations.forEach((name, stats) -> snapshot.put(name, stats.snapshot(elapsedSeconds)));
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, TrafficStats> getTraffic() {
+        Map<String, TrafficStats> snapshot = new TreeMap<>();
+        traffic.forEach((endpoint, counts) -> snapshot.put(endpoint, counts.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+        traffic.clear();
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Publish the metrics over JMX as {@code org.daodao.elasticsearch:type=ClientMetrics,name=<name>}
+     * @param name name distinguishing these metrics from those of other services
+     * @throws IllegalStateException if the metrics cannot be registered, for example because the name is taken
+     */
+    public synchronized void registerMBean(String name) {
+        unregisterMBean();
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=ClientMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            log.info("Client metrics published over JMX as {}", objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register client metrics over JMX as " + name, e);
+        }
+    }
+
+    /**
+     * Stop publishing the metrics over JMX, if they were
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Failed to unregister client metrics {}", objectName, e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return JMX name of the metrics, or null if they are not published
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private Operation operation(String operation) {
+        Operation stats = operations.get(operation);
+        return stats != null ? stats : operations.computeIfAbsent(operation, ignored -> new Operation());
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - startedAt) / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientMetrics{operations=" + getOperations() + ", traffic=" + getTraffic() + '}';
+    }
+
+    /**
+     * Measurements of one operation
+     */
+    private static final class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serverTime = new LatencyHistogram();
+        final LatencyHistogram roundTrip = new LatencyHistogram();
+        final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        OperationStats snapshot(double elapsedSeconds) {
+            Map<String, Long> errorCounts = new HashMap<>();
+            errors.forEach((status, count) -> errorCounts.put(status, count.sum()));
+            return new OperationStats(latency, errorCounts, elapsedSeconds, serverTime, roundTrip);
+        }
+    }
+
+    /**
+     * Byte counts of one REST endpoint
+     */
+    private static final class Traffic {
+        final LongAdder exchanges = new LongAdder();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final LongAdder unsizedRequests = new LongAdder();
+        final LongAdder unsizedResponses = new LongAdder();
+
+        TrafficStats snapshot() {
+            return new TrafficStats(exchanges.sum(), requestBytes.sum(), responseBytes.sum(),
+                    unsizedRequests.sum(), unsizedResponses.sum());
+        }
+    }
+}
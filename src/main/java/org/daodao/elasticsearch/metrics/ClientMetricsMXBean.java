@@ -0,0 +1,24 @@
+package org.daodao.elasticsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ClientMetrics}, readable with jconsole or any JMX client
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     * @return measurements keyed by operation name
+     */
+    Map<String, OperationStats> getOperations();
+
+    /**
+     * @return HTTP body sizes keyed by REST endpoint
+     */
+    Map<String, TrafficStats> getTraffic();
+
+    /**
+     * Start measuring from scratch
+     */
+    void reset();
+}
@@ -0,0 +1,124 @@
+package org.daodao.elasticsearch.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets.
+ *
+ * <p>Every power of two is split into 16 buckets, so a percentile is reported to within about 6%
+ * of the true value whatever its magnitude, from nanoseconds to hours, in a fixed 8 KB.
+ * Recording is a few array and adder increments and never allocates. Readers see a consistent
+ * enough view while recording goes on; percentiles are not exact across concurrent updates.
+ */
+public class LatencyHistogram {
+
+    // Values below this are counted exactly
+    private static final int LINEAR_BUCKETS = 32;
+    // Buckets per power of two above the linear range
+    private static final int HALF_BUCKETS = LINEAR_BUCKETS / 2;
+    private static final int SHIFT_BITS = Integer.numberOfTrailingZeros(LINEAR_BUCKETS) - 1;
+    // The largest long has its highest bit at 62, which needs a shift of 58
+    private static final int BUCKET_COUNT = (63 - SHIFT_BITS) * HALF_BUCKETS + LINEAR_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     * @param nanos duration in nanoseconds, negative values count as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return sum of all recorded durations in nanoseconds
+     */
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @return mean duration in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100, for example 99.9
+     * @return upper bound of the bucket holding the percentile in nanoseconds, capped by the maximum; 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget all recorded durations. Durations recorded meanwhile may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // Keeps the top five bits of the value, the highest of which is always set
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SHIFT_BITS;
+        return shift * HALF_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF_BUCKETS - 1;
+        long top = bucket % HALF_BUCKETS + HALF_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
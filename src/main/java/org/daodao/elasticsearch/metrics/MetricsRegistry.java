@@ -0,0 +1,43 @@
+package org.daodao.elasticsearch.metrics;
+
+/**
+ * Receives the measurements of an instrumented {@link org.daodao.elasticsearch.service.ElasticsearchService}.
+ *
+ * <p>{@link ClientMetrics} keeps them in memory and publishes them over JMX; other implementations
+ * can forward them to a metrics library of their choice. Methods are called on the threads that
+ * complete the operations, including the client's I/O threads, so they must be thread-safe and
+ * must not block.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Record a completed operation
+     * @param operation operation name, one of the {@code OPERATION_*} names in {@link org.daodao.elasticsearch.util.Constants}
+     * @param latencyNanos time the caller waited, from the call to the result
+     */
+    void recordLatency(String operation, long latencyNanos);
+
+    /**
+     * Record a failed operation
+     * @param operation operation name
+     * @param latencyNanos time the caller waited, from the call to the failure
+     * @param status HTTP status of the failure, for example "429", or the exception class name if there was no response
+     */
+    void recordError(String operation, long latencyNanos, String status);
+
+    /**
+     * Record the time the cluster spent on a request, for operations whose responses report it
+     * @param operation operation name
+     * @param tookMillis server-side processing time reported as {@code took}
+     * @param roundTripNanos time from sending the request, including retries, to receiving the response
+     */
+    void recordServerTime(String operation, long tookMillis, long roundTripNanos);
+
+    /**
+     * Record the body sizes of an HTTP exchange
+     * @param endpoint REST endpoint, for example "search", "bulk" or "get"
+     * @param requestBytes request body size on the wire, -1 if it was not known up front (compressed bodies)
+     * @param responseBytes response body size on the wire, -1 if the response did not declare it
+     */
+    void recordTraffic(String endpoint, long requestBytes, long responseBytes);
+}
@@ -0,0 +1,130 @@
+package org.daodao.elasticsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the measurements of one operation kept by {@link ClientMetrics}.
+ *
+ * <p>Latency is what the caller waited, including retries, hedges, cache lookups and parsing.
+ * For operations whose responses report {@code took}, the server time is what the cluster spent
+ * and the round trip is what passed between sending the request and receiving the response.
+ * A round trip well above the server time points at the network or the client's connection pool;
+ * a latency well above the round trip points at the client itself.
+ */
+public class OperationStats {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final long count;
+    private final long errorCount;
+    private final Map<String, Long> errors;
+    private final double throughputPerSecond;
+    private final double latencyMeanMillis;
+    private final double latencyP50Millis;
+    private final double latencyP99Millis;
+    private final double latencyP999Millis;
+    private final double latencyMaxMillis;
+    private final long serverTimeCount;
+    private final double serverTimeMeanMillis;
+    private final double serverTimeP99Millis;
+    private final double roundTripMeanMillis;
+
+    OperationStats(LatencyHistogram latency, Map<String, Long> errors, double elapsedSeconds,
+                   LatencyHistogram serverTime, LatencyHistogram roundTrip) {
+        this.count = latency.getCount();
+        this.errors = Map.copyOf(errors);
+        this.errorCount = errors.values().stream().mapToLong(Long::longValue).sum();
+        this.throughputPerSecond = elapsedSeconds > 0 ? count / elapsedSeconds : 0;
+        this.latencyMeanMillis = latency.getMeanNanos() / NANOS_PER_MILLI;
+        this.latencyP50Millis = latency.getPercentileNanos(50) / NANOS_PER_MILLI;
+        this.latencyP99Millis = latency.getPercentileNanos(99) / NANOS_PER_MILLI;
+        this.latencyP999Millis = latency.getPercentileNanos(99.9) / NANOS_PER_MILLI;
+        this.latencyMaxMillis = latency.getMaxNanos() / NANOS_PER_MILLI;
+        this.serverTimeCount = serverTime.getCount();
+        this.serverTimeMeanMillis = serverTime.getMeanNanos() / NANOS_PER_MILLI;
+        this.serverTimeP99Millis = serverTime.getPercentileNanos(99) / NANOS_PER_MILLI;
+        this.roundTripMeanMillis = roundTrip.getMeanNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return calls completed, successful or not
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return failed calls keyed by HTTP status, or by exception class name if there was no response
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return calls completed per second since the metrics were created or last reset
+     */
+    public double getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    public double getLatencyMeanMillis() {
+        return latencyMeanMillis;
+    }
+
+    public double getLatencyP50Millis() {
+        return latencyP50Millis;
+    }
+
+    public double getLatencyP99Millis() {
+        return latencyP99Millis;
+    }
+
+    public double getLatencyP999Millis() {
+        return latencyP999Millis;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latencyMaxMillis;
+    }
+
+    /**
+     * @return responses that reported {@code took}
+     */
+    public long getServerTimeCount() {
+        return serverTimeCount;
+    }
+
+    public double getServerTimeMeanMillis() {
+        return serverTimeMeanMillis;
+    }
+
+    public double getServerTimeP99Millis() {
+        return serverTimeP99Millis;
+    }
+
+    /**
+     * @return mean time between sending a request and receiving its response, for responses that reported {@code took}
+     */
+    public double getRoundTripMeanMillis() {
+        return roundTripMeanMillis;
+    }
+
+    /**
+     * @return mean round trip beyond the server time: network transfer and waiting for a connection
+     */
+    public double getOutsideServerMeanMillis() {
+        return serverTimeCount == 0 ? 0 : Math.max(0, roundTripMeanMillis - serverTimeMeanMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OperationStats{count=%d, errors=%s, throughput=%.1f/s, latency mean=%.2fms p50=%.2fms "
+                        + "p99=%.2fms p999=%.2fms max=%.2fms, took mean=%.2fms p99=%.2fms, roundTrip mean=%.2fms}",
+                count, errors, throughputPerSecond, latencyMeanMillis, latencyP50Millis, latencyP99Millis,
+                latencyP999Millis, latencyMaxMillis, serverTimeMeanMillis, serverTimeP99Millis, roundTripMeanMillis);
+    }
+}
@@ -0,0 +1,65 @@
+package org.daodao.elasticsearch.metrics;
+
+/**
+ * Snapshot of the HTTP traffic of one REST endpoint kept by {@link ClientMetrics}
+ */
+public class TrafficStats {
+
+    private final long exchanges;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long unsizedRequests;
+    private final long unsizedResponses;
+
+    TrafficStats(long exchanges, long requestBytes, long responseBytes, long unsizedRequests, long unsizedResponses) {
+        this.exchanges = exchanges;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.unsizedRequests = unsizedRequests;
+        this.unsizedResponses = unsizedResponses;
+    }
+
+    /**
+     * @return requests that received a response
+     */
+    public long getExchanges() {
+        return exchanges;
+    }
+
+    /**
+     * @return request body bytes sent, not counting unsized requests
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return response body bytes received, not counting unsized responses
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return requests whose body size was not known up front, such as gzip compressed bodies
+     */
+    public long getUnsizedRequests() {
+        return unsizedRequests;
+    }
+
+    /**
+     * @return responses that did not declare their body size
+     */
+    public long getUnsizedResponses() {
+        return unsizedResponses;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficStats{exchanges=" + exchanges
+                + ", requestBytes=" + requestBytes
+                + ", responseBytes=" + responseBytes
+                + ", unsizedRequests=" + unsizedRequests
+                + ", unsizedResponses=" + unsizedResponses + '}';
+    }
+}
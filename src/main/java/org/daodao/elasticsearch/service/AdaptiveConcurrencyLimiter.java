@@ -0,0 +1,286 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.common.CheckedSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests in flight and adapts the limit to what the cluster can take
+ * (additive increase, multiplicative decrease).
+ *
+ * <p>Every response that arrives while the limit is at least half used and latency is normal
+ * raises the limit by one. A rejection (429), a timeout or an unavailable node halves it; latency
+ * more than twice the baseline cuts it by a tenth. The baseline is the lowest latency per unit of
+ * work seen so far, drifting slowly upwards so that a lasting change in the workload is accepted
+ * as the new normal. A decrease only happens once per round trip: responses to requests sent
+ * before the last decrease reflect the old limit and are not counted again.
+ *
+ * <p>Requests over the limit wait in arrival order without blocking a thread, unless they are sent
+ * through the blocking {@link #call} method. Instances are thread-safe and obtained through
+ * {@link ElasticsearchService#enableAdaptiveConcurrency(int, int, int)}.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double REJECTION_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    // Latency above this multiple of the baseline counts as congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // Weight of the newest sample in the latency average
+    private static final double ALPHA = 0.2;
+    // Share of the gap a sample above the baseline pulls the baseline up by
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<CompletableFuture<Long>> waiting = new ArrayDeque<>();
+    private double baselineNanosPerUnit;
+    private double averageNanosPerUnit;
+    private long decreasedAt;
+    private boolean decreased;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0) {
+            throw new IllegalArgumentException("minLimit must be positive: " + minLimit);
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("maxLimit must not be less than minLimit: " + maxLimit);
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit: " + initialLimit);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        log.info("Adaptive concurrency started with a limit of {} (between {} and {})", initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Send a request once the limit allows it
+     * @param units amount of work in the request, for example the number of documents of a bulk request;
+     *              latency is compared per unit so that requests of different sizes are comparable
+     * @param operation sends the request
+     * @param rejected tells whether a response reports that the cluster rejected work, for example bulk items failing with 429
+     * @return future completed with the response
+     */
+    <T> CompletableFuture<T> submit(int units, Supplier<CompletableFuture<T>> operation, Predicate<T> rejected) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Long> permit = acquire();
+        permit.whenComplete((startedAt, cancelled) -> {
+            if (cancelled != null) {
+                return;
+            }
+            if (result.isDone()) {
+                release(startedAt, units, false, new CancellationException());
+                return;
+            }
+            CompletableFuture<T> current;
+            try {
+                current = operation.get();
+            } catch (RuntimeException e) {
+                current = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<T> sent = current;
+            result.whenComplete((response, e) -> {
+                if (result.isCancelled()) {
+                    sent.cancel(true);
+                }
+            });
+            sent.whenComplete((response, e) -> {
+                release(startedAt, units, e == null && rejected.test(response), e);
+                if (e == null) {
+                    result.complete(response);
+                } else {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        });
+        // A caller that gives up while waiting leaves the queue
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send a blocking request once the limit allows it, waiting in the calling thread
+     * @param units amount of work in the request
+     * @param operation sends the request
+     * @param rejected tells whether a response reports that the cluster rejected work
+     * @return response
+     * @throws IOException if the request failed or the wait was interrupted
+     */
+    <T> T call(int units, CheckedSupplier<T, IOException> operation, Predicate<T> rejected) throws IOException {
+        CompletableFuture<Long> permit = acquire();
+        long startedAt;
+        try {
+            startedAt = permit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!permit.cancel(false)) {
+                // Granted in the meantime
+                release(permit.join(), units, false, new CancellationException());
+            }
+            throw new IOException("Interrupted while waiting for a concurrency permit", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        T response;
+        try {
+            response = operation.get();
+        } catch (IOException | RuntimeException e) {
+            release(startedAt, units, false, e);
+            throw e;
+        }
+        release(startedAt, units, rejected.test(response), null);
+        return response;
+    }
+
+    /**
+     * @return current number of requests allowed in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of requests waiting for the limit to allow them
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @return lowest latency per unit of work seen, in milliseconds, drifting up with lasting changes
+     */
+    public synchronized double getBaselineLatencyMillis() {
+        return baselineNanosPerUnit / 1e6;
+    }
+
+    /**
+     * @return number of requests sent through the limiter
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of responses that reported rejections, timeouts or unavailable nodes
+     */
+    public long getDropCount() {
+        return drops.get();
+    }
+
+    /**
+     * @return future completed with the time the permit was granted at
+     */
+    private CompletableFuture<Long> acquire() {
+        requests.incrementAndGet();
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(System.nanoTime());
+            }
+            CompletableFuture<Long> permit = new CompletableFuture<>();
+            waiting.add(permit);
+            return permit;
+        }
+    }
+
+    private void release(long startedAt, int units, boolean rejected, Throwable failure) {
+        long now = System.nanoTime();
+        boolean dropped = rejected || (failure != null && RequestRetrier.isTransient(unwrap(failure)));
+        if (dropped) {
+            drops.incrementAndGet();
+        }
+        synchronized (this) {
+            int used = inFlight;
+            inFlight--;
+            if (dropped) {
+                decrease(startedAt, now, REJECTION_BACKOFF);
+            } else if (failure == null) {
+                double sample = (double) (now - startedAt) / Math.max(1, units);
+                averageNanosPerUnit = averageNanosPerUnit == 0 ? sample : averageNanosPerUnit + ALPHA * (sample - averageNanosPerUnit);
+                if (baselineNanosPerUnit == 0 || sample < baselineNanosPerUnit) {
+                    baselineNanosPerUnit = sample;
+                } else {
+                    baselineNanosPerUnit += BASELINE_DRIFT * (sample - baselineNanosPerUnit);
+                }
+                if (averageNanosPerUnit > LATENCY_TOLERANCE * baselineNanosPerUnit) {
+                    decrease(startedAt, now, LATENCY_BACKOFF);
+                } else if (used * 2 >= limit) {
+                    // Only a limit that is actually used is worth raising
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+        }
+        grantWaiting();
+    }
+
+    // Guarded by this
+    private void decrease(long startedAt, long now, double backoff) {
+        if (decreased && startedAt - decreasedAt < 0) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * backoff);
+        decreased = true;
+        decreasedAt = now;
+        log.debug("Concurrency limit lowered to {}", (int) limit);
+    }
+
+    private void grantWaiting() {
+        while (true) {
+            CompletableFuture<Long> permit;
+            synchronized (this) {
+                if (waiting.isEmpty() || inFlight >= (int) limit) {
+                    return;
+                }
+                permit = waiting.poll();
+                inFlight++;
+            }
+            // Completed outside the lock, the request is sent from here
+            if (!permit.complete(System.nanoTime())) {
+                // Cancelled while waiting
+                synchronized (this) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
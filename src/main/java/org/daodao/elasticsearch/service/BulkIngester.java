@@ -0,0 +1,187 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Long-lived bulk writer that groups documents into _bulk requests.
+ * A batch is flushed when the document count, byte size or time limit
+ * of its {@link BulkSettings} is reached, whichever comes first.
+ * Documents rejected with 429 are resent with exponential backoff by the underlying bulk
+ * processor, or by the service's retrier if retries were enabled when the ingester was created.
+ * Instances are thread-safe and obtained from
+ * {@link ElasticsearchService#createBulkIngester(String, BulkSettings, Consumer)}.
+ */
+public class BulkIngester implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkIngester.class);
+
+    private final String indexName;
+    private final ElasticsearchService.IndexRequestFactory requestFactory;
+    private final Consumer<BulkResult.Failure> failureHandler;
+    private final BulkProcessor processor;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+
+    BulkIngester(String indexName,
+                 BulkSettings settings,
+                 BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer,
+                 BackoffPolicy backoffPolicy,
+                 ElasticsearchService.IndexRequestFactory requestFactory,
+                 Consumer<BulkResult.Failure> failureHandler) {
+        this.indexName = indexName;
+        this.requestFactory = requestFactory;
+        this.failureHandler = failureHandler != null ? failureHandler : BulkIngester::logFailure;
+
+        BulkProcessor.Builder builder = BulkProcessor.builder(bulkConsumer, new Listener(), "bulk-ingester-" + indexName)
+                .setBackoffPolicy(backoffPolicy)
+                .setBulkActions(settings.getBulkActions())
+                .setBulkSize(new ByteSizeValue(settings.getBulkSizeBytes(), ByteSizeUnit.BYTES))
+                .setConcurrentRequests(settings.getConcurrentRequests());
+        if (settings.getFlushIntervalMillis() > 0) {
+            builder.setFlushInterval(TimeValue.timeValueMillis(settings.getFlushIntervalMillis()));
+        }
+        this.processor = builder.build();
+        log.info("Bulk ingester for index {} started with {}", indexName, settings);
+    }
+
+    /**
+     * Queue a document for indexing
+     * @param data sample data to insert
+     * @throws IOException if the document cannot be serialized
+     */
+    public void add(SampleData data) throws IOException {
+        add(requestFactory.create(indexName, data));
+    }
+
+    /**
+     * Queue a prepared index request
+     * @param request index request
+     */
+    public void add(IndexRequest request) {
+        submitted.incrementAndGet();
+        processor.add(request);
+    }
+
+    /**
+     * Send the pending documents right away
+     */
+    public void flush() {
+        processor.flush();
+    }
+
+    /**
+     * Flush pending documents and wait for in-flight bulk requests to complete
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if all requests completed in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        return processor.awaitClose(timeout, unit);
+    }
+
+    /**
+     * Flush pending documents and wait for in-flight bulk requests to complete
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!awaitClose(1, TimeUnit.MINUTES)) {
+                log.warn("Timed out waiting for bulk requests of index {} to complete", indexName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while closing bulk ingester for index {}", indexName);
+        }
+        log.info("Bulk ingester for index {} closed: {} submitted, {} indexed, {} failed in {} bulk requests",
+                indexName, getSubmittedCount(), getIndexedCount(), getFailedCount(), getBulkRequestCount());
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getIndexedCount() {
+        return indexed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getBulkRequestCount() {
+        return bulkRequests.get();
+    }
+
+    private static void logFailure(BulkResult.Failure failure) {
+        log.warn("Bulk item failed: {}", failure);
+    }
+
+    /**
+     * Routes per-item results of every flushed batch to the counters and the failure handler.
+     * Failure positions are relative to the batch the item was flushed in.
+     */
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            bulkRequests.incrementAndGet();
+            log.debug("Sending bulk request {} with {} documents ({} bytes) to index {}",
+                    executionId, request.numberOfActions(), request.estimatedSizeInBytes(), indexName);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    failed.incrementAndGet();
+                    failureHandler.accept(new BulkResult.Failure(item.getItemId(), item.getId(),
+                            item.getFailure().getStatus(), item.getFailureMessage()));
+                } else {
+                    indexed.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("Bulk request {} to index {} failed", executionId, indexName, failure);
+            for (int i = 0; i < request.requests().size(); i++) {
+                failed.incrementAndGet();
+                failureHandler.accept(new BulkResult.Failure(i, request.requests().get(i).id(),
+                        RestStatus.INTERNAL_SERVER_ERROR, String.valueOf(failure.getMessage())));
+            }
+        }
+    }
+}
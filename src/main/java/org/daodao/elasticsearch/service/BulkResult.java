@@ -0,0 +1,135 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk write, with one entry per document that failed
+ */
+public class BulkResult {
+
+    private final List<String> indexedIds = new ArrayList<>();
+    private final List<Failure> failures = new ArrayList<>();
+    private long tookMillis;
+
+    /**
+     * Record the items of a bulk response
+     * @param response bulk response
+     * @param offset position of the first item of this response within the whole write
+     */
+    void add(BulkResponse response, int offset) {
+        tookMillis += response.getTook().millis();
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failures.add(new Failure(offset + item.getItemId(), item.getId(),
+                        item.getFailure().getStatus(), item.getFailureMessage()));
+            } else {
+                indexedIds.add(item.getId());
+            }
+        }
+    }
+
+    /**
+     * Record a failure of a single item
+     * @param failure failed item
+     */
+    void addFailure(Failure failure) {
+        failures.add(failure);
+    }
+
+    /**
+     * @return IDs of the documents that were indexed, in request order
+     */
+    public List<String> getIndexedIds() {
+        return Collections.unmodifiableList(indexedIds);
+    }
+
+    /**
+     * @return failed documents, in request order
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public int getIndexedCount() {
+        return indexedIds.size();
+    }
+
+    public int getFailedCount() {
+        return failures.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * @return sum of the server-side processing time of all bulk requests
+     */
+    public long getTookMillis() {
+        return tookMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult{" +
+                "indexed=" + indexedIds.size() +
+                ", failed=" + failures.size() +
+                ", tookMillis=" + tookMillis +
+                '}';
+    }
+
+    /**
+     * A single document that could not be written
+     */
+    public static class Failure {
+        private final int position;
+        private final String id;
+        private final RestStatus status;
+        private final String message;
+
+        public Failure(int position, String id, RestStatus status, String message) {
+            this.position = position;
+            this.id = id;
+            this.status = status;
+            this.message = message;
+        }
+
+        /**
+         * @return position of the document in the submitted collection
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return document ID, may be null for auto-generated IDs
+         */
+        public String getId() {
+            return id;
+        }
+
+        public RestStatus getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "position=" + position +
+                    ", id='" + id + '\'' +
+                    ", status=" + status +
+                    ", message='" + message + '\'' +
+                    '}';
+        }
+    }
+}
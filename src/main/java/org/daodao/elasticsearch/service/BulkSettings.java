@@ -0,0 +1,77 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.util.Constants;
+
+/**
+ * Flush thresholds for bulk indexing.
+ * A pending batch is sent as soon as any one of the limits is reached.
+ */
+public class BulkSettings {
+
+    private final int bulkActions;
+    private final long bulkSizeBytes;
+    private final long flushIntervalMillis;
+    private final int concurrentRequests;
+
+    /**
+     * Create settings using the defaults from {@link Constants}
+     */
+    public BulkSettings() {
+        this(Constants.DEFAULT_BULK_ACTIONS,
+                Constants.DEFAULT_BULK_SIZE_BYTES,
+                Constants.DEFAULT_BULK_FLUSH_INTERVAL_MS,
+                Constants.DEFAULT_BULK_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Create settings
+     * @param bulkActions maximum number of documents per bulk request
+     * @param bulkSizeBytes maximum payload size per bulk request in bytes
+     * @param flushIntervalMillis maximum time a document may wait before being flushed, 0 to disable
+     * @param concurrentRequests number of bulk requests allowed in flight while new ones are being filled
+     */
+    public BulkSettings(int bulkActions, long bulkSizeBytes, long flushIntervalMillis, int concurrentRequests) {
+        if (bulkActions <= 0) {
+            throw new IllegalArgumentException("bulkActions must be positive: " + bulkActions);
+        }
+        if (bulkSizeBytes <= 0) {
+            throw new IllegalArgumentException("bulkSizeBytes must be positive: " + bulkSizeBytes);
+        }
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must not be negative: " + flushIntervalMillis);
+        }
+        if (concurrentRequests < 0) {
+            throw new IllegalArgumentException("concurrentRequests must not be negative: " + concurrentRequests);
+        }
+        this.bulkActions = bulkActions;
+        this.bulkSizeBytes = bulkSizeBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public long getBulkSizeBytes() {
+        return bulkSizeBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkSettings{" +
+                "bulkActions=" + bulkActions +
+                ", bulkSizeBytes=" + bulkSizeBytes +
+                ", flushIntervalMillis=" + flushIntervalMillis +
+                ", concurrentRequests=" + concurrentRequests +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.CheckedFunction;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily pages through every document of an index using a point in time and search_after.
+ * Only one page of hits is held in memory at a time, so memory use does not depend on
+ * the size of the index. The point in time is opened on first use and closed once the
+ * last page has been read or when the iterator is closed, whichever comes first.
+ * Not thread-safe.
+ */
+public class DocumentIterator implements Iterator<SampleData>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentIterator.class);
+
+    // Tiebreaker sort that is unique per document within a point in time
+    static final String SHARD_DOC_SORT = "_shard_doc";
+
+    private final RestHighLevelClient client;
+    private final String indexName;
+    private final int pageSize;
+    private final TimeValue keepAlive;
+    private final CheckedFunction<SearchHit, SampleData, IOException> hitConverter;
+
+    private String pointInTimeId;
+    private Object[] searchAfter;
+    private SearchHit[] page = new SearchHit[0];
+    private int position;
+    private boolean lastPage;
+    private long pageCount;
+
+    DocumentIterator(RestHighLevelClient client,
+                     String indexName,
+                     int pageSize,
+                     TimeValue keepAlive,
+                     CheckedFunction<SearchHit, SampleData, IOException> hitConverter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.client = client;
+        this.indexName = indexName;
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive;
+        this.hitConverter = hitConverter;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < page.length) {
+            return true;
+        }
+        if (lastPage) {
+            return false;
+        }
+        try {
+            fetchNextPage();
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to read next page of index " + indexName, e);
+        }
+        return position < page.length;
+    }
+
+    @Override
+    public SampleData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SearchHit hit = page[position];
+        // Drop the reference so the page can be collected while it is being consumed
+        page[position++] = null;
+        try {
+            return hitConverter.apply(hit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse document " + hit.getId() + " of index " + indexName, e);
+        }
+    }
+
+    /**
+     * @return number of pages fetched so far
+     */
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    private void fetchNextPage() throws IOException {
+        if (pointInTimeId == null) {
+            OpenPointInTimeRequest openRequest = new OpenPointInTimeRequest(indexName).keepAlive(keepAlive);
+            pointInTimeId = client.openPointInTime(openRequest, RequestOptions.DEFAULT).getPointInTimeId();
+            log.debug("Opened point in time on index {}", indexName);
+        }
+
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .size(pageSize)
+                .trackTotalHits(false)
+                .pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive))
+                .sort(SHARD_DOC_SORT, SortOrder.ASC);
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        }
+
+        // Requests against a point in time must not name an index
+        SearchResponse response = client.search(new SearchRequest().source(source), RequestOptions.DEFAULT);
+        pageCount++;
+        if (response.pointInTimeId() != null) {
+            pointInTimeId = response.pointInTimeId();
+        }
+
+        page = response.getHits().getHits();
+        position = 0;
+        if (page.length > 0) {
+            searchAfter = page[page.length - 1].getSortValues();
+        }
+        if (page.length < pageSize) {
+            lastPage = true;
+            releasePointInTime();
+        }
+    }
+
+    /**
+     * Stop iterating and release the point in time if it is still open
+     */
+    @Override
+    public void close() {
+        lastPage = true;
+        page = new SearchHit[0];
+        position = 0;
+        releasePointInTime();
+    }
+
+    private void releasePointInTime() {
+        if (pointInTimeId == null) {
+            return;
+        }
+        String id = pointInTimeId;
+        pointInTimeId = null;
+        try {
+            client.closePointInTime(new ClosePointInTimeRequest(id), RequestOptions.DEFAULT);
+            log.debug("Closed point in time on index {} after {} pages", indexName, pageCount);
+        } catch (IOException | RuntimeException e) {
+            // The point in time expires on its own after the keep-alive
+            log.warn("Failed to close point in time on index {}", indexName, e);
+        }
+    }
+}
@@ -1,44 +1,90 @@
 package org.daodao.elasticsearch.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.daodao.elasticsearch.util.Constants;
+import org.daodao.elasticsearch.cache.CacheSettings;
+import org.daodao.elasticsearch.cache.CacheStats;
+import org.daodao.elasticsearch.cache.LocalCache;
+import org.daodao.elasticsearch.cache.SingleFlight;
 import org.daodao.elasticsearch.config.ElasticsearchClientConfig;
+import org.daodao.elasticsearch.config.SharedClient;
+import org.daodao.elasticsearch.metrics.ClientMetrics;
+import org.daodao.elasticsearch.metrics.MetricsRegistry;
 import org.daodao.elasticsearch.model.SampleData;
-import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
-import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
-import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.Cancellable;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.core.CheckedFunction;
+import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.index.query.WildcardQueryBuilder;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -48,14 +94,449 @@ public class ElasticsearchService {
     
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchService.class);
     
+    // Approximate heap used by a cached document beyond its JSON source: object headers, strings, timestamp
+    private static final int CACHED_DOCUMENT_OVERHEAD_BYTES = 160;
+    // Numbers the JMX names of services that publish metrics
+    private static final AtomicInteger METRICS_SEQUENCE = new AtomicInteger();
+    
+    private final SharedClient sharedClient;
     private final RestHighLevelClient client;
-    private final ObjectMapper objectMapper;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final SampleDataCodec codec;
     private String testIndexName; // For testing purposes
+    private volatile VirtualThreadExecutor virtualThreadExecutor;
+    private volatile LocalCache<DocumentKey, SampleData> documentCache;
+    private volatile QueryResultCache queryCache;
+    private volatile SingleFlight<ReadKey, GetResponse> documentFlights;
+    private volatile MultiGetBatcher multiGetBatcher;
+    private volatile WriteBehindBuffer writeBehindBuffer;
+    private volatile WriteAck writeAck;
+    private volatile SingleFlight<ReadKey, SearchResponse> searchFlights;
+    private volatile RequestRetrier requestRetrier;
+    private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private volatile ReadHedger readHedger;
+    private volatile MetricsRegistry metricsRegistry;
+    private final IndexWriteTracker indexWrites = new IndexWriteTracker();
     
+    /**
+     * Create a service on the default client
+     */
     public ElasticsearchService() {
-        this.client = ElasticsearchClientConfig.getClient();
-        this.objectMapper = new ObjectMapper();
-        objectMapper.findAndRegisterModules();
+        this(Constants.DEFAULT_CLIENT_NAME);
+    }
+    
+    /**
+     * Create a service on the named client, configured by its elasticsearch.name.* properties.
+     * Services on the same name share one client and its connections.
+     * @param clientName client name
+     */
+    public ElasticsearchService(String clientName) {
+        this.sharedClient = ElasticsearchClientConfig.acquire(clientName);
+        this.client = sharedClient.getClient();
+        this.codec = new SampleDataCodec();
+    }
+    
+    /**
+     * Create a service on the given client. The service takes its own reference, so the caller
+     * still releases the one it holds.
+     * @param sharedClient client
+     */
+    public ElasticsearchService(SharedClient sharedClient) {
+        this.sharedClient = sharedClient.retain();
+        this.client = sharedClient.getClient();
+        this.codec = new SampleDataCodec();
+    }
+    
+    /**
+     * Run blocking operations submitted through {@link #submit} and {@link #invokeAll}
+     * on virtual threads, using the default concurrency cap
+     */
+    public void enableVirtualThreads() {
+        enableVirtualThreads(Constants.DEFAULT_VIRTUAL_THREAD_CONCURRENCY);
+    }
+    
+    /**
+     * Run blocking operations submitted through {@link #submit} and {@link #invokeAll}
+     * on virtual threads
+     * @param maxConcurrency maximum number of operations sent to Elasticsearch at the same time
+     */
+    public synchronized void enableVirtualThreads(int maxConcurrency) {
+        VirtualThreadExecutor previous = virtualThreadExecutor;
+        virtualThreadExecutor = new VirtualThreadExecutor(maxConcurrency);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * @return executor used for concurrent operations, or null if virtual threads are not enabled
+     */
+    public VirtualThreadExecutor getVirtualThreadExecutor() {
+        return virtualThreadExecutor;
+    }
+    
+    /**
+     * Serve {@link #getDocument} from an in-process cache, using the default limits
+     */
+    public void enableDocumentCache() {
+        enableDocumentCache(new CacheSettings(Constants.DEFAULT_DOCUMENT_CACHE_MAX_ENTRIES,
+                Constants.DEFAULT_DOCUMENT_CACHE_MAX_BYTES,
+                Constants.DEFAULT_DOCUMENT_CACHE_TTL_MS));
+    }
+    
+    /**
+     * Serve {@link #getDocument} from an in-process cache. Documents are cached on first read,
+     * and updates, deletes and inserts made through this service invalidate them. Changes made by
+     * other clients become visible once the cached copy expires.
+     * Replaces any previously enabled cache.
+     * @param settings size limits and time to live of cached documents
+     */
+    public void enableDocumentCache(CacheSettings settings) {
+        documentCache = new LocalCache<>(settings);
+    }
+    
+    /**
+     * Stop caching documents and drop the cached ones
+     */
+    public void disableDocumentCache() {
+        documentCache = null;
+    }
+    
+    /**
+     * @return statistics of the document cache, or null if it is not enabled
+     */
+    public CacheStats getDocumentCacheStats() {
+        LocalCache<DocumentKey, SampleData> cache = documentCache;
+        return cache != null ? cache.stats() : null;
+    }
+    
+    /**
+     * Serve the search* methods from an in-process result cache, using the default limits
+     */
+    public void enableQueryCache() {
+        enableQueryCache(new CacheSettings(Constants.DEFAULT_QUERY_CACHE_MAX_ENTRIES,
+                Constants.DEFAULT_QUERY_CACHE_MAX_BYTES,
+                Constants.DEFAULT_QUERY_CACHE_TTL_MS));
+    }
+    
+    /**
+     * Serve the search* methods from an in-process result cache keyed by index and query.
+     * Any write to an index through this service invalidates the cached results of that index.
+     * Writes made by other clients become visible once the cached results expire.
+     * Replaces any previously enabled query cache.
+     * @param settings size limits and time to live of cached results
+     */
+    public void enableQueryCache(CacheSettings settings) {
+        queryCache = new QueryResultCache(settings, indexWrites, Constants.DEFAULT_QUERY_CACHE_REFRESH_INTERVAL_MS);
+    }
+    
+    /**
+     * Stop caching search results and drop the cached ones
+     */
+    public void disableQueryCache() {
+        queryCache = null;
+    }
+    
+    /**
+     * @return statistics of the query result cache, or null if it is not enabled
+     */
+    public CacheStats getQueryCacheStats() {
+        QueryResultCache cache = queryCache;
+        return cache != null ? cache.stats() : null;
+    }
+    
+    /**
+     * Let concurrent identical reads share one request. A getDocument or search call that arrives
+     * while the same read is in flight waits for its response instead of sending another one.
+     * Reads that start after a write to the index through this service never join a flight that
+     * started before it.
+     */
+    public void enableReadCoalescing() {
+        documentFlights = new SingleFlight<>();
+        searchFlights = new SingleFlight<>();
+    }
+    
+    /**
+     * Send every read on its own again
+     */
+    public void disableReadCoalescing() {
+        documentFlights = null;
+        searchFlights = null;
+    }
+    
+    /**
+     * @return number of getDocument and search calls made while read coalescing was enabled
+     */
+    public long getCoalescedReadCallCount() {
+        return callCount(documentFlights) + callCount(searchFlights);
+    }
+    
+    /**
+     * @return number of reads that shared the request of an identical read instead of sending their own
+     */
+    public long getCollapsedReadCount() {
+        return collapsedCount(documentFlights) + collapsedCount(searchFlights);
+    }
+    
+    /**
+     * Combine getDocument calls into _mget requests, using the default window and batch size
+     */
+    public void enableGetBatching() {
+        enableGetBatching(Constants.DEFAULT_GET_BATCH_WINDOW_MICROS, Constants.DEFAULT_GET_BATCH_MAX_SIZE);
+    }
+    
+    /**
+     * Combine getDocument calls into _mget requests. Gets from any thread that arrive within the
+     * window, or until the batch is full, are sent together and each caller gets its own document.
+     * Replaces any previously enabled batching.
+     * @param windowMicros how long the first get of a batch waits for others to join, in microseconds
+     * @param maxBatchSize number of gets that are sent right away without waiting for the window
+     */
+    public synchronized void enableGetBatching(long windowMicros, int maxBatchSize) {
+        MultiGetBatcher previous = multiGetBatcher;
+        multiGetBatcher = new MultiGetBatcher(
+                (request, listener) -> retryAsync(true, (ActionListener<MultiGetResponse> mgetListener) ->
+                        client.mgetAsync(request, RequestOptions.DEFAULT, mgetListener)).whenComplete(reportTo(listener)),
+                windowMicros, maxBatchSize);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Send every getDocument call on its own again, after sending the gets already queued
+     */
+    public synchronized void disableGetBatching() {
+        MultiGetBatcher previous = multiGetBatcher;
+        multiGetBatcher = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * @return batcher combining gets into _mget requests, or null if get batching is not enabled
+     */
+    public MultiGetBatcher getMultiGetBatcher() {
+        return multiGetBatcher;
+    }
+    
+    /**
+     * Buffer insertDocument and updateDocument writes in memory and send them as _bulk requests
+     * in the background, using the default capacity and bulk settings
+     * @param ack when buffered writes are reported back to the caller
+     */
+    public void enableWriteBehind(WriteAck ack) {
+        enableWriteBehind(ack, Constants.DEFAULT_WRITE_BEHIND_CAPACITY, new BulkSettings());
+    }
+    
+    /**
+     * Buffer insertDocument and updateDocument writes in memory and send them as _bulk requests
+     * in the background. Documents without an ID get one assigned on the client, so their ID is
+     * known before they are indexed. Replaces any previously enabled buffer after flushing it.
+     * @param ack when buffered writes are reported back to the caller
+     * @param capacity maximum number of buffered writes; writers wait for room once it is reached
+     * @param settings bulk flush thresholds; the flush interval must not be 0
+     */
+    public synchronized void enableWriteBehind(WriteAck ack, int capacity, BulkSettings settings) {
+        WriteBehindBuffer previous = writeBehindBuffer;
+        writeAck = ack;
+        writeBehindBuffer = new WriteBehindBuffer(
+                (request, listener) -> sendBulkAsync(request).whenComplete(reportTo(
+                        ActionListener.runBefore(listener, () -> invalidateCachedDocuments(request)))),
+                capacity, settings, Constants.DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT_MS);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Write directly again, after sending the buffered writes
+     */
+    public synchronized void disableWriteBehind() {
+        WriteBehindBuffer previous = writeBehindBuffer;
+        writeBehindBuffer = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * @return buffer of pending writes, or null if write-behind buffering is not enabled
+     */
+    public WriteBehindBuffer getWriteBehindBuffer() {
+        return writeBehindBuffer;
+    }
+    
+    /**
+     * Retry requests that failed transiently, using the default retry settings
+     */
+    public void enableRetries() {
+        enableRetries(new RetrySettings());
+    }
+    
+    /**
+     * Retry document, search and bulk requests that failed transiently, with exponential backoff
+     * and jitter. Reads, deletes and writes with a document ID are retried after rejections,
+     * unavailable nodes, connection errors and timeouts; inserts without an ID only when they were
+     * rejected or never reached a node, so they are not indexed twice. Bulk requests resend only
+     * the items rejected with 429. Replaces any previously enabled retries.
+     * @param settings retry limits
+     */
+    public synchronized void enableRetries(RetrySettings settings) {
+        RequestRetrier previous = requestRetrier;
+        requestRetrier = new RequestRetrier(settings);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Report failed requests to the caller right away again
+     */
+    public synchronized void disableRetries() {
+        RequestRetrier previous = requestRetrier;
+        requestRetrier = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * @return retrier of failed requests, or null if retries are not enabled
+     */
+    public RequestRetrier getRequestRetrier() {
+        return requestRetrier;
+    }
+    
+    /**
+     * Adapt the number of concurrent bulk requests to the cluster, using the default limits
+     */
+    public void enableAdaptiveConcurrency() {
+        enableAdaptiveConcurrency(Constants.DEFAULT_CONCURRENCY_INITIAL_LIMIT,
+                Constants.DEFAULT_CONCURRENCY_MIN_LIMIT, Constants.DEFAULT_CONCURRENCY_MAX_LIMIT);
+    }
+    
+    /**
+     * Adapt the number of concurrent bulk requests to the cluster. The limit grows while latency
+     * is stable and shrinks on rejections, timeouts and rising latency. It covers every bulk write:
+     * insertDocuments, insertDocumentsAsync, bulk ingesters, NDJSON imports and write-behind
+     * buffering. Their own concurrentRequests setting still applies, so set it to at least
+     * maxLimit to leave the choice to this limiter; write-behind buffering still sends one request
+     * per stripe at a time to keep writes of a document in order. Replaces any previously enabled limiter.
+     * @param initialLimit number of bulk requests allowed in flight at first
+     * @param minLimit lowest limit
+     * @param maxLimit highest limit
+     */
+    public void enableAdaptiveConcurrency(int initialLimit, int minLimit, int maxLimit) {
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+    }
+    
+    /**
+     * Send bulk requests without an adaptive limit again. Requests already waiting for the old limit are still sent.
+     */
+    public void disableAdaptiveConcurrency() {
+        concurrencyLimiter = null;
+    }
+    
+    /**
+     * @return limiter of concurrent bulk requests, or null if adaptive concurrency is not enabled
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+    
+    /**
+     * Hedge slow reads using the default settings
+     */
+    public void enableHedging() {
+        enableHedging(new HedgeSettings());
+    }
+    
+    /**
+     * Send a second copy of a get, search or count that takes longer than usual, with a different
+     * preference so it is likely served by another shard copy, and use whichever answers first.
+     * Gets sent through _mget batching and point in time paging are not hedged.
+     * Replaces any previously enabled hedging.
+     * @param settings hedge delay and budget
+     */
+    public synchronized void enableHedging(HedgeSettings settings) {
+        ReadHedger previous = readHedger;
+        readHedger = new ReadHedger(settings);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Send every read only once again
+     */
+    public synchronized void disableHedging() {
+        ReadHedger previous = readHedger;
+        readHedger = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * @return hedger of slow reads, or null if hedging is not enabled
+     */
+    public ReadHedger getReadHedger() {
+        return readHedger;
+    }
+    
+    /**
+     * Measure every document, search and count operation in memory and publish the measurements
+     * over JMX as {@code org.daodao.elasticsearch:type=ClientMetrics,name=elasticsearch-service-N}
+     * @return metrics of this service
+     */
+    public ClientMetrics enableMetrics() {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.registerMBean("elasticsearch-service-" + METRICS_SEQUENCE.incrementAndGet());
+        enableMetrics(metrics);
+        return metrics;
+    }
+    
+    /**
+     * Report the latency, errors and server time of every document, search and count operation,
+     * and the HTTP body sizes of the client this service uses, to the given registry.
+     * Replaces any previously enabled registry.
+     * @param registry metrics registry, for example one that forwards to a metrics library
+     */
+    public synchronized void enableMetrics(MetricsRegistry registry) {
+        disableMetrics();
+        sharedClient.getTrafficMeter().addRegistry(registry);
+        metricsRegistry = registry;
+    }
+    
+    /**
+     * Stop measuring operations
+     */
+    public synchronized void disableMetrics() {
+        MetricsRegistry previous = metricsRegistry;
+        metricsRegistry = null;
+        if (previous != null) {
+            sharedClient.getTrafficMeter().removeRegistry(previous);
+            if (previous instanceof ClientMetrics) {
+                ((ClientMetrics) previous).unregisterMBean();
+            }
+        }
+    }
+    
+    /**
+     * @return registry operations are reported to, or null if metrics are not enabled
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+    
+    private static long callCount(SingleFlight<?, ?> flights) {
+        return flights != null ? flights.getCallCount() : 0;
+    }
+    
+    private static long collapsedCount(SingleFlight<?, ?> flights) {
+        return flights != null ? flights.getCollapsedCount() : 0;
     }
     
     /**
@@ -130,8 +611,7 @@ public class ElasticsearchService {
      */
     public boolean indexExists(String indexName) throws IOException {
         try {
-            GetIndexRequest request = new GetIndexRequest();
-            request.indices(indexName);
+            GetIndexRequest request = new GetIndexRequest(indexName);
             return client.indices().exists(request, RequestOptions.DEFAULT);
         } catch (Exception e) {
             // If we get an exception, the index likely doesn't exist
@@ -146,6 +626,13 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public void createIndex(String indexName) throws IOException {
+        CreateIndexRequest request = buildCreateIndexRequest(indexName);
+        
+        CreateIndexResponse createIndexResponse = client.indices().create(request, RequestOptions.DEFAULT);
+        logCreateIndexResult(indexName, createIndexResponse);
+    }
+    
+    private CreateIndexRequest buildCreateIndexRequest(String indexName) {
         CreateIndexRequest request = new CreateIndexRequest(indexName);
         
         // Configure index settings
@@ -153,8 +640,10 @@ public class ElasticsearchService {
                 .put("index.number_of_shards", 1) // Use fewer shards for testing
                 .put("index.number_of_replicas", 0) // Use no replicas for testing to speed up operations
         );
-        
-        CreateIndexResponse createIndexResponse = client.indices().create(request, RequestOptions.DEFAULT);
+        return request;
+    }
+    
+    private static void logCreateIndexResult(String indexName, CreateIndexResponse createIndexResponse) {
         if (createIndexResponse.isAcknowledged()) {
             log.info("Index {} created successfully", indexName);
         } else {
@@ -170,6 +659,11 @@ public class ElasticsearchService {
     public void deleteIndex(String indexName) throws IOException {
         DeleteIndexRequest request = new DeleteIndexRequest(indexName);
         AcknowledgedResponse deleteIndexResponse = client.indices().delete(request, RequestOptions.DEFAULT);
+        invalidateCachedIndex(indexName);
+        logDeleteIndexResult(indexName, deleteIndexResponse);
+    }
+    
+    private static void logDeleteIndexResult(String indexName, AcknowledgedResponse deleteIndexResponse) {
         if (deleteIndexResponse.isAcknowledged()) {
             log.info("Index {} deleted successfully", indexName);
         } else {
@@ -188,11 +682,9 @@ public class ElasticsearchService {
                 new SampleData("item3", "Third sample item")
         );
         
-        for (SampleData data : sampleDataList) {
-            insertDocument(data);
-        }
+        BulkResult result = insertDocuments(sampleDataList);
         
-        log.info("Inserted {} sample documents", sampleDataList.size());
+        log.info("Inserted {} sample documents", result.getIndexedCount());
     }
     
     /**
@@ -213,112 +705,587 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public String insertDocument(String indexName, SampleData data) throws IOException {
-        IndexRequest indexRequest = new IndexRequest(indexName);
-        
-        if (data.getId() != null && !data.getId().isEmpty()) {
-            indexRequest.id(data.getId());
-        }
-        
-        String jsonData = objectMapper.writeValueAsString(data);
-        indexRequest.source(jsonData, XContentType.JSON);
-        
-        IndexResponse indexResponse = client.index(indexRequest, RequestOptions.DEFAULT);
-        log.info("Document inserted with ID: {} into index: {}", indexResponse.getId(), indexName);
-        return indexResponse.getId();
+        return measure(Constants.OPERATION_INDEX, () -> {
+            if (writeBehindBuffer != null) {
+                return await(indexAsync(indexName, data));
+            }
+            IndexRequest indexRequest = buildIndexRequest(indexName, data);
+            
+            // Without an ID, a retry after a lost response could index the document twice
+            IndexResponse indexResponse = retry(indexRequest.id() != null, () -> client.index(indexRequest, RequestOptions.DEFAULT));
+            return toInsertedId(indexName, indexResponse);
+        });
     }
     
     /**
-     * Get a document by ID
-     * @param id document ID
-     * @return SampleData object or null if not found
+     * Insert documents into the index using _bulk requests
+     * @param documents sample data to insert
+     * @return per-document outcome of the bulk write
      * @throws IOException if communication with Elasticsearch fails
      */
-    public SampleData getDocument(String id) throws IOException {
-        return getDocument(Constants.SAMPLE_INDEX_NAME, id);
+    public BulkResult insertDocuments(Collection<SampleData> documents) throws IOException {
+        return insertDocuments(Constants.SAMPLE_INDEX_NAME, documents);
     }
     
     /**
-     * Get a document by ID from the specified index
+     * Insert documents into the specified index using _bulk requests
      * @param indexName index name
-     * @param id document ID
-     * @return SampleData object or null if not found
+     * @param documents sample data to insert
+     * @return per-document outcome of the bulk write
      * @throws IOException if communication with Elasticsearch fails
      */
-    public SampleData getDocument(String indexName, String id) throws IOException {
-        GetRequest getRequest = new GetRequest(indexName, id);
-        GetResponse getResponse = client.get(getRequest, RequestOptions.DEFAULT);
-        
-        if (getResponse.isExists()) {
-            String jsonData = getResponse.getSourceAsString();
-            SampleData data = objectMapper.readValue(jsonData, SampleData.class);
-            data.setId(getResponse.getId());
-            return data;
-        } else {
-            log.warn("Document with ID {} not found in index {}", id, indexName);
-            return null;
-        }
+    public BulkResult insertDocuments(String indexName, Collection<SampleData> documents) throws IOException {
+        return insertDocuments(indexName, documents, new BulkSettings());
     }
     
     /**
-     * Update a document
-     * @param id document ID
-     * @param data updated data
-     * @return true if successful, false otherwise
+     * Insert documents into the specified index, splitting them into _bulk requests
+     * that respect the document count and byte size limits of the given settings.
+     * Individual document failures are reported in the result rather than thrown.
+     * @param indexName index name
+     * @param documents sample data to insert
+     * @param settings bulk flush thresholds
+     * @return per-document outcome of the bulk write
      * @throws IOException if communication with Elasticsearch fails
      */
-    public boolean updateDocument(String id, SampleData data) throws IOException {
-        return updateDocument(Constants.SAMPLE_INDEX_NAME, id, data);
+    public BulkResult insertDocuments(String indexName, Collection<SampleData> documents, BulkSettings settings) throws IOException {
+        BulkResult result = new BulkResult();
+        BulkRequest bulkRequest = new BulkRequest();
+        int offset = 0;
+        
+        for (SampleData data : documents) {
+            bulkRequest.add(buildIndexRequest(indexName, data));
+            if (bulkRequest.numberOfActions() >= settings.getBulkActions()
+                    || bulkRequest.estimatedSizeInBytes() >= settings.getBulkSizeBytes()) {
+                offset += executeBulk(bulkRequest, result, offset);
+                bulkRequest = new BulkRequest();
+            }
+        }
+        if (bulkRequest.numberOfActions() > 0) {
+            executeBulk(bulkRequest, result, offset);
+        }
+        recordIndexWrite(indexName);
+        
+        log.info("Bulk inserted {} documents into index: {} ({} failed)", 
+                result.getIndexedCount(), indexName, result.getFailedCount());
+        return result;
     }
     
     /**
-     * Update a document in the specified index
+     * Create a long-lived bulk ingester for the specified index using default settings
      * @param indexName index name
-     * @param id document ID
-     * @param data updated data
-     * @return true if successful, false otherwise
-     * @throws IOException if communication with Elasticsearch fails
+     * @return bulk ingester, to be closed by the caller
      */
-    public boolean updateDocument(String indexName, String id, SampleData data) throws IOException {
-        data.setId(id);
-        // Only update timestamp if it's not already set
-        if (data.getTimestamp() == null) {
-            data.setTimestamp(LocalDateTime.now());
-        }
-        IndexRequest indexRequest = new IndexRequest(indexName);
-        indexRequest.id(id);
-        
-        String jsonData = objectMapper.writeValueAsString(data);
-        indexRequest.source(jsonData, XContentType.JSON);
-        
-        IndexResponse indexResponse = client.index(indexRequest, RequestOptions.DEFAULT);
-        return indexResponse.status() == RestStatus.OK || 
-               indexResponse.getResult() == IndexResponse.Result.CREATED ||
-               indexResponse.getResult() == IndexResponse.Result.UPDATED;
+    public BulkIngester createBulkIngester(String indexName) {
+        return createBulkIngester(indexName, new BulkSettings(), null);
     }
     
     /**
-     * Delete a document by ID
-     * @param id document ID
-     * @return true if successful, false otherwise
-     * @throws IOException if communication with Elasticsearch fails
+     * Create a long-lived bulk ingester for the specified index.
+     * Items rejected with 429 are resent by the retrier if retries are enabled at this point,
+     * otherwise with exponential backoff by the ingester itself.
+     * @param indexName index name
+     * @param settings bulk flush thresholds
+     * @param failureHandler receives every document that failed to index, or null to log failures
+     * @return bulk ingester, to be closed by the caller
      */
-    public boolean deleteDocument(String id) throws IOException {
-        return deleteDocument(Constants.SAMPLE_INDEX_NAME, id);
+    public BulkIngester createBulkIngester(String indexName, BulkSettings settings, Consumer<BulkResult.Failure> failureHandler) {
+        // With retries enabled the retrier resends rejected items, the ingester must not do it a second time
+        BackoffPolicy backoffPolicy = requestRetrier != null ? BackoffPolicy.noBackoff() : BackoffPolicy.exponentialBackoff();
+        return new BulkIngester(indexName, settings,
+                (request, listener) -> sendBulkAsync(request).whenComplete(reportTo(
+                        ActionListener.runBefore(listener, () -> recordIndexWrite(indexName)))),
+                backoffPolicy, this::buildIndexRequest, failureHandler);
     }
     
     /**
-     * Delete a document by ID from the specified index
+     * Import an NDJSON file with one document per line into the specified index
+     * @param indexName index name
+     * @param file NDJSON file
+     * @return final import report
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importNdjson(String indexName, Path file) throws IOException {
+        return createNdjsonImporter(indexName, new BulkSettings(), NdjsonImporter.Mode.DECODE).importFile(file);
+    }
+    
+    /**
+     * Create an importer for NDJSON files
+     * @param indexName index name
+     * @param settings bulk flush thresholds; concurrent requests bound how far the reader may run ahead
+     * @param mode whether lines are decoded into SampleData or passed through as raw bytes
+     * @return NDJSON importer
+     */
+    public NdjsonImporter createNdjsonImporter(String indexName, BulkSettings settings, NdjsonImporter.Mode mode) {
+        return new NdjsonImporter(this, indexName, settings, mode,
+                codec::decode,
+                Constants.DEFAULT_IMPORT_PROGRESS_INTERVAL_MS);
+    }
+    
+    /**
+     * Send a bulk request and record its items in the result
+     * @param bulkRequest bulk request
+     * @param result result to record into
+     * @param offset position of the first item within the whole write
+     * @return number of items sent
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private int executeBulk(BulkRequest bulkRequest, BulkResult result, int offset) throws IOException {
+        BulkResponse bulkResponse = sendBulk(bulkRequest);
+        result.add(bulkResponse, offset);
+        return bulkRequest.numberOfActions();
+    }
+    
+    /**
+     * Send a bulk request, resending rejected items if retries are enabled
+     * @param bulkRequest bulk request
+     * @return bulk response covering every item
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private BulkResponse sendBulk(BulkRequest bulkRequest) throws IOException {
+        return measure(Constants.OPERATION_BULK, () -> {
+            long sentAt = System.nanoTime();
+            BulkResponse bulkResponse = sendBulkUnmeasured(bulkRequest);
+            recordServerTime(Constants.OPERATION_BULK, bulkResponse.getTook(), sentAt);
+            return bulkResponse;
+        });
+    }
+    
+    private BulkResponse sendBulkUnmeasured(BulkRequest bulkRequest) throws IOException {
+        CheckedFunction<BulkRequest, BulkResponse, IOException> sender = request -> {
+            AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter == null) {
+                return bulkClient(request).bulk(request, RequestOptions.DEFAULT);
+            }
+            return limiter.call(request.numberOfActions(),
+                    () -> bulkClient(request).bulk(request, RequestOptions.DEFAULT), ElasticsearchService::hasRejectedItems);
+        };
+        RequestRetrier retrier = requestRetrier;
+        return retrier != null ? retrier.bulk(bulkRequest, sender) : sender.apply(bulkRequest);
+    }
+    
+    /**
+     * Send a bulk request asynchronously, resending rejected items if retries are enabled
+     * @param bulkRequest bulk request
+     * @return future completed with the bulk response covering every item
+     */
+    private CompletableFuture<BulkResponse> sendBulkAsync(BulkRequest bulkRequest) {
+        return measureAsync(Constants.OPERATION_BULK, () -> {
+            long sentAt = System.nanoTime();
+            return sendBulkAsyncUnmeasured(bulkRequest).whenComplete((bulkResponse, e) -> {
+                if (e == null) {
+                    recordServerTime(Constants.OPERATION_BULK, bulkResponse.getTook(), sentAt);
+                }
+            });
+        });
+    }
+    
+    private CompletableFuture<BulkResponse> sendBulkAsyncUnmeasured(BulkRequest bulkRequest) {
+        Function<BulkRequest, CompletableFuture<BulkResponse>> sender = request -> {
+            AsyncCall<BulkResponse> call = listener -> bulkClient(request).bulkAsync(request, RequestOptions.DEFAULT, listener);
+            AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter == null) {
+                return executeAsync(call);
+            }
+            return limiter.submit(request.numberOfActions(), () -> executeAsync(call), ElasticsearchService::hasRejectedItems);
+        };
+        RequestRetrier retrier = requestRetrier;
+        return retrier != null ? retrier.bulkAsync(bulkRequest, sender) : sender.apply(bulkRequest);
+    }
+    
+    private static boolean hasRejectedItems(BulkResponse bulkResponse) {
+        if (!bulkResponse.hasFailures()) {
+            return false;
+        }
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param bulkRequest bulk request
+     * @return client to send the bulk request with, which compresses it if compression is enabled and it is large enough
+     */
+    private RestHighLevelClient bulkClient(BulkRequest bulkRequest) {
+        return sharedClient.getClient(bulkRequest.estimatedSizeInBytes());
+    }
+    
+    private String toInsertedId(String indexName, IndexResponse indexResponse) {
+        // Inserting with an existing ID replaces that document
+        invalidateCachedDocument(indexName, indexResponse.getId());
+        log.info("Document inserted with ID: {} into index: {}", indexResponse.getId(), indexName);
+        return indexResponse.getId();
+    }
+    
+    /**
+     * Build an index request for a document, using its ID if it has one
+     * @param indexName index name
+     * @param data sample data to index
+     * @return index request
+     * @throws IOException if the document cannot be serialized
+     */
+    IndexRequest buildIndexRequest(String indexName, SampleData data) throws IOException {
+        IndexRequest indexRequest = new IndexRequest(indexName);
+        
+        if (data.getId() != null && !data.getId().isEmpty()) {
+            indexRequest.id(data.getId());
+        }
+        // Covers bulk writes too, which only invalidate search results again once acknowledged
+        invalidateCachedDocument(indexName, indexRequest.id());
+        
+        indexRequest.source(codec.encode(data), XContentType.JSON);
+        return indexRequest;
+    }
+    
+    /**
+     * Get a document by ID
+     * @param id document ID
+     * @return SampleData object or null if not found
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public SampleData getDocument(String id) throws IOException {
+        return getDocument(Constants.SAMPLE_INDEX_NAME, id);
+    }
+    
+    /**
+     * Get a document by ID from the specified index
+     * @param indexName index name
+     * @param id document ID
+     * @return SampleData object or null if not found
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public SampleData getDocument(String indexName, String id) throws IOException {
+        return measure(Constants.OPERATION_GET, () -> {
+            GetRequest getRequest = new GetRequest(indexName, id);
+            LocalCache<DocumentKey, SampleData> cache = documentCache;
+            if (cache == null) {
+                GetResponse getResponse = fetchDocument(getRequest);
+                return toSampleData(getResponse);
+            }
+            
+            DocumentKey key = new DocumentKey(indexName, id);
+            SampleData cached = cache.get(key);
+            if (cached != null) {
+                return copyOf(cached);
+            }
+            long stamp = cache.stamp();
+            GetResponse getResponse = fetchDocument(getRequest);
+            return toCachedSampleData(cache, key, stamp, getResponse);
+        });
+    }
+    
+    /**
+     * Send a get request, or wait for the identical one in flight if reads are coalesced
+     * @param getRequest get request
+     * @return get response, possibly shared with other callers
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private GetResponse fetchDocument(GetRequest getRequest) throws IOException {
+        if (multiGetBatcher != null) {
+            // Batched gets complete when their _mget does, there is nothing to run in this thread
+            return await(fetchDocumentAsync(getRequest));
+        }
+        SingleFlight<ReadKey, GetResponse> flights = documentFlights;
+        if (flights == null) {
+            return sendGet(getRequest);
+        }
+        ReadKey key = readKey(getRequest.index(), getRequest.id());
+        // The first caller sends the request from its own thread
+        return await(flights.execute(key, () -> callNow(() -> sendGet(getRequest))));
+    }
+    
+    private GetResponse sendGet(GetRequest getRequest) throws IOException {
+        ReadHedger hedger = readHedger;
+        if (hedger == null) {
+            return retry(true, () -> client.get(getRequest, RequestOptions.DEFAULT));
+        }
+        return await(hedgeGet(hedger, getRequest));
+    }
+    
+    private CompletableFuture<GetResponse> fetchDocumentAsync(GetRequest getRequest) {
+        SingleFlight<ReadKey, GetResponse> flights = documentFlights;
+        if (flights == null) {
+            return sendGetAsync(getRequest);
+        }
+        return flights.execute(readKey(getRequest.index(), getRequest.id()), () -> sendGetAsync(getRequest));
+    }
+    
+    private CompletableFuture<GetResponse> sendGetAsync(GetRequest getRequest) {
+        MultiGetBatcher batcher = multiGetBatcher;
+        if (batcher != null) {
+            return batcher.get(getRequest.index(), getRequest.id());
+        }
+        ReadHedger hedger = readHedger;
+        if (hedger != null) {
+            return hedgeGet(hedger, getRequest);
+        }
+        return retryAsync(true, (ActionListener<GetResponse> listener) -> client.getAsync(getRequest, RequestOptions.DEFAULT, listener));
+    }
+    
+    private CompletableFuture<GetResponse> hedgeGet(ReadHedger hedger, GetRequest getRequest) {
+        return hedger.hedge(preference -> {
+            GetRequest request = preference == null ? getRequest : copyOf(getRequest).preference(preference);
+            return retryAsync(true, (ActionListener<GetResponse> listener) -> client.getAsync(request, RequestOptions.DEFAULT, listener));
+        });
+    }
+    
+    private static GetRequest copyOf(GetRequest getRequest) {
+        return new GetRequest(getRequest.index(), getRequest.id())
+                .routing(getRequest.routing())
+                .realtime(getRequest.realtime())
+                .refresh(getRequest.refresh())
+                .storedFields(getRequest.storedFields())
+                .fetchSourceContext(getRequest.fetchSourceContext());
+    }
+    
+    private ReadKey readKey(String indexName, String request) {
+        return new ReadKey(indexName, indexWrites.generation(indexName), request);
+    }
+    
+    /**
+     * Convert a get response and cache the document, unless it was invalidated while being fetched
+     * @param cache document cache
+     * @param key cache key of the document
+     * @param stamp cache stamp taken before the request was sent
+     * @param getResponse Elasticsearch get response
+     * @return SampleData object or null if not found
+     * @throws IOException if JSON parsing fails
+     */
+    private SampleData toCachedSampleData(LocalCache<DocumentKey, SampleData> cache, DocumentKey key, long stamp,
+                                          GetResponse getResponse) throws IOException {
+        SampleData data = toSampleData(getResponse);
+        if (data != null) {
+            // The cache keeps its own copy so callers can modify what they get
+            cache.put(key, copyOf(data), getResponse.getSourceAsBytesRef().length() + CACHED_DOCUMENT_OVERHEAD_BYTES, stamp);
+        }
+        return data;
+    }
+    
+    private static SampleData copyOf(SampleData data) {
+        return new SampleData(data.getId(), data.getName(), data.getDescription(), data.getTimestamp());
+    }
+    
+    private static List<SampleData> copyOf(List<SampleData> documents) {
+        List<SampleData> copies = new ArrayList<>(documents.size());
+        for (SampleData data : documents) {
+            copies.add(copyOf(data));
+        }
+        return copies;
+    }
+    
+    /**
+     * Drop the cached copy of a document and the cached search results of its index
+     * @param indexName index name
+     * @param id document ID, or null if Elasticsearch assigns it
+     */
+    private void invalidateCachedDocument(String indexName, String id) {
+        LocalCache<DocumentKey, SampleData> cache = documentCache;
+        if (cache != null && id != null) {
+            cache.invalidate(new DocumentKey(indexName, id));
+        }
+        recordIndexWrite(indexName);
+    }
+    
+    private void invalidateCachedIndex(String indexName) {
+        LocalCache<DocumentKey, SampleData> cache = documentCache;
+        if (cache != null) {
+            cache.invalidateIf(key -> key.indexName().equals(indexName));
+        }
+        recordIndexWrite(indexName);
+    }
+    
+    private void recordIndexWrite(String indexName) {
+        // Bumps the write generation, which is part of query cache and read coalescing keys
+        indexWrites.onWrite(indexName);
+    }
+    
+    /**
+     * Get several documents by ID using _mget
+     * @param ids document IDs
+     * @return found documents keyed by ID, in ID order; missing documents are left out
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public Map<String, SampleData> getDocuments(Collection<String> ids) throws IOException {
+        return getDocuments(Constants.SAMPLE_INDEX_NAME, ids);
+    }
+    
+    /**
+     * Get several documents by ID from the specified index using _mget.
+     * Large ID sets are split into chunks that are requested in parallel.
+     * @param indexName index name
+     * @param ids document IDs
+     * @return found documents keyed by ID, in ID order; missing documents are left out
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public Map<String, SampleData> getDocuments(String indexName, Collection<String> ids) throws IOException {
+        return await(getDocumentsAsync(indexName, ids));
+    }
+    
+    /**
+     * Get several documents by ID from the specified index using _mget, asynchronously.
+     * Large ID sets are split into chunks that are requested in parallel.
+     * @param indexName index name
+     * @param ids document IDs
+     * @return future completed with the found documents keyed by ID, in ID order; missing documents are left out
+     */
+    public CompletableFuture<Map<String, SampleData>> getDocumentsAsync(String indexName, Collection<String> ids) {
+        return measureAsync(Constants.OPERATION_MGET, () -> multiGetAsync(indexName, ids));
+    }
+    
+    private CompletableFuture<Map<String, SampleData>> multiGetAsync(String indexName, Collection<String> ids) {
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<CompletableFuture<Map<String, SampleData>>> chunks = new ArrayList<>();
+        for (int from = 0; from < uniqueIds.size(); from += Constants.DEFAULT_MGET_CHUNK_SIZE) {
+            List<String> chunk = uniqueIds.subList(from, Math.min(from + Constants.DEFAULT_MGET_CHUNK_SIZE, uniqueIds.size()));
+            MultiGetRequest multiGetRequest = buildMultiGetRequest(indexName, chunk);
+            chunks.add(convert(retryAsync(true, (ActionListener<MultiGetResponse> listener) -> client.mgetAsync(multiGetRequest, RequestOptions.DEFAULT, listener)),
+                    this::toSampleDataMap));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<String, SampleData> results = new LinkedHashMap<>();
+                    for (CompletableFuture<Map<String, SampleData>> chunk : chunks) {
+                        results.putAll(chunk.join());
+                    }
+                    log.debug("Multi-get found {} of {} documents in index {}", results.size(), uniqueIds.size(), indexName);
+                    return results;
+                });
+    }
+    
+    private static MultiGetRequest buildMultiGetRequest(String indexName, Collection<String> ids) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        for (String id : ids) {
+            multiGetRequest.add(indexName, id);
+        }
+        return multiGetRequest;
+    }
+    
+    /**
+     * Convert a multi-get response into SampleData objects keyed by ID
+     * @param multiGetResponse Elasticsearch multi-get response
+     * @return found documents keyed by ID, in request order
+     * @throws IOException if an item failed or JSON parsing fails
+     */
+    private Map<String, SampleData> toSampleDataMap(MultiGetResponse multiGetResponse) throws IOException {
+        Map<String, SampleData> results = new LinkedHashMap<>();
+        for (MultiGetItemResponse item : multiGetResponse.getResponses()) {
+            if (item.isFailed()) {
+                throw new IOException("Multi-get failed for document " + item.getId() + " in index " 
+                        + item.getIndex() + ": " + item.getFailure().getMessage(), item.getFailure().getFailure());
+            }
+            if (item.getResponse().isExists()) {
+                results.put(item.getId(), toSampleData(item.getResponse()));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Convert a get response into a SampleData object
+     * @param getResponse Elasticsearch get response
+     * @return SampleData object or null if not found
+     * @throws IOException if JSON parsing fails
+     */
+    private SampleData toSampleData(GetResponse getResponse) throws IOException {
+        if (getResponse.isExists()) {
+            return codec.decode(getResponse.getSourceAsBytesRef(), getResponse.getId());
+        } else {
+            log.warn("Document with ID {} not found in index {}", getResponse.getId(), getResponse.getIndex());
+            return null;
+        }
+    }
+    
+    /**
+     * Update a document
+     * @param id document ID
+     * @param data updated data
+     * @return true if successful, false otherwise
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public boolean updateDocument(String id, SampleData data) throws IOException {
+        return updateDocument(Constants.SAMPLE_INDEX_NAME, id, data);
+    }
+    
+    /**
+     * Update a document in the specified index
+     * @param indexName index name
+     * @param id document ID
+     * @param data updated data
+     * @return true if successful, false otherwise
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public boolean updateDocument(String indexName, String id, SampleData data) throws IOException {
+        return measure(Constants.OPERATION_UPDATE, () -> {
+            if (writeBehindBuffer != null) {
+                return await(updateAsync(indexName, id, data));
+            }
+            IndexRequest indexRequest = buildUpdateRequest(indexName, id, data);
+            
+            IndexResponse indexResponse = retry(true, () -> client.index(indexRequest, RequestOptions.DEFAULT));
+            // Drop copies cached from reads that raced with the write
+            invalidateCachedDocument(indexName, id);
+            return isUpdated(indexResponse);
+        });
+    }
+    
+    /**
+     * Build the index request that replaces a document
+     * @param indexName index name
+     * @param id document ID
+     * @param data updated data
+     * @return index request
+     * @throws IOException if the document cannot be serialized
+     */
+    private IndexRequest buildUpdateRequest(String indexName, String id, SampleData data) throws IOException {
+        data.setId(id);
+        // Only update timestamp if it's not already set
+        if (data.getTimestamp() == null) {
+            data.setTimestamp(LocalDateTime.now());
+        }
+        return buildIndexRequest(indexName, data);
+    }
+    
+    private static boolean isUpdated(IndexResponse indexResponse) {
+        return indexResponse.status() == RestStatus.OK || 
+               indexResponse.getResult() == IndexResponse.Result.CREATED ||
+               indexResponse.getResult() == IndexResponse.Result.UPDATED;
+    }
+    
+    /**
+     * Delete a document by ID
+     * @param id document ID
+     * @return true if successful, false otherwise
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public boolean deleteDocument(String id) throws IOException {
+        return deleteDocument(Constants.SAMPLE_INDEX_NAME, id);
+    }
+    
+    /**
+     * Delete a document by ID from the specified index
      * @param indexName index name
      * @param id document ID
      * @return true if successful, false otherwise
      * @throws IOException if communication with Elasticsearch fails
      */
     public boolean deleteDocument(String indexName, String id) throws IOException {
-        DeleteRequest deleteRequest = new DeleteRequest(indexName, id);
-        DeleteResponse deleteResponse = client.delete(deleteRequest, RequestOptions.DEFAULT);
+        return measure(Constants.OPERATION_DELETE, () -> {
+            DeleteRequest deleteRequest = new DeleteRequest(indexName, id);
+            invalidateCachedDocument(indexName, id);
+            DeleteResponse deleteResponse = retry(true, () -> client.delete(deleteRequest, RequestOptions.DEFAULT));
+            // Drop copies cached from reads that raced with the delete
+            invalidateCachedDocument(indexName, id);
+            return isDeleted(deleteResponse);
+        });
+    }
+    
+    private static boolean isDeleted(DeleteResponse deleteResponse) {
         boolean success = deleteResponse.getResult() == DeleteResponse.Result.DELETED || 
                deleteResponse.status() == RestStatus.OK;
-        log.info("Document deletion result for ID {}: {}", id, success);
+        log.info("Document deletion result for ID {}: {}", deleteResponse.getId(), success);
         return success;
     }
     
@@ -340,13 +1307,16 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public List<SampleData> searchDocumentsByName(String indexName, String name) throws IOException {
+        SearchRequest searchRequest = buildNameSearchRequest(indexName, name);
+        return search(Constants.OPERATION_SEARCH_BY_NAME, searchRequest);
+    }
+    
+    SearchRequest buildNameSearchRequest(String indexName, String name) {
         SearchRequest searchRequest = new SearchRequest(indexName);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(QueryBuilders.matchQuery(Constants.FIELD_NAME, name));
         searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return parseSearchResults(searchResponse);
+        return searchRequest;
     }
     
     /**
@@ -369,15 +1339,18 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public List<SampleData> searchDocumentsByWildcard(String indexName, String field, String pattern) throws IOException {
+        SearchRequest searchRequest = buildWildcardSearchRequest(indexName, field, pattern);
+        return search(Constants.OPERATION_SEARCH_BY_WILDCARD, searchRequest);
+    }
+    
+    private SearchRequest buildWildcardSearchRequest(String indexName, String field, String pattern) {
         SearchRequest searchRequest = new SearchRequest(indexName);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         
         WildcardQueryBuilder wildcardQuery = QueryBuilders.wildcardQuery(field, pattern);
         searchSourceBuilder.query(wildcardQuery);
         searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return parseSearchResults(searchResponse);
+        return searchRequest;
     }
     
     /**
@@ -402,6 +1375,11 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public List<SampleData> searchDocumentsByDateRange(String indexName, String field, LocalDateTime startDate, LocalDateTime endDate) throws IOException {
+        SearchRequest searchRequest = buildDateRangeSearchRequest(indexName, field, startDate, endDate);
+        return search(Constants.OPERATION_SEARCH_BY_DATE_RANGE, searchRequest);
+    }
+    
+    SearchRequest buildDateRangeSearchRequest(String indexName, String field, LocalDateTime startDate, LocalDateTime endDate) {
         SearchRequest searchRequest = new SearchRequest(indexName);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         
@@ -416,9 +1394,7 @@ public class ElasticsearchService {
         
         searchSourceBuilder.query(rangeQuery);
         searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return parseSearchResults(searchResponse);
+        return searchRequest;
     }
     
     /**
@@ -437,15 +1413,24 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public long getDocumentCount(String indexName) throws IOException {
+        SearchRequest searchRequest = buildCountSearchRequest(indexName);
+        
+        return measure(Constants.OPERATION_COUNT, () -> {
+            long sentAt = System.nanoTime();
+            SearchResponse searchResponse = sendSearch(searchRequest);
+            recordServerTime(Constants.OPERATION_COUNT, searchResponse.getTook(), sentAt);
+            return searchResponse.getHits().getTotalHits().value;
+        });
+    }
+    
+    private SearchRequest buildCountSearchRequest(String indexName) {
         // Use search request with size 0 to get total hits
         SearchRequest searchRequest = new SearchRequest(indexName);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(QueryBuilders.matchAllQuery());
         searchSourceBuilder.size(0); // We only need the count, not the documents
         searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return searchResponse.getHits().getTotalHits().value;
+        return searchRequest;
     }
     
     /**
@@ -470,6 +1455,11 @@ public class ElasticsearchService {
      * @throws IOException if communication with Elasticsearch fails
      */
     public List<SampleData> searchDocumentsWithSorting(String indexName, String sortField, SortOrder sortOrder, int size) throws IOException {
+        SearchRequest searchRequest = buildSortedSearchRequest(indexName, sortField, sortOrder, size);
+        return search(Constants.OPERATION_SEARCH_WITH_SORTING, searchRequest);
+    }
+    
+    private SearchRequest buildSortedSearchRequest(String indexName, String sortField, SortOrder sortOrder, int size) {
         SearchRequest searchRequest = new SearchRequest(indexName);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         
@@ -477,9 +1467,7 @@ public class ElasticsearchService {
         searchSourceBuilder.sort(sortField, sortOrder);
         searchSourceBuilder.size(size);
         searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return parseSearchResults(searchResponse);
+        return searchRequest;
     }
     
     /**
@@ -492,50 +1480,998 @@ public class ElasticsearchService {
     }
     
     /**
-     * Get all documents from the specified index
+     * Get all documents from the specified index.
+     * All documents are held in memory; use {@link #streamAllDocuments(String)} for large indices.
      * @param indexName index name
      * @return list of all SampleData objects
      * @throws IOException if communication with Elasticsearch fails
      */
     public List<SampleData> getAllDocuments(String indexName) throws IOException {
-        SearchRequest searchRequest = new SearchRequest(indexName);
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.query(QueryBuilders.matchAllQuery());
-        searchRequest.source(searchSourceBuilder);
-        
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        return parseSearchResults(searchResponse);
-    }
-    
-    /**
-     * Parse search results into SampleData objects
-     * @param searchResponse Elasticsearch search response
-     * @return list of SampleData objects
-     * @throws IOException if JSON parsing fails
-     */
-    private List<SampleData> parseSearchResults(SearchResponse searchResponse) throws IOException {
         List<SampleData> results = new ArrayList<>();
-        for (SearchHit hit : searchResponse.getHits().getHits()) {
-            String jsonData = hit.getSourceAsString();
-            SampleData data = objectMapper.readValue(jsonData, SampleData.class);
-            data.setId(hit.getId());
-            results.add(data);
+        try (DocumentIterator iterator = iterateAllDocuments(indexName, Constants.DEFAULT_PAGE_SIZE)) {
+            iterator.forEachRemaining(results::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
         return results;
     }
     
     /**
-     * Delete the default sample index
-     * @throws IOException if communication with Elasticsearch fails
+     * Lazily stream all documents from the specified index using the default page size.
+     * The stream must be closed to release the point in time early, e.g. with try-with-resources.
+     * @param indexName index name
+     * @return stream of all SampleData objects
      */
-    public void deleteIndex() throws IOException {
-        deleteIndex(Constants.SAMPLE_INDEX_NAME);
+    public Stream<SampleData> streamAllDocuments(String indexName) {
+        return streamAllDocuments(indexName, Constants.DEFAULT_PAGE_SIZE);
     }
     
     /**
-     * Close the service and release resources
+     * Lazily stream all documents from the specified index, one page at a time.
+     * The stream must be closed to release the point in time early, e.g. with try-with-resources.
+     * Communication failures surface as {@link UncheckedIOException}.
+     * @param indexName index name
+     * @param pageSize number of documents fetched per request
+     * @return stream of all SampleData objects
      */
-    public void close() {
-        ElasticsearchClientConfig.closeClient();
+    public Stream<SampleData> streamAllDocuments(String indexName, int pageSize) {
+        DocumentIterator iterator = iterateAllDocuments(indexName, pageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+    
+    /**
+     * Create an iterator over all documents of the specified index, paging with a point in time and search_after
+     * @param indexName index name
+     * @param pageSize number of documents fetched per request
+     * @return document iterator, to be closed by the caller
+     */
+    public DocumentIterator iterateAllDocuments(String indexName, int pageSize) {
+        return new DocumentIterator(client, indexName, pageSize,
+                TimeValue.timeValueMillis(Constants.DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS), this::toSampleData);
+    }
+    
+    /**
+     * Check asynchronously if index exists
+     * @param indexName index name
+     * @return future completed with true if index exists, false otherwise
+     */
+    public CompletableFuture<Boolean> indexExistsAsync(String indexName) {
+        GetIndexRequest request = new GetIndexRequest(indexName);
+        return executeAsync((ActionListener<Boolean> listener) -> client.indices().existsAsync(request, RequestOptions.DEFAULT, listener))
+                .exceptionally(e -> {
+                    log.debug("Index {} does not exist or is inaccessible", indexName);
+                    return false;
+                });
+    }
+    
+    /**
+     * Create index with settings asynchronously
+     * @param indexName index name
+     * @return future completed when the index has been created
+     */
+    public CompletableFuture<Void> createIndexAsync(String indexName) {
+        CreateIndexRequest request = buildCreateIndexRequest(indexName);
+        return executeAsync((ActionListener<CreateIndexResponse> listener) -> client.indices().createAsync(request, RequestOptions.DEFAULT, listener),
+                response -> {
+                    logCreateIndexResult(indexName, response);
+                    return null;
+                });
+    }
+    
+    /**
+     * Delete index asynchronously
+     * @param indexName index name
+     * @return future completed when the index has been deleted
+     */
+    public CompletableFuture<Void> deleteIndexAsync(String indexName) {
+        DeleteIndexRequest request = new DeleteIndexRequest(indexName);
+        return executeAsync((ActionListener<AcknowledgedResponse> listener) -> client.indices().deleteAsync(request, RequestOptions.DEFAULT, listener),
+                response -> {
+                    invalidateCachedIndex(indexName);
+                    logDeleteIndexResult(indexName, response);
+                    return null;
+                });
+    }
+    
+    /**
+     * Insert a document into the index asynchronously
+     * @param data sample data to insert
+     * @return future completed with the document ID
+     */
+    public CompletableFuture<String> insertDocumentAsync(SampleData data) {
+        return insertDocumentAsync(Constants.SAMPLE_INDEX_NAME, data);
+    }
+    
+    /**
+     * Insert a document into the specified index asynchronously
+     * @param indexName index name
+     * @param data sample data to insert
+     * @return future completed with the document ID
+     */
+    public CompletableFuture<String> insertDocumentAsync(String indexName, SampleData data) {
+        return measureAsync(Constants.OPERATION_INDEX, () -> indexAsync(indexName, data));
+    }
+    
+    private CompletableFuture<String> indexAsync(String indexName, SampleData data) {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            return writeBehind(buffer, indexName, () -> {
+                IndexRequest indexRequest = buildIndexRequest(indexName, data);
+                if (indexRequest.id() == null) {
+                    indexRequest.id(UUIDs.base64UUID());
+                }
+                return indexRequest;
+            }, IndexRequest::id, response -> toInsertedId(indexName, response));
+        }
+        IndexRequest indexRequest;
+        try {
+            indexRequest = buildIndexRequest(indexName, data);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return convert(retryAsync(indexRequest.id() != null, (ActionListener<IndexResponse> listener) ->
+                        client.indexAsync(indexRequest, RequestOptions.DEFAULT, listener)),
+                response -> toInsertedId(indexName, response));
+    }
+    
+    /**
+     * Insert documents into the specified index asynchronously using _bulk requests.
+     * The bulk requests are sent concurrently.
+     * @param indexName index name
+     * @param documents sample data to insert
+     * @param settings bulk flush thresholds
+     * @return future completed with the per-document outcome of the bulk write
+     */
+    public CompletableFuture<BulkResult> insertDocumentsAsync(String indexName, Collection<SampleData> documents, BulkSettings settings) {
+        List<BulkRequest> bulkRequests = new ArrayList<>();
+        try {
+            BulkRequest bulkRequest = new BulkRequest();
+            for (SampleData data : documents) {
+                bulkRequest.add(buildIndexRequest(indexName, data));
+                if (bulkRequest.numberOfActions() >= settings.getBulkActions()
+                        || bulkRequest.estimatedSizeInBytes() >= settings.getBulkSizeBytes()) {
+                    bulkRequests.add(bulkRequest);
+                    bulkRequest = new BulkRequest();
+                }
+            }
+            if (bulkRequest.numberOfActions() > 0) {
+                bulkRequests.add(bulkRequest);
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        List<CompletableFuture<BulkResponse>> responses = new ArrayList<>();
+        for (BulkRequest bulkRequest : bulkRequests) {
+            responses.add(sendBulkAsync(bulkRequest));
+        }
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    recordIndexWrite(indexName);
+                    BulkResult result = new BulkResult();
+                    int offset = 0;
+                    for (int i = 0; i < responses.size(); i++) {
+                        result.add(responses.get(i).join(), offset);
+                        offset += bulkRequests.get(i).numberOfActions();
+                    }
+                    log.info("Bulk inserted {} documents into index: {} ({} failed)", 
+                            result.getIndexedCount(), indexName, result.getFailedCount());
+                    return result;
+                });
+    }
+    
+    /**
+     * Buffer a write and report it back at the configured acknowledgment level
+     * @param buffer write-behind buffer
+     * @param indexName index name
+     * @param requestSupplier builds the index request, with its document ID set
+     * @param enqueuedResult result reported when the write is acknowledged once buffered
+     * @param indexedResult result reported when the write is acknowledged once indexed
+     * @return future completed with the result of the write
+     */
+    private <T> CompletableFuture<T> writeBehind(WriteBehindBuffer buffer,
+                                                 String indexName,
+                                                 CheckedSupplier<IndexRequest, IOException> requestSupplier,
+                                                 Function<IndexRequest, T> enqueuedResult,
+                                                 CheckedFunction<IndexResponse, T, IOException> indexedResult) {
+        IndexRequest indexRequest;
+        try {
+            indexRequest = requestSupplier.get();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<IndexResponse> indexed = buffer.add(indexRequest);
+        if (writeAck == WriteAck.ENQUEUED && !indexed.isCompletedExceptionally()) {
+            return CompletableFuture.completedFuture(enqueuedResult.apply(indexRequest));
+        }
+        return convert(indexed, indexedResult);
+    }
+    
+    /**
+     * Drop the cached copies of all documents written by a bulk request
+     * @param bulkRequest acknowledged bulk request
+     */
+    private void invalidateCachedDocuments(BulkRequest bulkRequest) {
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            invalidateCachedDocument(request.index(), request.id());
+        }
+    }
+    
+    /**
+     * Get a document by ID asynchronously
+     * @param id document ID
+     * @return future completed with the SampleData object or null if not found
+     */
+    public CompletableFuture<SampleData> getDocumentAsync(String id) {
+        return getDocumentAsync(Constants.SAMPLE_INDEX_NAME, id);
+    }
+    
+    /**
+     * Get a document by ID from the specified index asynchronously
+     * @param indexName index name
+     * @param id document ID
+     * @return future completed with the SampleData object or null if not found
+     */
+    public CompletableFuture<SampleData> getDocumentAsync(String indexName, String id) {
+        return measureAsync(Constants.OPERATION_GET, () -> getAsync(indexName, id));
+    }
+    
+    private CompletableFuture<SampleData> getAsync(String indexName, String id) {
+        GetRequest getRequest = new GetRequest(indexName, id);
+        LocalCache<DocumentKey, SampleData> cache = documentCache;
+        if (cache == null) {
+            return convert(fetchDocumentAsync(getRequest), this::toSampleData);
+        }
+        
+        DocumentKey key = new DocumentKey(indexName, id);
+        SampleData cached = cache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(copyOf(cached));
+        }
+        long stamp = cache.stamp();
+        return convert(fetchDocumentAsync(getRequest), response -> toCachedSampleData(cache, key, stamp, response));
+    }
+    
+    /**
+     * Update a document asynchronously
+     * @param id document ID
+     * @param data updated data
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> updateDocumentAsync(String id, SampleData data) {
+        return updateDocumentAsync(Constants.SAMPLE_INDEX_NAME, id, data);
+    }
+    
+    /**
+     * Update a document in the specified index asynchronously
+     * @param indexName index name
+     * @param id document ID
+     * @param data updated data
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> updateDocumentAsync(String indexName, String id, SampleData data) {
+        return measureAsync(Constants.OPERATION_UPDATE, () -> updateAsync(indexName, id, data));
+    }
+    
+    private CompletableFuture<Boolean> updateAsync(String indexName, String id, SampleData data) {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            return writeBehind(buffer, indexName, () -> buildUpdateRequest(indexName, id, data),
+                    indexRequest -> true, ElasticsearchService::isUpdated);
+        }
+        return convert(retryAsync(true, (ActionListener<IndexResponse> listener) ->
+                        client.indexAsync(buildUpdateRequest(indexName, id, data), RequestOptions.DEFAULT, listener)),
+                response -> {
+                    invalidateCachedDocument(indexName, id);
+                    return isUpdated(response);
+                });
+    }
+    
+    /**
+     * Delete a document by ID asynchronously
+     * @param id document ID
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> deleteDocumentAsync(String id) {
+        return deleteDocumentAsync(Constants.SAMPLE_INDEX_NAME, id);
+    }
+    
+    /**
+     * Delete a document by ID from the specified index asynchronously
+     * @param indexName index name
+     * @param id document ID
+     * @return future completed with true if successful, false otherwise
+     */
+    public CompletableFuture<Boolean> deleteDocumentAsync(String indexName, String id) {
+        return measureAsync(Constants.OPERATION_DELETE, () -> {
+            DeleteRequest deleteRequest = new DeleteRequest(indexName, id);
+            invalidateCachedDocument(indexName, id);
+            return convert(retryAsync(true, (ActionListener<DeleteResponse> listener) -> client.deleteAsync(deleteRequest, RequestOptions.DEFAULT, listener)),
+                    response -> {
+                        invalidateCachedDocument(indexName, id);
+                        return isDeleted(response);
+                    });
+        });
+    }
+    
+    /**
+     * Search documents by name asynchronously
+     * @param name name to search for
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByNameAsync(String name) {
+        return searchDocumentsByNameAsync(Constants.SAMPLE_INDEX_NAME, name);
+    }
+    
+    /**
+     * Search documents by name in the specified index asynchronously
+     * @param indexName index name
+     * @param name name to search for
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByNameAsync(String indexName, String name) {
+        return searchAsync(Constants.OPERATION_SEARCH_BY_NAME, buildNameSearchRequest(indexName, name));
+    }
+    
+    /**
+     * Search documents by wildcard pattern asynchronously
+     * @param field field to search in
+     * @param pattern wildcard pattern (* and ? supported)
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByWildcardAsync(String field, String pattern) {
+        return searchDocumentsByWildcardAsync(Constants.SAMPLE_INDEX_NAME, field, pattern);
+    }
+    
+    /**
+     * Search documents by wildcard pattern in the specified index asynchronously
+     * @param indexName index name
+     * @param field field to search in
+     * @param pattern wildcard pattern (* and ? supported)
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByWildcardAsync(String indexName, String field, String pattern) {
+        return searchAsync(Constants.OPERATION_SEARCH_BY_WILDCARD, buildWildcardSearchRequest(indexName, field, pattern));
+    }
+    
+    /**
+     * Search documents by date range asynchronously
+     * @param field field to search in
+     * @param startDate start date (inclusive)
+     * @param endDate end date (inclusive)
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByDateRangeAsync(String field, LocalDateTime startDate, LocalDateTime endDate) {
+        return searchDocumentsByDateRangeAsync(Constants.SAMPLE_INDEX_NAME, field, startDate, endDate);
+    }
+    
+    /**
+     * Search documents by date range in the specified index asynchronously
+     * @param indexName index name
+     * @param field field to search in
+     * @param startDate start date (inclusive)
+     * @param endDate end date (inclusive)
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsByDateRangeAsync(String indexName, String field, LocalDateTime startDate, LocalDateTime endDate) {
+        return searchAsync(Constants.OPERATION_SEARCH_BY_DATE_RANGE, buildDateRangeSearchRequest(indexName, field, startDate, endDate));
+    }
+    
+    /**
+     * Get document count in index asynchronously
+     * @return future completed with the number of documents in the index
+     */
+    public CompletableFuture<Long> getDocumentCountAsync() {
+        return getDocumentCountAsync(Constants.SAMPLE_INDEX_NAME);
+    }
+    
+    /**
+     * Get document count in the specified index asynchronously
+     * @param indexName index name
+     * @return future completed with the number of documents in the index
+     */
+    public CompletableFuture<Long> getDocumentCountAsync(String indexName) {
+        SearchRequest searchRequest = buildCountSearchRequest(indexName);
+        return measureAsync(Constants.OPERATION_COUNT, () -> {
+            long sentAt = System.nanoTime();
+            return convert(sendSearchAsync(searchRequest), response -> {
+                recordServerTime(Constants.OPERATION_COUNT, response.getTook(), sentAt);
+                return response.getHits().getTotalHits().value;
+            });
+        });
+    }
+    
+    /**
+     * Search documents with sorting asynchronously
+     * @param sortField field to sort by
+     * @param sortOrder sort order (ASC or DESC)
+     * @param size number of results to return
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsWithSortingAsync(String sortField, SortOrder sortOrder, int size) {
+        return searchDocumentsWithSortingAsync(Constants.SAMPLE_INDEX_NAME, sortField, sortOrder, size);
+    }
+    
+    /**
+     * Search documents with sorting in the specified index asynchronously
+     * @param indexName index name
+     * @param sortField field to sort by
+     * @param sortOrder sort order (ASC or DESC)
+     * @param size number of results to return
+     * @return future completed with the list of matching SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> searchDocumentsWithSortingAsync(String indexName, String sortField, SortOrder sortOrder, int size) {
+        return searchAsync(Constants.OPERATION_SEARCH_WITH_SORTING, buildSortedSearchRequest(indexName, sortField, sortOrder, size));
+    }
+    
+    /**
+     * Export all documents of the specified index with a sliced scroll.
+     * The number of slices defaults to the number of primary shards, capped by the number of CPU cores.
+     * @param indexName index name
+     * @param consumer receives every document, one call at a time
+     * @return number of documents exported
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public long exportAllDocuments(String indexName, Consumer<SampleData> consumer) throws IOException {
+        int slices = Math.max(1, Math.min(getPrimaryShardCount(indexName), Runtime.getRuntime().availableProcessors()));
+        return exportAllDocuments(indexName, slices, consumer);
+    }
+    
+    /**
+     * Export all documents of the specified index with a sliced scroll.
+     * Slices are read in parallel and hits are decoded on the common fork-join pool.
+     * Throughput scales with the number of slices up to the number of primary shards.
+     * @param indexName index name
+     * @param slices number of parallel scroll slices
+     * @param consumer receives every document, one call at a time
+     * @return number of documents exported
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public long exportAllDocuments(String indexName, int slices, Consumer<SampleData> consumer) throws IOException {
+        return createSlicedScrollExporter().export(indexName, slices, this::toSampleData, consumer);
+    }
+    
+    /**
+     * Dump all documents of the specified index to an NDJSON file, one _source per line
+     * @param indexName index name
+     * @param file target file, replaced if it exists
+     * @param gzip whether to gzip-compress the output
+     * @return number of documents written
+     * @throws IOException if reading from Elasticsearch or writing the file fails
+     */
+    public long exportNdjson(String indexName, Path file, boolean gzip) throws IOException {
+        int slices = Math.max(1, Math.min(getPrimaryShardCount(indexName), Runtime.getRuntime().availableProcessors()));
+        return new NdjsonExporter(createSlicedScrollExporter()).export(indexName, slices, file, gzip);
+    }
+    
+    /**
+     * Create an exporter that reads whole indices with a sliced scroll
+     * @return sliced scroll exporter
+     */
+    public SlicedScrollExporter createSlicedScrollExporter() {
+        return new SlicedScrollExporter(client, Constants.DEFAULT_PAGE_SIZE,
+                TimeValue.timeValueMillis(Constants.DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS), ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Get the number of primary shards of an index
+     * @param indexName index name or alias
+     * @return number of primary shards, summed over all indices the name resolves to
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public int getPrimaryShardCount(String indexName) throws IOException {
+        GetSettingsRequest request = new GetSettingsRequest()
+                .indices(indexName)
+                .names("index.number_of_shards");
+        GetSettingsResponse response = client.indices().getSettings(request, RequestOptions.DEFAULT);
+        int shards = 0;
+        Iterator<Settings> indexSettings = response.getIndexToSettings().valuesIt();
+        while (indexSettings.hasNext()) {
+            shards += indexSettings.next().getAsInt("index.number_of_shards", 1);
+        }
+        return shards;
+    }
+    
+    /**
+     * Get all documents from the specified index asynchronously, paging with a point in time and search_after
+     * @param indexName index name
+     * @return future completed with the list of all SampleData objects
+     */
+    public CompletableFuture<List<SampleData>> getAllDocumentsAsync(String indexName) {
+        OpenPointInTimeRequest openRequest = new OpenPointInTimeRequest(indexName)
+                .keepAlive(TimeValue.timeValueMillis(Constants.DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS));
+        return executeAsync((ActionListener<OpenPointInTimeResponse> listener) -> client.openPointInTimeAsync(openRequest, RequestOptions.DEFAULT, listener))
+                .thenCompose(opened -> {
+                    String[] pointInTimeId = {opened.getPointInTimeId()};
+                    List<SampleData> results = new ArrayList<>();
+                    return collectPagesAsync(pointInTimeId, null, results)
+                            .whenComplete((ignored, e) -> client.closePointInTimeAsync(new ClosePointInTimeRequest(pointInTimeId[0]),
+                                    RequestOptions.DEFAULT, ActionListener.wrap(r -> { }, 
+                                            failure -> log.warn("Failed to close point in time on index {}", indexName, failure))))
+                            .thenApply(ignored -> results);
+                });
+    }
+    
+    /**
+     * Fetch the page after the given sort values and keep going until the last page has been read
+     * @param pointInTimeId holder of the current point in time ID, updated as pages arrive
+     * @param searchAfter sort values of the last hit of the previous page, null for the first page
+     * @param results list the documents are added to
+     * @return future completed once all pages have been read
+     */
+    private CompletableFuture<Void> collectPagesAsync(String[] pointInTimeId, Object[] searchAfter, List<SampleData> results) {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .size(Constants.DEFAULT_PAGE_SIZE)
+                .trackTotalHits(false)
+                .pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId[0])
+                        .setKeepAlive(TimeValue.timeValueMillis(Constants.DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS)))
+                .sort(DocumentIterator.SHARD_DOC_SORT, SortOrder.ASC);
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        }
+        SearchRequest searchRequest = new SearchRequest().source(source);
+        return executeAsync((ActionListener<SearchResponse> listener) -> client.searchAsync(searchRequest, RequestOptions.DEFAULT, listener))
+                .thenCompose(response -> {
+                    if (response.pointInTimeId() != null) {
+                        pointInTimeId[0] = response.pointInTimeId();
+                    }
+                    SearchHit[] hits = response.getHits().getHits();
+                    try {
+                        results.addAll(parseSearchResults(response));
+                    } catch (IOException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                    if (hits.length < Constants.DEFAULT_PAGE_SIZE) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return collectPagesAsync(pointInTimeId, hits[hits.length - 1].getSortValues(), results);
+                });
+    }
+    
+    private CompletableFuture<List<SampleData>> searchAsync(String operation, SearchRequest searchRequest) {
+        return measureAsync(operation, () -> {
+            QueryResultCache cache = queryCache;
+            if (cache == null) {
+                long sentAt = System.nanoTime();
+                return convert(fetchSearchAsync(searchRequest, null), response -> {
+                    recordServerTime(operation, response.getTook(), sentAt);
+                    return parseSearchResults(response);
+                });
+            }
+            
+            QueryResultCache.QueryKey key = cache.keyFor(searchRequest);
+            List<SampleData> cached = cache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(copyOf(cached));
+            }
+            long sentAt = System.nanoTime();
+            return convert(fetchSearchAsync(searchRequest, key.query()), response -> {
+                recordServerTime(operation, response.getTook(), sentAt);
+                return toCachedSearchResults(cache, key, response);
+            });
+        });
+    }
+    
+    /**
+     * Send a request through one of the client's *Async methods and expose the response as a future.
+     * Cancelling the returned future aborts the HTTP request.
+     * @param call starts the request and reports to the given listener
+     * @return future completed with the response
+     */
+    private <R> CompletableFuture<R> executeAsync(AsyncCall<R> call) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            Cancellable cancellable = call.start(ActionListener.wrap(future::complete, future::completeExceptionally));
+            future.whenComplete((response, e) -> {
+                if (future.isCancelled()) {
+                    cancellable.cancel();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Send a blocking request, retrying it if retries are enabled
+     * @param idempotent whether sending the request twice has the same effect as sending it once
+     * @param operation sends the request
+     * @return response
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private <T> T retry(boolean idempotent, CheckedSupplier<T, IOException> operation) throws IOException {
+        RequestRetrier retrier = requestRetrier;
+        return retrier != null ? retrier.call(idempotent, operation) : operation.get();
+    }
+    
+    /**
+     * Send a request through one of the client's *Async methods, retrying it if retries are enabled
+     * @param idempotent whether sending the request twice has the same effect as sending it once
+     * @param call starts the request and reports to the given listener
+     * @return future completed with the response
+     */
+    private <R> CompletableFuture<R> retryAsync(boolean idempotent, AsyncCall<R> call) {
+        RequestRetrier retrier = requestRetrier;
+        return retrier != null ? retrier.callAsync(idempotent, () -> executeAsync(call)) : executeAsync(call);
+    }
+    
+    /**
+     * @param listener listener to report the outcome of a future to
+     * @return callback for {@link CompletableFuture#whenComplete}
+     */
+    private static <R> BiConsumer<R, Throwable> reportTo(ActionListener<R> listener) {
+        return (response, e) -> {
+            if (e == null) {
+                listener.onResponse(response);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            listener.onFailure(cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+        };
+    }
+    
+    /**
+     * Send a request asynchronously and convert its response.
+     * The conversion runs on the client's I/O thread that received the response.
+     * @param call starts the request and reports to the given listener
+     * @param converter converts the response into the result
+     * @return future completed with the converted response
+     */
+    private <R, T> CompletableFuture<T> executeAsync(AsyncCall<R> call, CheckedFunction<R, T, IOException> converter) {
+        return convert(executeAsync(call), converter);
+    }
+    
+    /**
+     * Convert the result of a future once it completes
+     * @param future future to convert
+     * @param converter converts the result
+     * @return future completed with the converted result
+     */
+    private static <R, T> CompletableFuture<T> convert(CompletableFuture<R> future, CheckedFunction<R, T, IOException> converter) {
+        return future.thenApply(response -> {
+            try {
+                return converter.apply(response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+    
+    /**
+     * Run a blocking operation, on a virtual thread if enabled, otherwise in the calling thread
+     * @param operation operation to run, for example {@code () -> service.getDocument(index, id)}
+     * @return future completed with the result of the operation
+     */
+    public <T> CompletableFuture<T> submit(CheckedSupplier<T, IOException> operation) {
+        VirtualThreadExecutor executor = virtualThreadExecutor;
+        if (executor != null) {
+            return executor.submit(operation);
+        }
+        return callNow(operation);
+    }
+    
+    /**
+     * Run a blocking operation in the calling thread
+     * @param operation operation to run
+     * @return completed future holding the result or failure of the operation
+     */
+    private static <T> CompletableFuture<T> callNow(CheckedSupplier<T, IOException> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Run a blocking operation for every input and wait for all of them.
+     * The operations run concurrently on virtual threads if enabled, otherwise one after another.
+     * @param inputs inputs, for example document IDs or search terms
+     * @param operation operation applied to each input, for example {@code id -> service.getDocument(index, id)}
+     * @return results keyed by input, in input iteration order
+     * @throws IOException if any operation failed
+     */
+    public <I, R> Map<I, R> invokeAll(Collection<I> inputs, CheckedFunction<I, R, IOException> operation) throws IOException {
+        VirtualThreadExecutor executor = virtualThreadExecutor;
+        if (executor != null) {
+            return executor.invokeAll(inputs, operation);
+        }
+        Map<I, R> results = new LinkedHashMap<>();
+        for (I input : inputs) {
+            results.put(input, operation.apply(input));
+        }
+        return results;
+    }
+    
+    /**
+     * Search documents for several names, concurrently if virtual threads are enabled
+     * @param indexName index name
+     * @param names names to search for
+     * @return matching SampleData objects keyed by name
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public Map<String, List<SampleData>> searchDocumentsByNames(String indexName, Collection<String> names) throws IOException {
+        return invokeAll(names, name -> searchDocumentsByName(indexName, name));
+    }
+    
+    /**
+     * Run a search, answering it from the query cache if enabled
+     * @param operation operation name the search is measured under
+     * @param searchRequest search request
+     * @return list of matching SampleData objects
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private List<SampleData> search(String operation, SearchRequest searchRequest) throws IOException {
+        return measure(operation, () -> {
+            QueryResultCache cache = queryCache;
+            if (cache == null) {
+                long sentAt = System.nanoTime();
+                SearchResponse searchResponse = fetchSearch(searchRequest, null);
+                recordServerTime(operation, searchResponse.getTook(), sentAt);
+                return parseSearchResults(searchResponse);
+            }
+            
+            QueryResultCache.QueryKey key = cache.keyFor(searchRequest);
+            List<SampleData> cached = cache.get(key);
+            if (cached != null) {
+                return copyOf(cached);
+            }
+            long sentAt = System.nanoTime();
+            SearchResponse searchResponse = fetchSearch(searchRequest, key.query());
+            recordServerTime(operation, searchResponse.getTook(), sentAt);
+            return toCachedSearchResults(cache, key, searchResponse);
+        });
+    }
+    
+    /**
+     * Send a search request, or wait for the identical one in flight if reads are coalesced
+     * @param searchRequest search request
+     * @param query rendered search source if already known, otherwise null
+     * @return search response, possibly shared with other callers
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    private SearchResponse fetchSearch(SearchRequest searchRequest, String query) throws IOException {
+        SingleFlight<ReadKey, SearchResponse> flights = searchFlights;
+        if (flights == null) {
+            return sendSearch(searchRequest);
+        }
+        ReadKey key = searchKey(searchRequest, query);
+        return await(flights.execute(key, () -> callNow(() -> sendSearch(searchRequest))));
+    }
+    
+    private CompletableFuture<SearchResponse> fetchSearchAsync(SearchRequest searchRequest, String query) {
+        SingleFlight<ReadKey, SearchResponse> flights = searchFlights;
+        if (flights == null) {
+            return sendSearchAsync(searchRequest);
+        }
+        return flights.execute(searchKey(searchRequest, query), () -> sendSearchAsync(searchRequest));
+    }
+    
+    private SearchResponse sendSearch(SearchRequest searchRequest) throws IOException {
+        ReadHedger hedger = readHedger;
+        if (hedger == null) {
+            return retry(true, () -> client.search(searchRequest, RequestOptions.DEFAULT));
+        }
+        return await(hedgeSearch(hedger, searchRequest));
+    }
+    
+    private CompletableFuture<SearchResponse> sendSearchAsync(SearchRequest searchRequest) {
+        ReadHedger hedger = readHedger;
+        if (hedger == null) {
+            return retryAsync(true, (ActionListener<SearchResponse> listener) -> client.searchAsync(searchRequest, RequestOptions.DEFAULT, listener));
+        }
+        return hedgeSearch(hedger, searchRequest);
+    }
+    
+    private CompletableFuture<SearchResponse> hedgeSearch(ReadHedger hedger, SearchRequest searchRequest) {
+        return hedger.hedge(preference -> {
+            SearchRequest request = preference == null ? searchRequest : new SearchRequest(searchRequest).preference(preference);
+            return retryAsync(true, (ActionListener<SearchResponse> listener) -> client.searchAsync(request, RequestOptions.DEFAULT, listener));
+        });
+    }
+    
+    private ReadKey searchKey(SearchRequest searchRequest, String query) {
+        return readKey(String.join(",", searchRequest.indices()),
+                query != null ? query : String.valueOf(searchRequest.source()));
+    }
+    
+    /**
+     * Parse search results and cache a copy of them
+     * @param cache query result cache
+     * @param key key built before the search was sent
+     * @param searchResponse Elasticsearch search response
+     * @return list of SampleData objects
+     * @throws IOException if JSON parsing fails
+     */
+    private List<SampleData> toCachedSearchResults(QueryResultCache cache, QueryResultCache.QueryKey key,
+                                                   SearchResponse searchResponse) throws IOException {
+        List<SampleData> results = parseSearchResults(searchResponse);
+        long weight = 0;
+        for (SearchHit hit : searchResponse.getHits().getHits()) {
+            weight += hit.getSourceRef().length() + CACHED_DOCUMENT_OVERHEAD_BYTES;
+        }
+        cache.put(key, List.copyOf(copyOf(results)), weight);
+        return results;
+    }
+    
+    /**
+     * Parse search results into SampleData objects
+     * @param searchResponse Elasticsearch search response
+     * @return list of SampleData objects
+     * @throws IOException if JSON parsing fails
+     */
+    List<SampleData> parseSearchResults(SearchResponse searchResponse) throws IOException {
+        List<SampleData> results = new ArrayList<>();
+        for (SearchHit hit : searchResponse.getHits().getHits()) {
+            results.add(toSampleData(hit));
+        }
+        return results;
+    }
+    
+    /**
+     * Convert a search hit into a SampleData object
+     * @param hit search hit
+     * @return SampleData object
+     * @throws IOException if JSON parsing fails
+     */
+    private SampleData toSampleData(SearchHit hit) throws IOException {
+        return codec.decode(hit.getSourceRef(), hit.getId());
+    }
+    
+    /**
+     * Delete the default sample index
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public void deleteIndex() throws IOException {
+        deleteIndex(Constants.SAMPLE_INDEX_NAME);
+    }
+    
+    /**
+     * Run a blocking operation and report its latency, or its failure, to the metrics registry if enabled
+     * @param operation operation name
+     * @param call runs the operation
+     * @return result of the operation
+     * @throws IOException if the operation failed with an IOException
+     */
+    private <T> T measure(String operation, CheckedSupplier<T, IOException> call) throws IOException {
+        MetricsRegistry registry = metricsRegistry;
+        if (registry == null) {
+            return call.get();
+        }
+        long startedAt = System.nanoTime();
+        try {
+            T result = call.get();
+            registry.recordLatency(operation, System.nanoTime() - startedAt);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            registry.recordError(operation, System.nanoTime() - startedAt, statusOf(e));
+            throw e;
+        }
+    }
+    
+    /**
+     * Start an asynchronous operation and report its latency, or its failure, to the metrics registry if enabled
+     * @param operation operation name
+     * @param call starts the operation
+     * @return future of the operation, not a dependent one, so cancelling it still cancels the operation
+     */
+    private <T> CompletableFuture<T> measureAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        MetricsRegistry registry = metricsRegistry;
+        if (registry == null) {
+            return call.get();
+        }
+        long startedAt = System.nanoTime();
+        CompletableFuture<T> future = call.get();
+        future.whenComplete((result, e) -> {
+            if (e == null) {
+                registry.recordLatency(operation, System.nanoTime() - startedAt);
+            } else {
+                registry.recordError(operation, System.nanoTime() - startedAt, statusOf(e));
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Report the time the cluster spent on a request to the metrics registry if enabled
+     * @param operation operation name
+     * @param took server-side processing time from the response
+     * @param sentAt {@link System#nanoTime()} when the request was sent
+     */
+    private void recordServerTime(String operation, TimeValue took, long sentAt) {
+        MetricsRegistry registry = metricsRegistry;
+        if (registry != null && took != null) {
+            registry.recordServerTime(operation, took.millis(), System.nanoTime() - sentAt);
+        }
+    }
+    
+    /**
+     * @param e failure of an operation
+     * @return HTTP status of the failure, or the exception class name if there was no response
+     */
+    private static String statusOf(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        RestStatus status = RequestRetrier.status(cause);
+        return status != null ? String.valueOf(status.getStatus()) : cause.getClass().getSimpleName();
+    }
+    
+    /**
+     * Wait for a future and rethrow its failure the way the blocking API would
+     * @param future future to wait for
+     * @return result of the future
+     * @throws IOException if the future failed with an IOException
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IOException("Interrupted while waiting for Elasticsearch", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * Starts a request on one of the client's *Async methods
+     */
+    @FunctionalInterface
+    private interface AsyncCall<R> {
+        Cancellable start(ActionListener<R> listener) throws IOException;
+    }
+    
+    /**
+     * Key of a cached document
+     */
+    private record DocumentKey(String indexName, String id) {
+    }
+    
+    /**
+     * Key of a coalesced read: the request against a given write generation of its index
+     */
+    private record ReadKey(String indexName, long generation, String request) {
+    }
+    
+    /**
+     * Builds the index request for a single document
+     */
+    @FunctionalInterface
+    interface IndexRequestFactory {
+        IndexRequest create(String indexName, SampleData data) throws IOException;
+    }
+    
+    /**
+     * Close the service and release resources. The client is closed, once requests in flight
+     * complete, if no other service shares it.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // Buffered writes are sent before the client goes away
+        disableWriteBehind();
+        disableGetBatching();
+        VirtualThreadExecutor executor = virtualThreadExecutor;
+        if (executor != null) {
+            executor.close();
+        }
+        disableRetries();
+        disableHedging();
+        disableMetrics();
+        sharedClient.release();
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.util.Constants;
+
+/**
+ * When to send a second copy of a slow read.
+ * A read is hedged once it has taken longer than the given percentile of recent read latencies,
+ * but never sooner than the minimum delay, and only while the hedge budget allows it.
+ */
+public class HedgeSettings {
+
+    private final double delayPercentile;
+    private final long minDelayMillis;
+    private final double budgetRatio;
+
+    /**
+     * Create settings using the defaults from {@link Constants}
+     */
+    public HedgeSettings() {
+        this(Constants.DEFAULT_HEDGE_DELAY_PERCENTILE,
+                Constants.DEFAULT_HEDGE_MIN_DELAY_MS,
+                Constants.DEFAULT_HEDGE_BUDGET_RATIO);
+    }
+
+    /**
+     * Create settings
+     * @param delayPercentile percentile of recent read latencies after which a read is hedged, for example 95
+     * @param minDelayMillis lower bound of the delay before a read is hedged
+     * @param budgetRatio extra requests allowed per read, for example 0.05 for at most 5% more reads
+     */
+    public HedgeSettings(double delayPercentile, long minDelayMillis, double budgetRatio) {
+        if (!(delayPercentile > 0 && delayPercentile <= 100)) {
+            throw new IllegalArgumentException("delayPercentile must be greater than 0 and at most 100: " + delayPercentile);
+        }
+        if (minDelayMillis < 0) {
+            throw new IllegalArgumentException("minDelayMillis must not be negative: " + minDelayMillis);
+        }
+        if (!(budgetRatio > 0 && budgetRatio <= 1)) {
+            throw new IllegalArgumentException("budgetRatio must be greater than 0 and at most 1: " + budgetRatio);
+        }
+        this.delayPercentile = delayPercentile;
+        this.minDelayMillis = minDelayMillis;
+        this.budgetRatio = budgetRatio;
+    }
+
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgeSettings{" +
+                "delayPercentile=" + delayPercentile +
+                ", minDelayMillis=" + minDelayMillis +
+                ", budgetRatio=" + budgetRatio +
+                '}';
+    }
+}
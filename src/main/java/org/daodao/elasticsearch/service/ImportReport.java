@@ -0,0 +1,113 @@
+package org.daodao.elasticsearch.service;
+
+import java.nio.file.Path;
+
+/**
+ * Progress and throughput of an NDJSON import.
+ * Instances are immutable snapshots; a new one is produced for every progress report.
+ */
+public class ImportReport {
+
+    private final Path file;
+    private final long fileSize;
+    private final long bytesRead;
+    private final long lines;
+    private final long submitted;
+    private final long indexed;
+    private final long failed;
+    private final long skipped;
+    private final long elapsedMillis;
+
+    public ImportReport(Path file, long fileSize, long bytesRead, long lines, long submitted,
+                        long indexed, long failed, long skipped, long elapsedMillis) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.bytesRead = bytesRead;
+        this.lines = lines;
+        this.submitted = submitted;
+        this.indexed = indexed;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return number of non-blank lines read
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return number of documents handed to the bulk pipeline
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return number of documents acknowledged by Elasticsearch
+     */
+    public long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return number of documents rejected by Elasticsearch
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of lines that could not be decoded and were not sent
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return share of the file read so far, between 0 and 100
+     */
+    public double getPercentComplete() {
+        return fileSize == 0 ? 100.0 : bytesRead * 100.0 / fileSize;
+    }
+
+    /**
+     * @return indexed documents per second
+     */
+    public double getDocumentsPerSecond() {
+        return elapsedMillis == 0 ? 0 : indexed * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return file bytes read per second, in MiB
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : bytesRead * 1000.0 / elapsedMillis / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImportReport{file=%s, progress=%.1f%%, lines=%d, submitted=%d, indexed=%d, "
+                        + "failed=%d, skipped=%d, elapsedMillis=%d, docsPerSecond=%.0f, mbPerSecond=%.2f}",
+                file, getPercentComplete(), lines, submitted, indexed, failed, skipped, elapsedMillis,
+                getDocumentsPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,48 @@
+package org.daodao.elasticsearch.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the writes this client makes to each index.
+ * Every write bumps the write generation of its index. Reads that include the generation
+ * in their cache or coalescing keys therefore never mix results from before and after a write.
+ */
+class IndexWriteTracker {
+
+    private final ConcurrentHashMap<String, IndexWrites> writes = new ConcurrentHashMap<>();
+
+    /**
+     * Record a write to an index
+     * @param indexName index name
+     */
+    void onWrite(String indexName) {
+        IndexWrites indexWrites = writes.computeIfAbsent(indexName, name -> new IndexWrites());
+        indexWrites.lastWriteNanos = System.nanoTime();
+        indexWrites.generation.incrementAndGet();
+    }
+
+    /**
+     * @param indexName index name
+     * @return number of writes recorded for the index
+     */
+    long generation(String indexName) {
+        IndexWrites indexWrites = writes.get(indexName);
+        return indexWrites != null ? indexWrites.generation.get() : 0;
+    }
+
+    /**
+     * @param indexName index name
+     * @param nanos time span in nanoseconds
+     * @return true if the index has been written to within the time span
+     */
+    boolean writtenWithin(String indexName, long nanos) {
+        IndexWrites indexWrites = writes.get(indexName);
+        return indexWrites != null && System.nanoTime() - indexWrites.lastWriteNanos < nanos;
+    }
+
+    private static final class IndexWrites {
+        final AtomicLong generation = new AtomicLong();
+        volatile long lastWriteNanos;
+    }
+}
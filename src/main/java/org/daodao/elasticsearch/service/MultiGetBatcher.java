@@ -0,0 +1,207 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Combines single document gets from many callers into _mget requests.
+ * The first get of a batch opens a short window; all gets that arrive before it closes, or
+ * until the batch is full, are sent together. Every caller receives the response for its own
+ * document. Instances are thread-safe and obtained through
+ * {@link ElasticsearchService#enableGetBatching(long, int)}.
+ */
+public class MultiGetBatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiGetBatcher.class);
+
+    private final BiConsumer<MultiGetRequest, ActionListener<MultiGetResponse>> mgetConsumer;
+    private final long windowMicros;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private List<PendingGet> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    private final AtomicLong gets = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    MultiGetBatcher(BiConsumer<MultiGetRequest, ActionListener<MultiGetResponse>> mgetConsumer,
+                    long windowMicros,
+                    int maxBatchSize) {
+        if (windowMicros <= 0) {
+            throw new IllegalArgumentException("windowMicros must be positive: " + windowMicros);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.mgetConsumer = mgetConsumer;
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-mget-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Get batching started with a window of {} us and at most {} documents per _mget", windowMicros, maxBatchSize);
+    }
+
+    /**
+     * Queue a get for the next _mget
+     * @param indexName index name
+     * @param id document ID
+     * @return future completed with the get response, which reports a missing document as not found
+     */
+    public CompletableFuture<GetResponse> get(String indexName, String id) {
+        PendingGet get = new PendingGet(indexName, id);
+        List<PendingGet> fullBatch = null;
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IOException("Get batching has been closed"));
+            }
+            pending.add(get);
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = takePending();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        gets.incrementAndGet();
+        if (fullBatch != null) {
+            // Sending is asynchronous, so the caller that filled the batch is not held up
+            send(fullBatch);
+        }
+        return get.future;
+    }
+
+    /**
+     * Send the queued gets now instead of waiting for the window to close
+     */
+    public void flush() {
+        List<PendingGet> batch;
+        lock.lock();
+        try {
+            batch = takePending();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @return number of gets queued so far
+     */
+    public long getGetCount() {
+        return gets.get();
+    }
+
+    /**
+     * @return number of _mget requests sent so far
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return average number of documents per _mget request
+     */
+    public double getAverageBatchSize() {
+        long sent = batches.get();
+        return sent == 0 ? 0 : (double) gets.get() / sent;
+    }
+
+    /**
+     * Send the queued gets and stop accepting new ones
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        flush();
+        scheduler.shutdownNow();
+        log.info("Get batching closed after {} gets in {} _mget requests", gets.get(), batches.get());
+    }
+
+    private List<PendingGet> takePending() {
+        List<PendingGet> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(List<PendingGet> batch) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (PendingGet get : batch) {
+            request.add(get.indexName, get.id);
+        }
+        batches.incrementAndGet();
+        try {
+            mgetConsumer.accept(request, ActionListener.wrap(
+                    response -> complete(batch, response),
+                    e -> batch.forEach(get -> get.future.completeExceptionally(e))));
+        } catch (RuntimeException e) {
+            batch.forEach(get -> get.future.completeExceptionally(e));
+        }
+    }
+
+    private static void complete(List<PendingGet> batch, MultiGetResponse response) {
+        // Items come back in request order
+        MultiGetItemResponse[] items = response.getResponses();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingGet get = batch.get(i);
+            MultiGetItemResponse item = items[i];
+            if (item.isFailed()) {
+                get.future.completeExceptionally(new IOException("Failed to get document " + get.id
+                        + " from index " + get.indexName + ": " + item.getFailure().getMessage(),
+                        item.getFailure().getFailure()));
+            } else {
+                get.future.complete(item.getResponse());
+            }
+        }
+    }
+
+    private static final class PendingGet {
+        final String indexName;
+        final String id;
+        final CompletableFuture<GetResponse> future = new CompletableFuture<>();
+
+        PendingGet(String indexName, String id) {
+            this.indexName = indexName;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.daodao.elasticsearch.service;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Dumps an index to a file with one JSON document per line (NDJSON), optionally gzip-compressed.
+ * The _source bytes of each hit are copied as they are into a direct buffer that is written to a
+ * {@link FileChannel}, without decoding them into {@link org.daodao.elasticsearch.model.SampleData}
+ * or strings. The output can be loaded again with {@link NdjsonImporter}.
+ */
+public class NdjsonExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonExporter.class);
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final SlicedScrollExporter scrollExporter;
+
+    NdjsonExporter(SlicedScrollExporter scrollExporter) {
+        this.scrollExporter = scrollExporter;
+    }
+
+    /**
+     * Write every document of an index to a file, replacing the file if it exists
+     * @param indexName index name
+     * @param slices number of parallel scroll slices
+     * @param file target file
+     * @param gzip whether to gzip-compress the output
+     * @return number of documents written
+     * @throws IOException if reading from Elasticsearch or writing the file fails
+     */
+    public long export(String indexName, int slices, Path file, boolean gzip) throws IOException {
+        long start = System.nanoTime();
+        long documents;
+        long bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Sink sink = gzip ? new GzipSink(channel) : new ChannelSink(channel)) {
+            try {
+                documents = scrollExporter.export(indexName, slices, SearchHit::getSourceRef, sink::writeLine);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            sink.flush();
+            bytes = channel.size();
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Wrote {} documents from index {} to {} ({} bytes{}) in {} ms ({} docs/s)",
+                documents, indexName, file, bytes, gzip ? ", gzip" : "", elapsedMillis, documents * 1000 / elapsedMillis);
+        return documents;
+    }
+
+    /**
+     * Destination of the exported lines. Called from one thread at a time.
+     */
+    private abstract static class Sink implements AutoCloseable {
+
+        void writeLine(BytesReference source) {
+            try {
+                BytesRefIterator chunks = source.iterator();
+                BytesRef chunk;
+                while ((chunk = chunks.next()) != null) {
+                    write(chunk.bytes, chunk.offset, chunk.length);
+                }
+                write(NEWLINE, 0, NEWLINE.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        abstract void write(byte[] bytes, int offset, int length) throws IOException;
+
+        abstract void flush() throws IOException;
+
+        @Override
+        public abstract void close() throws IOException;
+    }
+
+    /**
+     * Buffers lines in a direct buffer and writes it to the channel when full
+     */
+    private static class ChannelSink extends Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        ChannelSink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Compresses lines into the channel
+     */
+    private static class GzipSink extends Sink {
+        private final GZIPOutputStream gzip;
+        private boolean finished;
+
+        GzipSink(FileChannel channel) throws IOException {
+            OutputStream out = new FilterOutputStream(Channels.newOutputStream(channel)) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    this.out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // The channel belongs to the caller, which still reads its size
+                    flush();
+                }
+            };
+            this.gzip = new GZIPOutputStream(out, WRITE_BUFFER_SIZE);
+        }
+
+        @Override
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            gzip.write(bytes, offset, length);
+        }
+
+        @Override
+        void flush() throws IOException {
+            // Write the gzip trailer so the channel holds the complete file
+            if (!finished) {
+                gzip.finish();
+                finished = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            // Ends the Deflater, releasing its native memory
+            gzip.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.core.CheckedFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Imports files with one JSON document per line (NDJSON) into an index.
+ * The file is read incrementally through a {@link FileChannel}, so its size is not limited by
+ * the heap. Lines are either decoded into {@link SampleData} (validating them and keeping their
+ * IDs) or passed through as raw bytes with IDs assigned by Elasticsearch.
+ *
+ * <p>Documents are fed into a {@link BulkIngester}. Once the configured number of concurrent
+ * bulk requests is in flight, adding the next batch blocks the reader until a request completes,
+ * so a slow cluster throttles the import instead of filling the heap. Items rejected with
+ * 429 are resent with exponential backoff, by the service's retrier if retries are enabled and
+ * by the underlying bulk processor otherwise.
+ */
+public class NdjsonImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonImporter.class);
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * How lines are turned into index requests
+     */
+    public enum Mode {
+        /** Decode each line into SampleData, use its ID and skip lines that are not valid documents */
+        DECODE,
+        /** Send each line unchanged and let Elasticsearch assign IDs */
+        RAW
+    }
+
+    private final ElasticsearchService service;
+    private final String indexName;
+    private final BulkSettings settings;
+    private final Mode mode;
+    private final CheckedFunction<BytesReference, SampleData, IOException> decoder;
+    private final long progressIntervalMillis;
+    private Consumer<ImportReport> progressListener;
+
+    NdjsonImporter(ElasticsearchService service,
+                   String indexName,
+                   BulkSettings settings,
+                   Mode mode,
+                   CheckedFunction<BytesReference, SampleData, IOException> decoder,
+                   long progressIntervalMillis) {
+        this.service = service;
+        this.indexName = indexName;
+        this.settings = settings;
+        this.mode = mode;
+        this.decoder = decoder;
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+
+    /**
+     * Receive a report every progress interval in addition to the progress log line
+     * @param progressListener listener, or null to only log progress
+     */
+    public void setProgressListener(Consumer<ImportReport> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Import a file and wait until every document has been acknowledged or has failed
+     * @param file NDJSON file
+     * @return final report
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        Run run = new Run(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BulkIngester ingester = service.createBulkIngester(indexName, settings, run::onFailure)) {
+            run.fileSize = channel.size();
+            run.ingester = ingester;
+            log.info("Importing {} ({} bytes) into index {} in {} mode", file, run.fileSize, indexName, mode);
+            read(channel, run);
+        }
+        ImportReport report = run.report();
+        log.info("Import finished: {}", report);
+        return report;
+    }
+
+    private void read(FileChannel channel, Run run) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        boolean endOfFile = false;
+        while (!endOfFile) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                run.bytesRead += read;
+            }
+
+            buffer.flip();
+            byte[] array = buffer.array();
+            int lineStart = buffer.position();
+            int limit = buffer.limit();
+            for (int i = lineStart; i < limit; i++) {
+                if (array[i] == '\n') {
+                    handleLine(array, lineStart, i, run);
+                    lineStart = i + 1;
+                }
+            }
+            if (endOfFile && lineStart < limit) {
+                // Last line without a trailing newline
+                handleLine(array, lineStart, limit, run);
+                lineStart = limit;
+            }
+            buffer.position(lineStart);
+            buffer.compact();
+
+            if (!endOfFile && !buffer.hasRemaining()) {
+                // A single line does not fit into the buffer, grow it
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            run.maybeReportProgress();
+        }
+    }
+
+    private void handleLine(byte[] array, int start, int end, Run run) throws IOException {
+        // Trim trailing carriage returns and surrounding whitespace
+        while (end > start && array[end - 1] <= ' ') {
+            end--;
+        }
+        while (start < end && array[start] <= ' ') {
+            start++;
+        }
+        if (start == end) {
+            return;
+        }
+        run.lines++;
+
+        if (mode == Mode.RAW) {
+            // The request outlives the read buffer, so the line is copied
+            byte[] line = Arrays.copyOfRange(array, start, end);
+            run.ingester.add(new IndexRequest(indexName).source(line, XContentType.JSON));
+            return;
+        }
+
+        SampleData data;
+        try {
+            // Decoded in place, the document does not reference the buffer afterwards
+            data = decoder.apply(new BytesArray(array, start, end - start));
+        } catch (IOException e) {
+            run.skipped++;
+            if (run.skipped <= 10) {
+                log.warn("Skipping line {} of {} that is not a valid document: {}", run.lines, run.file, e.getMessage());
+            }
+            return;
+        }
+        run.ingester.add(data);
+    }
+
+    /**
+     * State of a single import
+     */
+    private class Run {
+        private final Path file;
+        private final long start = System.nanoTime();
+        private long nextProgress = System.nanoTime() + progressIntervalMillis * 1_000_000;
+        private BulkIngester ingester;
+        private long fileSize;
+        private long bytesRead;
+        private long lines;
+        private long skipped;
+
+        Run(Path file) {
+            this.file = file;
+        }
+
+        void onFailure(BulkResult.Failure failure) {
+            if (ingester == null || ingester.getFailedCount() <= 10) {
+                log.warn("Document failed to import into index {}: {}", indexName, failure);
+            }
+        }
+
+        void maybeReportProgress() {
+            long now = System.nanoTime();
+            if (now < nextProgress) {
+                return;
+            }
+            nextProgress = now + progressIntervalMillis * 1_000_000;
+            ImportReport report = report();
+            log.info("Import progress: {}", report);
+            if (progressListener != null) {
+                progressListener.accept(report);
+            }
+        }
+
+        ImportReport report() {
+            return new ImportReport(file, fileSize, bytesRead, lines,
+                    ingester.getSubmittedCount(), ingester.getIndexedCount(), ingester.getFailedCount(),
+                    skipped, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.cache.CacheSettings;
+import org.daodao.elasticsearch.cache.CacheStats;
+import org.daodao.elasticsearch.cache.LocalCache;
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.action.search.SearchRequest;
+
+import java.util.List;
+
+/**
+ * Caches search results by index and query.
+ *
+ * <p>The write generation of the index, bumped by every write of this client, is part of the
+ * cache key. A write therefore makes all earlier results of that index unreachable at once,
+ * without scanning the cache; they age out through eviction.
+ * Writes are only searchable after the next refresh, so results are not cached until the
+ * refresh interval has passed since the last write. Writes made by other clients are only
+ * picked up once an entry expires.
+ */
+class QueryResultCache {
+
+    private final LocalCache<QueryKey, List<SampleData>> cache;
+    private final IndexWriteTracker writes;
+    private final long refreshIntervalNanos;
+
+    QueryResultCache(CacheSettings settings, IndexWriteTracker writes, long refreshIntervalMillis) {
+        this.cache = new LocalCache<>(settings);
+        this.writes = writes;
+        this.refreshIntervalNanos = refreshIntervalMillis * 1_000_000;
+    }
+
+    /**
+     * Build the key of a search against the current generation of its index
+     * @param searchRequest search request
+     * @return cache key
+     */
+    QueryKey keyFor(SearchRequest searchRequest) {
+        String indexName = String.join(",", searchRequest.indices());
+        // The source renders as compact JSON with a fixed field order, identical queries give identical keys
+        String query = String.valueOf(searchRequest.source());
+        return new QueryKey(indexName, query, writes.generation(indexName));
+    }
+
+    /**
+     * @param key cache key
+     * @return cached results, shared with other callers, or null
+     */
+    List<SampleData> get(QueryKey key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Cache results unless the index has been written to since the key was built
+     * or so recently that the results may not reflect the write yet
+     * @param key key built before the search was sent
+     * @param results results, which must not be modified afterwards
+     * @param weightBytes approximate size of the results in bytes
+     */
+    void put(QueryKey key, List<SampleData> results, long weightBytes) {
+        if (writes.generation(key.indexName()) != key.generation()
+                || writes.writtenWithin(key.indexName(), refreshIntervalNanos)) {
+            return;
+        }
+        cache.put(key, results, weightBytes + key.query().length());
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    record QueryKey(String indexName, String query, long generation) {
+    }
+}
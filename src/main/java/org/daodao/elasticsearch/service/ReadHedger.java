@@ -0,0 +1,235 @@
+package org.daodao.elasticsearch.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends a second copy of a read that is slower than usual and takes whichever answer arrives first.
+ *
+ * <p>A read that has not been answered after a percentile of recent read latencies is sent again
+ * with a different search preference. The client sends it to the next node in turn, and the
+ * preference makes that node pick a shard copy of its own choosing, so a copy that is stuck in a
+ * garbage collection or a merge is usually avoided. The first successful response completes the
+ * read and the other request is cancelled.
+ *
+ * <p>Hedges are paid for from a budget that grows by the budget ratio with every read, so they
+ * add at most that share of extra requests, plus a small burst. No read is hedged until enough
+ * latencies have been seen to know what slow means.
+ * Instances are thread-safe and obtained through {@link ElasticsearchService#enableHedging(HedgeSettings)}.
+ */
+public class ReadHedger implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadHedger.class);
+
+    // Number of recent latencies the delay is computed from
+    private static final int WINDOW_SIZE = 1024;
+    // Latencies needed before reads are hedged
+    private static final int MIN_SAMPLES = 20;
+    // New latencies after which the delay is computed again
+    private static final int RECOMPUTE_INTERVAL = 64;
+    // Hedges that can be saved up for a burst of slow reads
+    private static final double MAX_BUDGET = 10;
+    // Custom preferences must not start with an underscore
+    private static final String PREFERENCE_PREFIX = "hedge-";
+
+    private final HedgeSettings settings;
+    private final long minDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong preferences = new AtomicLong();
+
+    // Guarded by this
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private long sampleCount;
+    private int sinceRecompute;
+    private long delayNanos = -1;
+    private double budget;
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    ReadHedger(HedgeSettings settings) {
+        this.settings = settings;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMinDelayMillis());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Hedged reads enabled: {}", settings);
+    }
+
+    /**
+     * Send a read, and a second copy of it if the first is slow
+     * @param operation sends the read with the given search preference, null for the first copy
+     * @return future completed with the first successful response, or the last failure if every copy failed.
+     *         Cancelling it cancels every copy in flight.
+     */
+    <T> CompletableFuture<T> hedge(Function<String, CompletableFuture<T>> operation) {
+        reads.incrementAndGet();
+        long delay = depositAndGetDelay();
+        Race<T> race = new Race<>();
+        long startedAt = System.nanoTime();
+        CompletableFuture<T> primary = race.start(operation, null);
+        primary.whenComplete((response, e) -> {
+            // A first copy that lost is recorded with the time it had taken so far, which underestimates it
+            if (e == null || (primary.isCancelled() && !race.result.isCancelled())) {
+                record(System.nanoTime() - startedAt);
+            }
+        });
+        if (delay >= 0 && !race.result.isDone()) {
+            try {
+                ScheduledFuture<?> hedge = scheduler.schedule(() -> sendHedge(race, operation), delay, TimeUnit.NANOSECONDS);
+                race.result.whenComplete((response, e) -> hedge.cancel(false));
+            } catch (RejectedExecutionException e) {
+                // Closed, the first copy is on its own
+            }
+        }
+        return race.result;
+    }
+
+    /**
+     * @return current delay before a read is hedged in milliseconds, or -1 while too few latencies are known
+     */
+    public synchronized double getDelayMillis() {
+        return delayNanos < 0 ? -1 : Math.max(delayNanos, minDelayNanos) / 1e6;
+    }
+
+    /**
+     * @return number of reads sent through the hedger
+     */
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * @return number of second copies sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return number of reads answered by the second copy
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return number of slow reads not hedged because the budget was used up
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    /**
+     * Stop hedging. Reads in flight complete without a second copy.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        log.info("Hedged reads disabled after {} hedges for {} reads, {} won", hedges.get(), reads.get(), hedgeWins.get());
+    }
+
+    private <T> void sendHedge(Race<T> race, Function<String, CompletableFuture<T>> operation) {
+        if (race.result.isDone()) {
+            return;
+        }
+        if (!withdraw()) {
+            budgetExhausted.incrementAndGet();
+            return;
+        }
+        hedges.incrementAndGet();
+        log.debug("Hedging read after {} ms", getDelayMillis());
+        race.start(operation, PREFERENCE_PREFIX + preferences.incrementAndGet());
+    }
+
+    /**
+     * Add the share of a read to the budget
+     * @return delay before the read is hedged in nanoseconds, or -1 if it is not hedged
+     */
+    private synchronized long depositAndGetDelay() {
+        budget = Math.min(MAX_BUDGET, budget + settings.getBudgetRatio());
+        return delayNanos < 0 ? -1 : Math.max(delayNanos, minDelayNanos);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        latencies[(int) (sampleCount++ % WINDOW_SIZE)] = latencyNanos;
+        if (sampleCount < MIN_SAMPLES || (delayNanos >= 0 && ++sinceRecompute < RECOMPUTE_INTERVAL)) {
+            return;
+        }
+        sinceRecompute = 0;
+        long[] sorted = Arrays.copyOf(latencies, (int) Math.min(sampleCount, WINDOW_SIZE));
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(settings.getDelayPercentile() / 100 * sorted.length) - 1;
+        delayNanos = sorted[Math.max(0, rank)];
+    }
+
+    /**
+     * Copies of one read racing for the first successful response
+     */
+    private final class Race<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // Guarded by this
+        private int running;
+        private boolean hedged;
+        private boolean answered;
+
+        CompletableFuture<T> start(Function<String, CompletableFuture<T>> operation, String preference) {
+            CompletableFuture<T> attempt;
+            try {
+                attempt = operation.apply(preference);
+            } catch (RuntimeException e) {
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                running++;
+                hedged |= preference != null;
+            }
+            CompletableFuture<T> current = attempt;
+            result.whenComplete((response, e) -> current.cancel(true));
+            current.whenComplete((response, e) -> {
+                boolean first;
+                boolean fail;
+                synchronized (this) {
+                    running--;
+                    first = e == null && !answered;
+                    answered |= e == null;
+                    // A failed first copy is not hedged; it was already retried if retries are enabled
+                    fail = e != null && (running == 0 || !hedged);
+                }
+                if (first) {
+                    // Counted before the caller can see the response
+                    if (preference != null) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    result.complete(response);
+                } else if (fail) {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+            return current;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.core.CheckedFunction;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests again after transient failures, waiting an exponentially growing, randomized
+ * time between attempts so that clients rejected together do not all come back at once.
+ *
+ * <p>Idempotent requests are retried after rejections (429), unavailable nodes (502, 503, 504)
+ * and connection errors or timeouts. Other requests, such as an insert that lets Elasticsearch
+ * pick the document ID, may already have been executed when a response goes missing; they are
+ * only retried when they were rejected or never reached a node.
+ * A bulk request that partly fails resends just the items that were rejected with 429, and the
+ * outcomes of all rounds are merged into one response in the original item order.
+ * Instances are thread-safe and obtained through {@link ElasticsearchService#enableRetries(RetrySettings)}.
+ */
+public class RequestRetrier implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestRetrier.class);
+
+    private final RetrySettings settings;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong retriedBulkItems = new AtomicLong();
+
+    RequestRetrier(RetrySettings settings) {
+        this.settings = settings;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Request retries enabled: {}", settings);
+    }
+
+    /**
+     * Run a blocking request, retrying it in the calling thread
+     * @param idempotent whether sending the request twice has the same effect as sending it once
+     * @param operation sends the request
+     * @return response of the first successful attempt
+     * @throws IOException failure of the last attempt
+     */
+    <T> T call(boolean idempotent, CheckedSupplier<T, IOException> operation) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return operation.get();
+            } catch (IOException | RuntimeException e) {
+                if (!shouldRetry(e, idempotent, attempt) || !sleep(backoffMillis(attempt))) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run an asynchronous request, retrying it after a delay without blocking any thread.
+     * Cancelling the returned future cancels the attempt in flight and any further retries.
+     * @param idempotent whether sending the request twice has the same effect as sending it once
+     * @param operation sends the request
+     * @return future completed with the response of the first successful attempt
+     */
+    <T> CompletableFuture<T> callAsync(boolean idempotent, Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(idempotent, operation, 0, result);
+        return result;
+    }
+
+    /**
+     * Send a bulk request, retrying items rejected with 429
+     * @param bulkRequest bulk request
+     * @param sender sends a bulk request
+     * @return merged response covering every item of the bulk request
+     * @throws IOException failure of the last attempt of a round
+     */
+    BulkResponse bulk(BulkRequest bulkRequest, CheckedFunction<BulkRequest, BulkResponse, IOException> sender) throws IOException {
+        BulkRound round = new BulkRound(bulkRequest);
+        for (int attempt = 0; ; attempt++) {
+            BulkRequest pending = round.pending();
+            round.record(call(round.idempotent(), () -> sender.apply(pending)));
+            if (!shouldRetryItems(round, attempt) || !sleep(backoffMillis(attempt))) {
+                return round.response();
+            }
+        }
+    }
+
+    /**
+     * Send a bulk request asynchronously, retrying items rejected with 429
+     * @param bulkRequest bulk request
+     * @param sender sends a bulk request
+     * @return future completed with the merged response covering every item of the bulk request
+     */
+    CompletableFuture<BulkResponse> bulkAsync(BulkRequest bulkRequest, Function<BulkRequest, CompletableFuture<BulkResponse>> sender) {
+        CompletableFuture<BulkResponse> result = new CompletableFuture<>();
+        bulkAttempt(new BulkRound(bulkRequest), sender, 0, result);
+        return result;
+    }
+
+    /**
+     * @return number of requests sent again
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return number of requests that still failed transiently after the last retry
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    /**
+     * @return number of bulk items sent again after being rejected
+     */
+    public long getRetriedBulkItemCount() {
+        return retriedBulkItems.get();
+    }
+
+    /**
+     * Stop scheduling retries. Retries that are already waiting still run.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        log.info("Request retries disabled after {} retries, {} exhausted", retries.get(), exhausted.get());
+    }
+
+    private <T> void attempt(boolean idempotent, Supplier<CompletableFuture<T>> operation, int attempt, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<T> current = operation.get();
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                current.cancel(true);
+            }
+        });
+        current.whenComplete((response, e) -> {
+            if (e == null) {
+                result.complete(response);
+                return;
+            }
+            Throwable cause = unwrap(e);
+            if (!shouldRetry(cause, idempotent, attempt)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            schedule(() -> attempt(idempotent, operation, attempt + 1, result), attempt, cause, result);
+        });
+    }
+
+    private void bulkAttempt(BulkRound round, Function<BulkRequest, CompletableFuture<BulkResponse>> sender,
+                             int attempt, CompletableFuture<BulkResponse> result) {
+        BulkRequest pending = round.pending();
+        callAsync(round.idempotent(), () -> sender.apply(pending)).whenComplete((response, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+                return;
+            }
+            round.record(response);
+            if (!shouldRetryItems(round, attempt)) {
+                result.complete(round.response());
+                return;
+            }
+            schedule(() -> bulkAttempt(round, sender, attempt + 1, result), attempt, null, result);
+        });
+    }
+
+    private void schedule(Runnable retry, int attempt, Throwable cause, CompletableFuture<?> result) {
+        try {
+            scheduler.schedule(retry, backoffMillis(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(cause != null ? cause : e);
+        }
+    }
+
+    private boolean shouldRetry(Throwable e, boolean idempotent, int attempt) {
+        if (!(idempotent ? isTransient(e) : isRejected(e))) {
+            return false;
+        }
+        if (attempt >= settings.getMaxRetries()) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        retries.incrementAndGet();
+        log.debug("Retrying request after attempt {} failed: {}", attempt + 1, e.toString());
+        return true;
+    }
+
+    private boolean shouldRetryItems(BulkRound round, int attempt) {
+        int rejected = round.rejectedCount();
+        if (rejected == 0) {
+            return false;
+        }
+        if (attempt >= settings.getMaxRetries()) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        retries.incrementAndGet();
+        retriedBulkItems.addAndGet(rejected);
+        log.debug("Retrying {} rejected bulk items after attempt {}", rejected, attempt + 1);
+        return true;
+    }
+
+    private long backoffMillis(int attempt) {
+        // Full jitter: spreads out clients that were rejected at the same time
+        long ceiling = Math.min(settings.getMaxBackoffMillis(), settings.getInitialBackoffMillis() << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param e failure of a request
+     * @return true if the request was not executed and can be sent again safely
+     */
+    static boolean isRejected(Throwable e) {
+        if (status(e) == RestStatus.TOO_MANY_REQUESTS) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param e failure of a request
+     * @return true if the same request is likely to succeed a moment later
+     */
+    static boolean isTransient(Throwable e) {
+        RestStatus status = status(e);
+        if (status != null) {
+            return status == RestStatus.TOO_MANY_REQUESTS
+                    || status == RestStatus.BAD_GATEWAY
+                    || status == RestStatus.SERVICE_UNAVAILABLE
+                    || status == RestStatus.GATEWAY_TIMEOUT;
+        }
+        // Without a status the request never got an answer: connection errors and timeouts
+        return e instanceof IOException;
+    }
+
+    /**
+     * @param e failure of a request
+     * @return HTTP status the failure was answered with, or null if there was no answer
+     */
+    static RestStatus status(Throwable e) {
+        if (e instanceof ElasticsearchException) {
+            return ((ElasticsearchException) e).status();
+        }
+        if (e instanceof ResponseException) {
+            return RestStatus.fromCode(((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+        }
+        return null;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Outcome of a bulk request over several rounds of retries
+     */
+    private static final class BulkRound {
+        private final BulkRequest bulkRequest;
+        private final BulkItemResponse[] items;
+        // Positions in the original request of the items sent in the current round
+        private List<Integer> positions = new ArrayList<>();
+        private List<Integer> rejected = new ArrayList<>();
+        private long tookMillis;
+
+        BulkRound(BulkRequest bulkRequest) {
+            this.bulkRequest = bulkRequest;
+            this.items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                rejected.add(i);
+            }
+        }
+
+        /**
+         * @return true if every item of the current round names its document,
+         *         so sending it twice overwrites instead of duplicating
+         */
+        boolean idempotent() {
+            for (int position : positions) {
+                if (bulkRequest.requests().get(position).id() == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        BulkRequest pending() {
+            positions = rejected;
+            rejected = new ArrayList<>();
+            if (positions.size() == items.length) {
+                return bulkRequest;
+            }
+            BulkRequest retry = new BulkRequest();
+            retry.timeout(bulkRequest.timeout());
+            retry.setRefreshPolicy(bulkRequest.getRefreshPolicy());
+            retry.waitForActiveShards(bulkRequest.waitForActiveShards());
+            for (int position : positions) {
+                retry.add(bulkRequest.requests().get(position));
+            }
+            return retry;
+        }
+
+        void record(BulkResponse response) {
+            tookMillis += response.getTook().millis();
+            BulkItemResponse[] roundItems = response.getItems();
+            for (int i = 0; i < roundItems.length; i++) {
+                int position = positions.get(i);
+                BulkItemResponse item = roundItems[i];
+                // Item IDs are positions in the request they were sent with
+                if (item.getItemId() != position) {
+                    item = item.isFailed()
+                            ? new BulkItemResponse(position, item.getOpType(), item.getFailure())
+                            : new BulkItemResponse(position, item.getOpType(), item.<DocWriteResponse>getResponse());
+                }
+                items[position] = item;
+                if (item.isFailed() && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                    rejected.add(position);
+                }
+            }
+        }
+
+        int rejectedCount() {
+            return rejected.size();
+        }
+
+        BulkResponse response() {
+            return new BulkResponse(items, tookMillis);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.util.Constants;
+
+/**
+ * Retry limits for requests that failed transiently.
+ * The n-th retry waits a random time between zero and the initial backoff doubled n-1 times,
+ * capped at the maximum backoff.
+ */
+public class RetrySettings {
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * Create settings using the defaults from {@link Constants}
+     */
+    public RetrySettings() {
+        this(Constants.DEFAULT_RETRY_MAX_RETRIES,
+                Constants.DEFAULT_RETRY_INITIAL_BACKOFF_MS,
+                Constants.DEFAULT_RETRY_MAX_BACKOFF_MS);
+    }
+
+    /**
+     * Create settings
+     * @param maxRetries maximum number of times a request is sent again
+     * @param initialBackoffMillis upper bound of the wait before the first retry
+     * @param maxBackoffMillis upper bound of the wait before any retry
+     */
+    public RetrySettings(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        if (initialBackoffMillis <= 0) {
+            throw new IllegalArgumentException("initialBackoffMillis must be positive: " + initialBackoffMillis);
+        }
+        if (maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("maxBackoffMillis must not be less than initialBackoffMillis: " + maxBackoffMillis);
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RetrySettings{" +
+                "maxRetries=" + maxRetries +
+                ", initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis +
+                '}';
+    }
+}
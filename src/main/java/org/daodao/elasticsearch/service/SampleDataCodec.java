@@ -0,0 +1,73 @@
+package org.daodao.elasticsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Converts {@link SampleData} to and from JSON source bytes.
+ * Documents are written straight into a byte buffer and read straight from the source bytes
+ * returned by Elasticsearch. No intermediate String is built in either direction.
+ * The reader and writer are built once and are thread-safe, so one instance can be shared.
+ */
+public final class SampleDataCodec {
+
+    // Typical serialized size of a sample document, avoids regrowing the buffer
+    private static final int EXPECTED_DOCUMENT_SIZE = 256;
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public SampleDataCodec() {
+        this(new ObjectMapper().findAndRegisterModules());
+    }
+
+    public SampleDataCodec(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(SampleData.class);
+        this.writer = objectMapper.writerFor(SampleData.class);
+    }
+
+    /**
+     * Serialize a document
+     * @param data document
+     * @return JSON source bytes, backed by the buffer they were written to
+     * @throws IOException if the document cannot be serialized
+     */
+    public BytesReference encode(SampleData data) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput(EXPECTED_DOCUMENT_SIZE);
+        writer.writeValue(out, data);
+        return out.bytes();
+    }
+
+    /**
+     * Deserialize a document
+     * @param source JSON source bytes
+     * @return document
+     * @throws IOException if the bytes are not a valid document
+     */
+    public SampleData decode(BytesReference source) throws IOException {
+        if (source.hasArray()) {
+            return reader.readValue(source.array(), source.arrayOffset(), source.length());
+        }
+        // Composite buffers, e.g. large responses, are read without joining them first
+        return reader.readValue(source.streamInput());
+    }
+
+    /**
+     * Deserialize a document and set its ID, which is not part of the source of every document
+     * @param source JSON source bytes
+     * @param id document ID
+     * @return document
+     * @throws IOException if the bytes are not a valid document
+     */
+    public SampleData decode(BytesReference source, String id) throws IOException {
+        SampleData data = decode(source);
+        data.setId(id);
+        return data;
+    }
+}
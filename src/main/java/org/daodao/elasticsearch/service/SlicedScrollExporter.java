@@ -0,0 +1,218 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.CheckedFunction;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reads a whole index with a sliced scroll.
+ * Each slice runs its own scroll cursor on a dedicated thread. While a page is being
+ * decoded on the fork-join pool, the slice already fetches its next page, so network
+ * and CPU work overlap. Decoded documents from all slices are handed to a single consumer
+ * that is never called concurrently, so it does not need to be thread-safe.
+ */
+public class SlicedScrollExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SlicedScrollExporter.class);
+
+    private final RestHighLevelClient client;
+    private final int pageSize;
+    private final TimeValue keepAlive;
+    private final ForkJoinPool decodePool;
+
+    SlicedScrollExporter(RestHighLevelClient client, int pageSize, TimeValue keepAlive, ForkJoinPool decodePool) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.client = client;
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive;
+        this.decodePool = decodePool;
+    }
+
+    /**
+     * Read every document of an index and hand it to the consumer
+     * @param indexName index name
+     * @param slices number of parallel scroll slices, 1 for a plain scroll
+     * @param decoder converts a hit into the value passed to the consumer; runs on the fork-join pool
+     * @param consumer receives every decoded value, one call at a time
+     * @return number of documents read
+     * @throws IOException if communication with Elasticsearch fails
+     */
+    public <T> long export(String indexName,
+                           int slices,
+                           CheckedFunction<SearchHit, T, IOException> decoder,
+                           Consumer<? super T> consumer) throws IOException {
+        if (slices <= 0) {
+            throw new IllegalArgumentException("slices must be positive: " + slices);
+        }
+        long start = System.nanoTime();
+        AtomicLong count = new AtomicLong();
+        ReentrantLock consumerLock = new ReentrantLock();
+
+        try (ExecutorService sliceExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("es-slice-" + indexName + "-", 0).factory())) {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int slice = 0; slice < slices; slice++) {
+                SliceBuilder sliceBuilder = slices > 1 ? new SliceBuilder(slice, slices) : null;
+                results.add(sliceExecutor.submit(() -> {
+                    long read = readSlice(indexName, sliceBuilder, decoder, consumer, consumerLock);
+                    count.addAndGet(read);
+                    return read;
+                }));
+            }
+            awaitAll(results);
+        }
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Exported {} documents from index {} with {} slices in {} ms ({} docs/s)",
+                count.get(), indexName, slices, elapsedMillis, count.get() * 1000 / elapsedMillis);
+        return count.get();
+    }
+
+    private <T> long readSlice(String indexName,
+                               SliceBuilder slice,
+                               CheckedFunction<SearchHit, T, IOException> decoder,
+                               Consumer<? super T> consumer,
+                               ReentrantLock consumerLock) throws IOException {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .size(pageSize)
+                .sort("_doc", SortOrder.ASC); // cheapest order for a full scan
+        if (slice != null) {
+            source.slice(slice);
+        }
+        SearchRequest searchRequest = new SearchRequest(indexName).source(source).scroll(keepAlive);
+
+        SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        long read = 0;
+        try {
+            SearchHit[] hits = response.getHits().getHits();
+            while (hits.length > 0) {
+                Future<List<T>> decoded = decode(hits, decoder);
+
+                // Fetch the next page while the current one is being decoded
+                SearchResponse next = null;
+                if (hits.length == pageSize) {
+                    next = client.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), RequestOptions.DEFAULT);
+                    scrollId = next.getScrollId();
+                }
+
+                List<T> values = await(decoded);
+                consumerLock.lock();
+                try {
+                    values.forEach(consumer);
+                } finally {
+                    consumerLock.unlock();
+                }
+                read += values.size();
+                hits = next != null ? next.getHits().getHits() : new SearchHit[0];
+            }
+        } finally {
+            clearScroll(scrollId);
+        }
+        log.debug("Slice {} of index {} read {} documents", slice != null ? slice.getId() : 0, indexName, read);
+        return read;
+    }
+
+    private <T> Future<List<T>> decode(SearchHit[] hits, CheckedFunction<SearchHit, T, IOException> decoder) {
+        return decodePool.submit(() -> Arrays.stream(hits)
+                .parallel()
+                .map(hit -> {
+                    try {
+                        return decoder.apply(hit);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to decode document " + hit.getId(), e);
+                    }
+                })
+                .collect(Collectors.toList()));
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        try {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            // The scroll context expires on its own after the keep-alive
+            log.warn("Failed to clear scroll context", e);
+        }
+    }
+
+    private static void awaitAll(List<? extends Future<?>> futures) throws IOException {
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            if (future.isCancelled()) {
+                continue;
+            }
+            try {
+                await(future);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                    // Stop the other slices early, their results are of no use anymore
+                    futures.forEach(f -> f.cancel(true));
+                } else if (failure != e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <V> V await(Future<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        } catch (CancellationException e) {
+            throw new IOException("Export slice was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while ((cause instanceof CompletionException || cause instanceof UncheckedIOException
+                    || cause instanceof ExecutionException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
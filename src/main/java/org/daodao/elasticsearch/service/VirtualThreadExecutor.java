@@ -0,0 +1,161 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.core.CheckedFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs blocking Elasticsearch calls on virtual threads.
+ * Every task gets its own virtual thread, and a semaphore caps how many of them
+ * may talk to the cluster at the same time. Tasks waiting for a permit only park
+ * their virtual thread, so tens of thousands of them can be queued cheaply.
+ */
+public class VirtualThreadExecutor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    /**
+     * Create an executor
+     * @param maxConcurrency maximum number of tasks running at the same time
+     */
+    public VirtualThreadExecutor(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("es-virtual-", 0).factory());
+        log.info("Virtual thread executor started with max concurrency {}", maxConcurrency);
+    }
+
+    /**
+     * Run a blocking task on a virtual thread
+     * @param task task to run
+     * @return future completed with the result of the task
+     */
+    public <T> CompletableFuture<T> submit(CheckedSupplier<T, IOException> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Run an operation for every input concurrently and wait for all of them
+     * @param inputs inputs, for example document IDs or search terms
+     * @param operation blocking operation applied to each input
+     * @return results keyed by input, in input iteration order
+     * @throws IOException if any operation failed; further failures are added as suppressed exceptions
+     */
+    public <I, R> Map<I, R> invokeAll(Collection<I> inputs, CheckedFunction<I, R, IOException> operation) throws IOException {
+        List<I> keys = new ArrayList<>(inputs);
+        List<CompletableFuture<R>> futures = new ArrayList<>(keys.size());
+        for (I input : keys) {
+            futures.add(submit(() -> operation.apply(input)));
+        }
+
+        Map<I, R> results = new LinkedHashMap<>();
+        IOException failure = null;
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                results.put(keys.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IOException("Interrupted while waiting for concurrent operations", e);
+            } catch (ExecutionException e) {
+                IOException cause = toIOException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * @return maximum number of tasks running at the same time
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return number of tasks currently running
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return approximate number of tasks waiting for a permit
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Stop accepting tasks and wait for running ones to finish
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Virtual thread tasks did not finish in time, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private static IOException toIOException(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof IOException) {
+            return (IOException) e;
+        }
+        return new IOException(e.getMessage(), e);
+    }
+}
@@ -0,0 +1,16 @@
+package org.daodao.elasticsearch.service;
+
+/**
+ * When a buffered write is reported back to the caller
+ * @see ElasticsearchService#enableWriteBehind(WriteAck, int, BulkSettings)
+ */
+public enum WriteAck {
+    /**
+     * As soon as the write is in the buffer. Failures of the later bulk request are only logged.
+     */
+    ENQUEUED,
+    /**
+     * Once the bulk request containing the write has been acknowledged by Elasticsearch
+     */
+    INDEXED
+}
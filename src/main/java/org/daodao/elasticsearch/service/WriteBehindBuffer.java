@@ -0,0 +1,375 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded in-memory buffer of index requests that a background thread sends as _bulk requests.
+ *
+ * <p>The buffer is split into stripes, each a bounded queue, so that writers on different
+ * threads rarely contend on the same lock. Writes of the same document always go to the same
+ * stripe and keep their order: a stripe has at most one bulk request in flight, and its next
+ * writes are only sent once that request completes, however many concurrent requests the
+ * settings allow. The flusher drains all stripes when the flush interval elapses or as soon as
+ * a stripe holds a full batch. When the buffer is full, writers wait for the flusher to make
+ * room and are rejected if it does not do so in time.
+ *
+ * <p>Instances are thread-safe and obtained through
+ * {@link ElasticsearchService#enableWriteBehind(WriteAck, int, BulkSettings)}.
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    // How often a closing flusher checks whether stripes held by requests in flight can be sent
+    private static final long CLOSE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer;
+    private final ArrayBlockingQueue<PendingWrite>[] stripes;
+    // Set while a bulk request with writes of the stripe is in flight
+    private final AtomicBoolean[] stripesInFlight;
+    private final int stripeMask;
+    private final int stripeFlushSize;
+    private final int bulkActions;
+    private final long bulkSizeBytes;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutMillis;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Thread flusher;
+
+    private volatile boolean closed;
+    private volatile boolean flushRequested;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bulkRequests = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    WriteBehindBuffer(BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer,
+                      int capacity,
+                      BulkSettings settings,
+                      long offerTimeoutMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (settings.getFlushIntervalMillis() == 0) {
+            throw new IllegalArgumentException("Write-behind buffering requires a flush interval");
+        }
+        this.bulkConsumer = bulkConsumer;
+        int stripeCount = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1,
+                Integer.highestOneBit(capacity));
+        this.stripes = new ArrayBlockingQueue[stripeCount];
+        this.stripesInFlight = new AtomicBoolean[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ArrayBlockingQueue<>(Math.max(1, capacity / stripeCount));
+            stripesInFlight[i] = new AtomicBoolean();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.stripeFlushSize = Math.max(1, settings.getBulkActions() / stripeCount);
+        this.bulkActions = settings.getBulkActions();
+        this.bulkSizeBytes = settings.getBulkSizeBytes();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getFlushIntervalMillis());
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        // Requests for different stripes may be in flight together, up to this bound
+        this.maxInFlight = Math.max(1, settings.getConcurrentRequests());
+        this.inFlight = new Semaphore(maxInFlight);
+        this.flusher = new Thread(this::runFlusher, "es-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Write-behind buffering started with capacity {} in {} stripes and {}", capacity, stripeCount, settings);
+    }
+
+    /**
+     * Buffer an index request
+     * @param request index request with its document ID set
+     * @return future completed with the response once the bulk request containing the write is acknowledged;
+     *         failed right away if the buffer stayed full or has been closed
+     */
+    public CompletableFuture<IndexResponse> add(IndexRequest request) {
+        PendingWrite write = new PendingWrite(request);
+        if (closed) {
+            return rejectClosed(write);
+        }
+        ArrayBlockingQueue<PendingWrite> stripe = stripes[stripeOf(request.id())];
+        if (!stripe.offer(write)) {
+            LockSupport.unpark(flusher);
+            try {
+                if (!stripe.offer(write, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    rejected.increment();
+                    return CompletableFuture.failedFuture(
+                            new IOException("Write-behind buffer is full, document " + request.id() + " was not written"));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.increment();
+                return CompletableFuture.failedFuture(new IOException("Interrupted while waiting for buffer space", e));
+            }
+        }
+        // A write that raced with close() is either removed here or taken by the final drain
+        if (closed && stripe.remove(write)) {
+            return rejectClosed(write);
+        }
+        enqueued.increment();
+        if (stripe.size() >= stripeFlushSize) {
+            LockSupport.unpark(flusher);
+        }
+        return write.future;
+    }
+
+    /**
+     * Send the buffered writes without waiting for the flush interval
+     */
+    public void flush() {
+        flushRequested = true;
+        LockSupport.unpark(flusher);
+    }
+
+    /**
+     * @return number of writes currently buffered
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (ArrayBlockingQueue<PendingWrite> stripe : stripes) {
+            pending += stripe.size();
+        }
+        return pending;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return writes turned away because the buffer was full or closed
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getIndexedCount() {
+        return indexed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getBulkRequestCount() {
+        return bulkRequests.sum();
+    }
+
+    /**
+     * Stop accepting writes, send the buffered ones and wait for in-flight bulk requests to complete
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.MINUTES.toMillis(1));
+            if (flusher.isAlive() || !inFlight.tryAcquire(maxInFlight, 1, TimeUnit.MINUTES)) {
+                log.warn("Timed out waiting for buffered writes to be sent, {} still pending", getPendingCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while closing write-behind buffer, {} writes still pending", getPendingCount());
+        }
+        log.info("Write-behind buffering closed: {} enqueued, {} indexed, {} failed, {} rejected in {} bulk requests",
+                getEnqueuedCount(), getIndexedCount(), getFailedCount(), getRejectedCount(), getBulkRequestCount());
+    }
+
+    private CompletableFuture<IndexResponse> rejectClosed(PendingWrite write) {
+        rejected.increment();
+        write.future.completeExceptionally(new IOException("Write-behind buffer has been closed"));
+        return write.future;
+    }
+
+    private int stripeOf(String id) {
+        int h = (id != null ? id.hashCode() : (int) Thread.currentThread().threadId()) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    private void runFlusher() {
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        while (true) {
+            boolean closing = closed;
+            long now = System.nanoTime();
+            if (!closing && !flushRequested && now < nextFlush && !hasFullStripe()) {
+                LockSupport.parkNanos(this, nextFlush - now);
+                continue;
+            }
+            flushRequested = false;
+            try {
+                drain();
+            } catch (InterruptedException e) {
+                log.warn("Write-behind flusher interrupted, {} writes still pending", getPendingCount());
+                return;
+            } catch (RuntimeException e) {
+                log.error("Write-behind flusher failed to send buffered writes", e);
+            }
+            if (closing) {
+                if (getPendingCount() == 0) {
+                    return;
+                }
+                // Stripes held by requests in flight are sent once those complete
+                LockSupport.parkNanos(this, CLOSE_POLL_NANOS);
+                continue;
+            }
+            nextFlush = System.nanoTime() + flushIntervalNanos;
+        }
+    }
+
+    /**
+     * @return true if a stripe that can be sent holds a full batch
+     */
+    private boolean hasFullStripe() {
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i].size() >= stripeFlushSize && !stripesInFlight[i].get()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send what was buffered when the drain started, in batches within the bulk limits. A stripe with a
+     * request in flight is skipped, and a stripe that does not fit into one batch sends only its first
+     * part; the rest follows when that request completes.
+     */
+    private void drain() throws InterruptedException {
+        BulkRequest bulkRequest = new BulkRequest();
+        List<PendingWrite> batch = new ArrayList<>();
+        List<Integer> batchStripes = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            ArrayBlockingQueue<PendingWrite> stripe = stripes[i];
+            if (stripe.isEmpty() || !stripesInFlight[i].compareAndSet(false, true)) {
+                continue;
+            }
+            boolean taken = false;
+            boolean full = false;
+            // Bounded by the size at the start, so a busy stripe cannot keep the flusher here
+            for (int remaining = stripe.size(); remaining > 0 && !full; remaining--) {
+                PendingWrite write = stripe.poll();
+                if (write == null) {
+                    break;
+                }
+                bulkRequest.add(write.request);
+                batch.add(write);
+                taken = true;
+                full = bulkRequest.numberOfActions() >= bulkActions || bulkRequest.estimatedSizeInBytes() >= bulkSizeBytes;
+            }
+            if (!taken) {
+                stripesInFlight[i].set(false);
+                continue;
+            }
+            batchStripes.add(i);
+            if (full) {
+                send(bulkRequest, batch, batchStripes);
+                bulkRequest = new BulkRequest();
+                batch = new ArrayList<>();
+                batchStripes = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(bulkRequest, batch, batchStripes);
+        }
+    }
+
+    private void send(BulkRequest bulkRequest, List<PendingWrite> batch, List<Integer> batchStripes) throws InterruptedException {
+        // Waiting here lets the buffer fill up, which pushes back on writers
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            releaseStripes(batchStripes);
+            throw e;
+        }
+        bulkRequests.increment();
+        log.debug("Sending {} buffered writes ({} bytes)", bulkRequest.numberOfActions(), bulkRequest.estimatedSizeInBytes());
+        Runnable release = () -> {
+            inFlight.release();
+            releaseStripes(batchStripes);
+        };
+        try {
+            bulkConsumer.accept(bulkRequest, ActionListener.runAfter(ActionListener.wrap(
+                    response -> complete(batch, response),
+                    e -> fail(batch, e)), release));
+        } catch (RuntimeException e) {
+            release.run();
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * Let the stripes of a completed request be sent again, right away if one holds a full batch
+     */
+    private void releaseStripes(List<Integer> batchStripes) {
+        boolean full = false;
+        for (int i : batchStripes) {
+            stripesInFlight[i].set(false);
+            full |= stripes[i].size() >= stripeFlushSize;
+        }
+        if (full) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private void complete(List<PendingWrite> batch, BulkResponse response) {
+        // Items come back in request order
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            BulkItemResponse item = items[i];
+            if (item.isFailed()) {
+                failed.increment();
+                log.warn("Buffered write of document {} to index {} failed: {}",
+                        item.getId(), item.getIndex(), item.getFailureMessage());
+                write.future.completeExceptionally(new IOException("Failed to index document " + item.getId()
+                        + " into index " + item.getIndex() + ": " + item.getFailureMessage(), item.getFailure().getCause()));
+            } else {
+                indexed.increment();
+                write.future.complete(item.getResponse());
+            }
+        }
+    }
+
+    private void fail(List<PendingWrite> batch, Exception e) {
+        log.error("Bulk request with {} buffered writes failed", batch.size(), e);
+        failed.add(batch.size());
+        for (PendingWrite write : batch) {
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    private static final class PendingWrite {
+        final IndexRequest request;
+        final CompletableFuture<IndexResponse> future = new CompletableFuture<>();
+
+        PendingWrite(IndexRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.daodao.elasticsearch.standin;
+
+/**
+ * Faults the stand-in server injects into its responses.
+ * Every request is delayed by the latency plus a random part of the jitter. It is then rejected
+ * with 429 or failed with 503 at the given rates, and rejected with 429 whenever more than
+ * maxConcurrentRequests requests are in progress, like a full search or write queue.
+ * Items of a bulk request are rejected one by one, as a cluster does.
+ */
+public class FaultSettings {
+
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double errorRate;
+    private final double rejectionRate;
+    private final int maxConcurrentRequests;
+
+    /**
+     * Create settings that inject no faults
+     */
+    public FaultSettings() {
+        this(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Create settings
+     * @param latencyMillis delay added to every request
+     * @param latencyJitterMillis upper bound of a random delay added on top of the latency
+     * @param errorRate fraction of requests failed with 503, between 0 and 1
+     * @param rejectionRate fraction of requests, or of bulk items, rejected with 429, between 0 and 1
+     * @param maxConcurrentRequests requests in progress beyond which new ones are rejected with 429, 0 for no limit
+     */
+    public FaultSettings(long latencyMillis, long latencyJitterMillis, double errorRate, double rejectionRate,
+                         int maxConcurrentRequests) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis must not be negative: " + latencyMillis);
+        }
+        if (latencyJitterMillis < 0) {
+            throw new IllegalArgumentException("latencyJitterMillis must not be negative: " + latencyJitterMillis);
+        }
+        if (!(errorRate >= 0 && errorRate <= 1)) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1: " + errorRate);
+        }
+        if (!(rejectionRate >= 0 && rejectionRate <= 1)) {
+            throw new IllegalArgumentException("rejectionRate must be between 0 and 1: " + rejectionRate);
+        }
+        if (maxConcurrentRequests < 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must not be negative: " + maxConcurrentRequests);
+        }
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.errorRate = errorRate;
+        this.rejectionRate = rejectionRate;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getRejectionRate() {
+        return rejectionRate;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultSettings{" +
+                "latencyMillis=" + latencyMillis +
+                ", latencyJitterMillis=" + latencyJitterMillis +
+                ", errorRate=" + errorRate +
+                ", rejectionRate=" + rejectionRate +
+                ", maxConcurrentRequests=" + maxConcurrentRequests +
+                '}';
+    }
+}
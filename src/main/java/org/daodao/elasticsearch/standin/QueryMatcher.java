@@ -0,0 +1,385 @@
+package org.daodao.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the query DSL subset the client sends against document sources held in memory:
+ * match_all, match, term, terms, ids, exists, wildcard, range and bool.
+ *
+ * <p>Text is analyzed like the standard analyzer, lowercased and split on anything that is not
+ * a letter or digit. A field name ending in {@code .keyword} addresses the whole value of the
+ * field instead, as dynamic mapping would.
+ */
+final class QueryMatcher {
+
+    private static final String KEYWORD_SUFFIX = ".keyword";
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private QueryMatcher() {
+    }
+
+    /**
+     * Test whether a document matches a query
+     * @param query query object, null or missing for match_all
+     * @param id document ID
+     * @param source document source
+     * @return true if the document matches
+     */
+    static boolean matches(JsonNode query, String id, JsonNode source) {
+        if (query == null || query.isMissingNode() || query.isNull() || query.isEmpty()) {
+            return true;
+        }
+        Map.Entry<String, JsonNode> clause = query.fields().next();
+        JsonNode body = clause.getValue();
+        switch (clause.getKey()) {
+            case "match_all":
+                return true;
+            case "match_none":
+                return false;
+            case "match":
+                return matchesText(body, source);
+            case "term":
+                return matchesTerm(body, source);
+            case "terms":
+                return matchesTerms(body, source);
+            case "ids":
+                for (JsonNode value : body.path("values")) {
+                    if (value.asText().equals(id)) {
+                        return true;
+                    }
+                }
+                return false;
+            case "exists":
+                return !valueOf(source, body.path("field").asText()).isMissingNode();
+            case "wildcard":
+                return matchesWildcard(body, source);
+            case "range":
+                return matchesRange(body, source);
+            case "bool":
+                return matchesBool(body, id, source);
+            default:
+                throw new IllegalArgumentException("unknown query [" + clause.getKey() + "]");
+        }
+    }
+
+    /**
+     * Create a comparator ordering documents by a search request's sort clause.
+     * Documents without a value sort last in either order; _doc, _shard_doc and _score keep insertion order.
+     * @param sort sort clause, a field name, an object or an array of either
+     * @return comparator over document sources, or null if the clause does not reorder documents
+     */
+    static Comparator<JsonNode> comparator(JsonNode sort) {
+        Comparator<JsonNode> comparator = null;
+        for (JsonNode item : sortItems(sort)) {
+            String field = sortField(item);
+            if (field.startsWith("_")) {
+                continue;
+            }
+            Comparator<JsonNode> byField = byField(field, isDescending(item));
+            comparator = comparator == null ? byField : comparator.thenComparing(byField);
+        }
+        return comparator;
+    }
+
+    /**
+     * Get the sort values of a document, as returned with each hit of a sorted search
+     * @param sort sort clause
+     * @param source document source
+     * @param order position of the document in insertion order, used for _doc and _shard_doc
+     * @return one value per sort field
+     */
+    static Object[] sortValues(JsonNode sort, JsonNode source, long order) {
+        List<JsonNode> items = sortItems(sort);
+        Object[] values = new Object[items.size()];
+        for (int i = 0; i < values.length; i++) {
+            String field = sortField(items.get(i));
+            if (field.equals("_doc") || field.equals("_shard_doc")) {
+                values[i] = order;
+            } else if (field.equals("_score")) {
+                values[i] = 1.0;
+            } else {
+                JsonNode value = valueOf(source, field);
+                values[i] = value.isMissingNode() || value.isNull() ? null
+                        : value.isNumber() ? value.numberValue() : value.asText();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Test whether a document sorts after the search_after values of a search request
+     * @param sort sort clause
+     * @param values sort values of the document, as returned by {@link #sortValues}
+     * @param searchAfter search_after array, one value per sort field
+     * @return true if the document comes after the given values and belongs on the next page
+     * @throws IllegalArgumentException if the number of values does not match the sort clause
+     */
+    static boolean isAfter(JsonNode sort, Object[] values, JsonNode searchAfter) {
+        List<JsonNode> items = sortItems(sort);
+        if (!searchAfter.isArray() || searchAfter.size() != items.size()) {
+            throw new IllegalArgumentException("search_after has " + searchAfter.size()
+                    + " value(s) but sort has " + items.size() + ".");
+        }
+        for (int i = 0; i < values.length; i++) {
+            JsonNode after = searchAfter.get(i);
+            int result;
+            if (values[i] == null || after.isNull()) {
+                // Documents without a value sort last in either order
+                result = values[i] == null ? (after.isNull() ? 0 : 1) : -1;
+            } else {
+                JsonNode value = values[i] instanceof Number number
+                        ? DoubleNode.valueOf(number.doubleValue())
+                        : TextNode.valueOf(values[i].toString());
+                result = isDescending(items.get(i)) ? compare(after, value) : compare(value, after);
+            }
+            if (result != 0) {
+                return result > 0;
+            }
+        }
+        return false;
+    }
+
+    private static List<JsonNode> sortItems(JsonNode sort) {
+        List<JsonNode> items = new ArrayList<>();
+        (sort.isArray() ? sort : List.of(sort)).forEach(items::add);
+        return items;
+    }
+
+    private static String sortField(JsonNode item) {
+        return item.isTextual() ? item.asText() : item.fields().next().getKey();
+    }
+
+    private static boolean isDescending(JsonNode item) {
+        if (item.isTextual()) {
+            return item.asText().equals("_score");
+        }
+        JsonNode options = item.fields().next().getValue();
+        JsonNode order = options.isTextual() ? options : options.path("order");
+        return order.asText("asc").equalsIgnoreCase("desc");
+    }
+
+    private static Comparator<JsonNode> byField(String field, boolean descending) {
+        Comparator<JsonNode> order = QueryMatcher::compare;
+        if (descending) {
+            order = order.reversed();
+        }
+        Comparator<JsonNode> values = Comparator.nullsLast(order);
+        return Comparator.comparing(source -> {
+            JsonNode value = valueOf(source, field);
+            return value.isMissingNode() || value.isNull() ? null : value;
+        }, values);
+    }
+
+    private static boolean matchesText(JsonNode body, JsonNode source) {
+        Map.Entry<String, JsonNode> field = body.fields().next();
+        JsonNode options = field.getValue();
+        String text = options.isObject() ? options.path("query").asText() : options.asText();
+        boolean all = options.path("operator").asText("or").equalsIgnoreCase("and");
+        Set<String> queryTokens = tokens(text);
+        if (queryTokens.isEmpty()) {
+            return false;
+        }
+        Set<String> fieldTokens = analyzed(field.getKey(), source);
+        return all ? fieldTokens.containsAll(queryTokens) : queryTokens.stream().anyMatch(fieldTokens::contains);
+    }
+
+    private static boolean matchesTerm(JsonNode body, JsonNode source) {
+        Map.Entry<String, JsonNode> field = body.fields().next();
+        JsonNode options = field.getValue();
+        String term = (options.isObject() ? options.path("value") : options).asText();
+        return containsTerm(field.getKey(), source, term);
+    }
+
+    private static boolean matchesTerms(JsonNode body, JsonNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = body.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().isArray()) {
+                // Options such as boost
+                continue;
+            }
+            for (JsonNode term : field.getValue()) {
+                if (containsTerm(field.getKey(), source, term.asText())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsTerm(String field, JsonNode source, String term) {
+        if (field.endsWith(KEYWORD_SUFFIX)) {
+            JsonNode value = valueOf(source, field);
+            return !value.isMissingNode() && value.asText().equals(term);
+        }
+        return analyzed(field, source).contains(term);
+    }
+
+    private static boolean matchesWildcard(JsonNode body, JsonNode source) {
+        Map.Entry<String, JsonNode> field = body.fields().next();
+        JsonNode options = field.getValue();
+        String pattern = options.isObject()
+                ? options.path("wildcard").asText(options.path("value").asText())
+                : options.asText();
+        boolean caseInsensitive = options.path("case_insensitive").asBoolean(false);
+        Pattern regex = wildcardPattern(pattern, caseInsensitive);
+        JsonNode value = valueOf(source, field.getKey());
+        if (value.isMissingNode() || value.isNull()) {
+            return false;
+        }
+        if (regex.matcher(value.asText()).matches()) {
+            return true;
+        }
+        // On a text field the pattern is compared with each term
+        return !field.getKey().endsWith(KEYWORD_SUFFIX)
+                && tokens(value.asText()).stream().anyMatch(token -> regex.matcher(token).matches());
+    }
+
+    private static Pattern wildcardPattern(String pattern, boolean caseInsensitive) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), caseInsensitive ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+    }
+
+    private static boolean matchesRange(JsonNode body, JsonNode source) {
+        Map.Entry<String, JsonNode> field = body.fields().next();
+        JsonNode bounds = field.getValue();
+        JsonNode value = valueOf(source, field.getKey());
+        if (value.isMissingNode() || value.isNull()) {
+            return false;
+        }
+        // The high level client sends from/to/include_lower/include_upper rather than gte/lte
+        JsonNode lower = bounds.has("gte") ? bounds.get("gte") : bounds.has("gt") ? bounds.get("gt") : bounds.path("from");
+        boolean includeLower = bounds.has("gte") || (!bounds.has("gt") && bounds.path("include_lower").asBoolean(true));
+        JsonNode upper = bounds.has("lte") ? bounds.get("lte") : bounds.has("lt") ? bounds.get("lt") : bounds.path("to");
+        boolean includeUpper = bounds.has("lte") || (!bounds.has("lt") && bounds.path("include_upper").asBoolean(true));
+        if (!lower.isMissingNode() && !lower.isNull()) {
+            int c = compare(value, lower);
+            if (c < 0 || (c == 0 && !includeLower)) {
+                return false;
+            }
+        }
+        if (!upper.isMissingNode() && !upper.isNull()) {
+            int c = compare(value, upper);
+            return c < 0 || (c == 0 && includeUpper);
+        }
+        return true;
+    }
+
+    private static boolean matchesBool(JsonNode body, String id, JsonNode source) {
+        for (String required : new String[]{"must", "filter"}) {
+            for (JsonNode clause : clauses(body.path(required))) {
+                if (!matches(clause, id, source)) {
+                    return false;
+                }
+            }
+        }
+        for (JsonNode clause : clauses(body.path("must_not"))) {
+            if (matches(clause, id, source)) {
+                return false;
+            }
+        }
+        JsonNode should = body.path("should");
+        if (should.isMissingNode() || should.isEmpty()) {
+            return true;
+        }
+        boolean hasRequired = !body.path("must").isMissingNode() || !body.path("filter").isMissingNode();
+        int minimumShouldMatch = body.path("minimum_should_match").asInt(hasRequired ? 0 : 1);
+        int matched = 0;
+        for (JsonNode clause : clauses(should)) {
+            if (matches(clause, id, source)) {
+                matched++;
+            }
+        }
+        return matched >= minimumShouldMatch;
+    }
+
+    private static Iterable<JsonNode> clauses(JsonNode node) {
+        if (node.isMissingNode() || node.isNull()) {
+            return List.of();
+        }
+        return node.isArray() ? node : List.of(node);
+    }
+
+    private static int compare(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) {
+            return Double.compare(a.asDouble(), b.asDouble());
+        }
+        if (a.isNumber() || b.isNumber()) {
+            try {
+                return Double.compare(Double.parseDouble(a.asText()), Double.parseDouble(b.asText()));
+            } catch (NumberFormatException e) {
+                // Fall back to comparing the text
+            }
+        }
+        // Dates formatted like yyyy-MM-dd HH:mm:ss order correctly as text
+        return a.asText().compareTo(b.asText());
+    }
+
+    private static Set<String> analyzed(String field, JsonNode source) {
+        JsonNode value = valueOf(source, field);
+        if (value.isMissingNode() || value.isNull()) {
+            return Set.of();
+        }
+        if (value.isArray()) {
+            Set<String> tokens = new HashSet<>();
+            for (JsonNode element : value) {
+                tokens.addAll(tokens(element.asText()));
+            }
+            return tokens;
+        }
+        return tokens(value.asText());
+    }
+
+    private static Set<String> tokens(String text) {
+        Set<String> tokens = new HashSet<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Look up a possibly dotted field in a source, ignoring a .keyword suffix
+     */
+    private static JsonNode valueOf(JsonNode source, String field) {
+        String path = field.endsWith(KEYWORD_SUFFIX) ? field.substring(0, field.length() - KEYWORD_SUFFIX.length()) : field;
+        JsonNode direct = source.path(path);
+        if (!direct.isMissingNode()) {
+            return direct;
+        }
+        JsonNode node = source;
+        for (String part : path.split("\\.")) {
+            node = node.path(part);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,147 @@
+package org.daodao.elasticsearch.standin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Documents of one index of the stand-in server.
+ * Every write is visible to reads and searches immediately, as if each were followed by a refresh.
+ */
+class StandInIndex {
+
+    /**
+     * A stored document version
+     * @param id document ID
+     * @param source document source
+     * @param version version, starting at 1 and incremented by every write
+     * @param seqNo sequence number of the write that stored this version
+     * @param order sequence number of the write that first created the document, giving the insertion order
+     */
+    record Document(String id, JsonNode source, long version, long seqNo, long order) {
+    }
+
+    /**
+     * Outcome of a write
+     * @param document document after the write, or the existing one if nothing was written
+     * @param result "created", "updated", "deleted" or "not_found"
+     */
+    record WriteResult(Document document, String result) {
+    }
+
+    private final String name;
+    private final ConcurrentHashMap<String, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong seqNo = new AtomicLong();
+
+    StandInIndex(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    Document get(String id) {
+        return documents.get(id);
+    }
+
+    /**
+     * Copy the documents as they are now, for a point in time to search while writes go on
+     * @return index holding the same documents, not affected by later writes to this one
+     */
+    StandInIndex snapshot() {
+        StandInIndex snapshot = new StandInIndex(name);
+        snapshot.documents.putAll(documents);
+        snapshot.seqNo.set(seqNo.get());
+        return snapshot;
+    }
+
+    /**
+     * Store a document, replacing any previous version
+     * @param id document ID
+     * @param source document source
+     * @param createOnly fail rather than replace an existing document
+     * @return the write result, null if createOnly is set and the document exists
+     */
+    WriteResult index(String id, JsonNode source, boolean createOnly) {
+        String[] result = new String[1];
+        Document stored = documents.compute(id, (key, existing) -> {
+            if (existing != null && createOnly) {
+                return existing;
+            }
+            long next = seqNo.getAndIncrement();
+            result[0] = existing == null ? "created" : "updated";
+            return existing == null
+                    ? new Document(id, source, 1, next, next)
+                    : new Document(id, source, existing.version() + 1, next, existing.order());
+        });
+        return result[0] == null ? null : new WriteResult(stored, result[0]);
+    }
+
+    /**
+     * Merge a partial document into an existing one
+     * @param id document ID
+     * @param partial fields to set
+     * @param upsert create the document from the partial one if it does not exist
+     * @return the write result, null if the document does not exist and upsert is not set
+     */
+    WriteResult update(String id, ObjectNode partial, boolean upsert) {
+        String[] result = new String[1];
+        Document stored = documents.compute(id, (key, existing) -> {
+            if (existing == null && !upsert) {
+                return null;
+            }
+            long next = seqNo.getAndIncrement();
+            if (existing == null) {
+                result[0] = "created";
+                return new Document(id, partial.deepCopy(), 1, next, next);
+            }
+            ObjectNode merged = ((ObjectNode) existing.source()).deepCopy();
+            merged.setAll(partial);
+            result[0] = "updated";
+            return new Document(id, merged, existing.version() + 1, next, existing.order());
+        });
+        return stored == null ? null : new WriteResult(stored, result[0]);
+    }
+
+    /**
+     * Remove a document
+     * @param id document ID
+     * @return the removed document with result "deleted", or a null document with result "not_found"
+     */
+    WriteResult delete(String id) {
+        Document removed = documents.remove(id);
+        if (removed == null) {
+            return new WriteResult(null, "not_found");
+        }
+        long next = seqNo.getAndIncrement();
+        return new WriteResult(new Document(id, removed.source(), removed.version() + 1, next, removed.order()), "deleted");
+    }
+
+    /**
+     * Find the documents matching a query
+     * @param query query object, null for all documents
+     * @param sort sort clause, null for insertion order
+     * @return matching documents in order
+     */
+    List<Document> search(JsonNode query, JsonNode sort) {
+        Comparator<Document> order = Comparator.comparingLong(Document::order);
+        Comparator<JsonNode> bySource = sort == null ? null : QueryMatcher.comparator(sort);
+        if (bySource != null) {
+            order = Comparator.comparing(Document::source, bySource).thenComparing(order);
+        }
+        return documents.values().stream()
+                .filter(document -> QueryMatcher.matches(query, document.id(), document.source()))
+                .sorted(order)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,817 @@
+package org.daodao.elasticsearch.standin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process HTTP server speaking the part of the Elasticsearch REST API this client uses, so the
+ * client can be tested and load tested without a cluster.
+ *
+ * <p>Supported are index create/exists/delete, document index/create/get/update/delete,
+ * {@code _search} and {@code _count} with the queries of {@link QueryMatcher}, field sorts and
+ * {@code search_after}, point in time open and close with {@code _pit}, {@code _bulk}, {@code _mget}
+ * and {@code _refresh}. Documents live in memory and are searchable as soon as they are written.
+ * A point in time searches a copy of its indices taken when it was opened and is held until it is
+ * closed, whatever its keep-alive. Faults are injected as configured by {@link FaultSettings}; the
+ * info request the client sends before its first request is never faulted.
+ *
+ * <p>Point the client at it with {@code elasticsearch.hosts} set to {@link #getHostAndPort()}, or run
+ * it standalone with {@code java -cp target/elasticsearch-client-1.0-SNAPSHOT.jar
+ * org.daodao.elasticsearch.standin.StandInServer --port=9200 --latency=5 --rejection-rate=0.01}.
+ *
+ * <p>Unless the JVM runs with {@code -Dsun.net.httpserver.nodelay=true}, headers and body of a response
+ * go out as separate segments and Nagle's algorithm delays every response. The property is read once,
+ * when the JDK HTTP server is first used, so {@link #main(String[])} sets it before starting; embedding
+ * code passes it on the command line, as the test and benchmark builds do.
+ */
+public final class StandInServer implements AutoCloseable {
+
+    /**
+     * System property turning off Nagle's algorithm for the JDK HTTP server
+     */
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private static final Logger log = LoggerFactory.getLogger(StandInServer.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern WILDCARD = Pattern.compile("[*?]");
+    private static final int DEFAULT_SEARCH_SIZE = 10;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, StandInIndex> indices = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<StandInIndex>> pointsInTime = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private volatile FaultSettings faults = new FaultSettings();
+
+    /**
+     * Start a server on a free loopback port
+     * @throws IOException if the server cannot be started
+     */
+    public StandInServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Start a server on the given loopback port
+     * @param port port to listen on, 0 for a free one
+     * @throws IOException if the server cannot be started
+     */
+    public StandInServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Injected latency sleeps, which costs a virtual thread next to nothing
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("Stand-in server listening on {}", getHostAndPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return host and port to configure as elasticsearch.hosts
+     */
+    public String getHostAndPort() {
+        return server.getAddress().getHostString() + ":" + getPort();
+    }
+
+    public FaultSettings getFaults() {
+        return faults;
+    }
+
+    /**
+     * Change the injected faults, taking effect with the next request
+     * @param faults faults to inject
+     */
+    public void setFaults(FaultSettings faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * @return number of requests received, not counting info requests
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return number of requests and bulk items rejected with 429
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return number of requests failed with an injected 503
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * @return number of points in time opened and not yet closed
+     */
+    public int getOpenPointInTimeCount() {
+        return pointsInTime.size();
+    }
+
+    /**
+     * Remove all indices, documents and points in time
+     */
+    public void clear() {
+        indices.clear();
+        pointsInTime.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            List<String> segments = segments(exchange.getRequestURI().getRawPath());
+            Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+            byte[] body = readBody(exchange);
+
+            Response response;
+            if (segments.isEmpty()) {
+                response = new Response(200, info());
+            } else {
+                requestCount.increment();
+                int concurrent = inFlight.incrementAndGet();
+                try {
+                    response = process(method, segments, params, body, concurrent);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+            send(exchange, method, response);
+        }
+    }
+
+    private Response process(String method, List<String> segments, Map<String, String> params, byte[] body, int concurrent) {
+        long startedAt = System.nanoTime();
+        FaultSettings faults = this.faults;
+        boolean bulk = segments.get(segments.size() - 1).equals("_bulk");
+        try {
+            if (faults.getMaxConcurrentRequests() > 0 && concurrent > faults.getMaxConcurrentRequests()) {
+                rejectedCount.increment();
+                throw rejection("queue capacity [" + faults.getMaxConcurrentRequests() + "] exceeded");
+            }
+            delay(faults);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < faults.getErrorRate()) {
+                failedCount.increment();
+                throw new RestError(503, "unavailable_shards_exception", "injected failure");
+            }
+            // Bulk items are rejected one by one instead
+            if (!bulk && random.nextDouble() < faults.getRejectionRate()) {
+                rejectedCount.increment();
+                throw rejection("injected rejection");
+            }
+            return route(method, segments, params, body, faults, startedAt);
+        } catch (RestError e) {
+            return new Response(e.status, error(e.type, e.getMessage(), e.status));
+        } catch (JsonProcessingException e) {
+            return new Response(400, error("parsing_exception", e.getOriginalMessage(), 400));
+        } catch (IOException | IllegalArgumentException e) {
+            return new Response(400, error("illegal_argument_exception", e.getMessage(), 400));
+        }
+    }
+
+    private Response route(String method, List<String> segments, Map<String, String> params, byte[] body,
+                           FaultSettings faults, long startedAt) throws IOException {
+        String first = segments.get(0);
+        String index = first.startsWith("_") ? null : first;
+        String endpoint = index == null ? first : segments.size() > 1 ? segments.get(1) : null;
+        String id = index != null && segments.size() == 3 ? segments.get(2) : null;
+        int length = segments.size();
+
+        if (endpoint == null) {
+            switch (method) {
+                case "HEAD":
+                case "GET":
+                    return new Response(indices.containsKey(index) ? 200 : 404, indexInfo(index));
+                case "PUT":
+                    return createIndex(index);
+                case "DELETE":
+                    return deleteIndex(index);
+                default:
+                    break;
+            }
+        } else if (endpoint.equals("_doc") && length <= 3) {
+            return document(method, index, id, params, body);
+        } else if (endpoint.equals("_create") && id != null && (method.equals("PUT") || method.equals("POST"))) {
+            return indexDocument(index, id, body, true);
+        } else if (endpoint.equals("_update") && id != null && method.equals("POST")) {
+            return updateDocument(index, id, body);
+        } else if (length == (index == null ? 1 : 2)) {
+            switch (endpoint) {
+                case "_search":
+                    return search(index, params, body, startedAt);
+                case "_count":
+                    return count(index, body);
+                case "_bulk":
+                    return bulk(index, body, faults, startedAt);
+                case "_mget":
+                    return multiGet(index, body);
+                case "_refresh":
+                    resolve(index);
+                    return new Response(200, MAPPER.createObjectNode().set("_shards", shards()));
+                case "_pit":
+                    if (index != null && method.equals("POST")) {
+                        return openPointInTime(index, params);
+                    }
+                    if (index == null && method.equals("DELETE")) {
+                        return closePointInTime(body);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        throw new RestError(400, "illegal_argument_exception",
+                "no handler found for uri [/" + String.join("/", segments) + "] and method [" + method + "]");
+    }
+
+    private Response createIndex(String name) {
+        if (indices.putIfAbsent(name, new StandInIndex(name)) != null) {
+            throw new RestError(400, "resource_already_exists_exception", "index [" + name + "] already exists");
+        }
+        ObjectNode body = MAPPER.createObjectNode()
+                .put("acknowledged", true)
+                .put("shards_acknowledged", true)
+                .put("index", name);
+        return new Response(200, body);
+    }
+
+    private Response deleteIndex(String expression) {
+        for (StandInIndex index : resolve(expression)) {
+            indices.remove(index.getName());
+        }
+        return new Response(200, MAPPER.createObjectNode().put("acknowledged", true));
+    }
+
+    private Response document(String method, String index, String id, Map<String, String> params, byte[] body) throws IOException {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+                if (id == null) {
+                    break;
+                }
+                StandInIndex stored = existing(index);
+                StandInIndex.Document document = stored.get(id);
+                return new Response(document == null ? 404 : 200, getBody(index, id, document));
+            case "PUT":
+            case "POST":
+                String docId = id != null ? id : generateId();
+                return indexDocument(index, docId, body, id != null && "create".equals(params.get("op_type")));
+            case "DELETE":
+                if (id == null) {
+                    break;
+                }
+                StandInIndex.WriteResult deleted = existing(index).delete(id);
+                return new Response(deleted.document() == null ? 404 : 200, writeBody(index, id, deleted));
+            default:
+                break;
+        }
+        throw new RestError(405, "illegal_argument_exception",
+                "Incorrect HTTP method for uri [/" + index + "/_doc] and method [" + method + "]");
+    }
+
+    private Response indexDocument(String index, String id, byte[] body, boolean createOnly) throws IOException {
+        JsonNode source = parseObject(body);
+        StandInIndex.WriteResult result = autoCreated(index).index(id, source, createOnly);
+        if (result == null) {
+            throw versionConflict(id);
+        }
+        return new Response(result.result().equals("created") ? 201 : 200, writeBody(index, id, result));
+    }
+
+    private Response updateDocument(String index, String id, byte[] body) throws IOException {
+        StandInIndex.WriteResult result = update(autoCreated(index), id, parseObject(body));
+        return new Response(result.result().equals("created") ? 201 : 200, writeBody(index, id, result));
+    }
+
+    private static StandInIndex.WriteResult update(StandInIndex index, String id, JsonNode action) {
+        JsonNode doc = action.path("doc");
+        JsonNode upsert = action.path("upsert");
+        StandInIndex.WriteResult result = doc.isObject()
+                ? index.update(id, (ObjectNode) doc, action.path("doc_as_upsert").asBoolean(false))
+                : null;
+        if (result == null && upsert.isObject()) {
+            result = index.index(id, upsert, true);
+        }
+        if (result == null) {
+            throw new RestError(404, "document_missing_exception", "[_doc][" + id + "]: document missing");
+        }
+        return result;
+    }
+
+    private Response search(String expression, Map<String, String> params, byte[] body, long startedAt) throws IOException {
+        JsonNode request = body.length == 0 ? MAPPER.createObjectNode() : parseObject(body);
+        JsonNode query = request.get("query");
+        JsonNode sort = request.get("sort");
+        int from = request.path("from").asInt(Integer.parseInt(params.getOrDefault("from", "0")));
+        int size = request.path("size").asInt(Integer.parseInt(params.getOrDefault("size", String.valueOf(DEFAULT_SEARCH_SIZE))));
+        JsonNode searchAfter = request.get("search_after");
+        String pitId = request.path("pit").path("id").asText(null);
+
+        List<StandInIndex> targets;
+        if (pitId != null) {
+            if (expression != null) {
+                throw new IllegalArgumentException("[indices] cannot be used with point in time");
+            }
+            targets = pointsInTime.get(pitId);
+            if (targets == null) {
+                throw new RestError(404, "search_context_missing_exception", "No search context found for id [" + pitId + "]");
+            }
+        } else {
+            targets = resolve(expression);
+        }
+        if (searchAfter != null && sort == null) {
+            throw new IllegalArgumentException("Sort must contain at least one field.");
+        }
+        if (searchAfter != null && from > 0) {
+            throw new IllegalArgumentException("[from] parameter must be set to 0 when [search_after] is used");
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (StandInIndex index : targets) {
+            for (StandInIndex.Document document : index.search(query, sort)) {
+                hits.add(new Hit(index.getName(), document));
+            }
+        }
+        Comparator<JsonNode> bySource = sort == null ? null : QueryMatcher.comparator(sort);
+        if (bySource != null && targets.size() > 1) {
+            hits.sort(Comparator.comparing(hit -> hit.document().source(), bySource));
+        }
+        int total = hits.size();
+        if (searchAfter != null) {
+            // _doc and _shard_doc values are positions within one index, so paging them spans a single index
+            hits.removeIf(hit -> !QueryMatcher.isAfter(sort,
+                    QueryMatcher.sortValues(sort, hit.document().source(), hit.document().order()), searchAfter));
+        }
+
+        ArrayNode page = MAPPER.createArrayNode();
+        for (Hit hit : hits.subList(Math.min(from, hits.size()), Math.min(from + Math.max(size, 0), hits.size()))) {
+            StandInIndex.Document document = hit.document();
+            ObjectNode item = page.addObject()
+                    .put("_index", hit.index())
+                    .put("_type", "_doc")
+                    .put("_id", document.id());
+            if (sort == null) {
+                item.put("_score", 1.0);
+            } else {
+                item.putNull("_score");
+            }
+            item.set("_source", document.source());
+            if (sort != null) {
+                item.set("sort", MAPPER.valueToTree(QueryMatcher.sortValues(sort, document.source(), document.order())));
+            }
+        }
+        ObjectNode hitsNode = MAPPER.createObjectNode();
+        hitsNode.set("total", MAPPER.createObjectNode().put("value", total).put("relation", "eq"));
+        if (sort == null && !hits.isEmpty()) {
+            hitsNode.put("max_score", 1.0);
+        } else {
+            hitsNode.putNull("max_score");
+        }
+        hitsNode.set("hits", page);
+
+        ObjectNode response = MAPPER.createObjectNode()
+                .put("took", tookMillis(startedAt))
+                .put("timed_out", false);
+        if (pitId != null) {
+            response.put("pit_id", pitId);
+        }
+        response.set("_shards", shards().put("skipped", 0));
+        response.set("hits", hitsNode);
+        return new Response(200, response);
+    }
+
+    private Response openPointInTime(String expression, Map<String, String> params) {
+        if (!params.containsKey("keep_alive")) {
+            throw new IllegalArgumentException("[keep_alive] is required");
+        }
+        List<StandInIndex> snapshots = new ArrayList<>();
+        for (StandInIndex index : resolve(expression)) {
+            snapshots.add(index.snapshot());
+        }
+        String id = generateId();
+        pointsInTime.put(id, snapshots);
+        return new Response(200, MAPPER.createObjectNode().put("id", id));
+    }
+
+    private Response closePointInTime(byte[] body) throws IOException {
+        String id = parseObject(body).path("id").asText(null);
+        if (id == null) {
+            throw new IllegalArgumentException("point in time id must be provided");
+        }
+        boolean freed = pointsInTime.remove(id) != null;
+        ObjectNode response = MAPPER.createObjectNode()
+                .put("succeeded", true)
+                .put("num_freed", freed ? 1 : 0);
+        return new Response(freed ? 200 : 404, response);
+    }
+
+    private Response count(String expression, byte[] body) throws IOException {
+        JsonNode query = body.length == 0 ? null : parseObject(body).get("query");
+        long count = 0;
+        for (StandInIndex index : resolve(expression)) {
+            count += index.search(query, null).size();
+        }
+        ObjectNode response = MAPPER.createObjectNode().put("count", count);
+        response.set("_shards", shards().put("skipped", 0));
+        return new Response(200, response);
+    }
+
+    private Response bulk(String defaultIndex, byte[] body, FaultSettings faults, long startedAt) throws IOException {
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        ArrayNode items = MAPPER.createArrayNode();
+        boolean errors = false;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            JsonNode action = parseObject(lines[i]);
+            String type = action.fieldNames().next();
+            JsonNode meta = action.get(type);
+            String index = meta.path("_index").asText(defaultIndex);
+            if (index == null) {
+                throw new IllegalArgumentException("explicit index in bulk is required");
+            }
+            String id = meta.hasNonNull("_id") ? meta.get("_id").asText() : null;
+            JsonNode source = null;
+            if (!type.equals("delete")) {
+                if (++i >= lines.length) {
+                    throw new IllegalArgumentException("The bulk request must be terminated by a newline [\\n]");
+                }
+                source = parseObject(lines[i]);
+            }
+
+            ObjectNode item;
+            if (ThreadLocalRandom.current().nextDouble() < faults.getRejectionRate()) {
+                rejectedCount.increment();
+                item = itemError(index, id, 429, "es_rejected_execution_exception", "injected rejection");
+            } else {
+                try {
+                    item = bulkItem(type, index, id, source);
+                } catch (RestError e) {
+                    item = itemError(index, id, e.status, e.type, e.getMessage());
+                }
+            }
+            errors |= item.has("error");
+            items.addObject().set(type, item);
+        }
+        ObjectNode response = MAPPER.createObjectNode()
+                .put("took", tookMillis(startedAt))
+                .put("errors", errors);
+        response.set("items", items);
+        return new Response(200, response);
+    }
+
+    private ObjectNode bulkItem(String type, String index, String id, JsonNode source) {
+        StandInIndex.WriteResult result;
+        switch (type) {
+            case "index":
+            case "create":
+                String docId = id != null ? id : generateId();
+                result = autoCreated(index).index(docId, source, type.equals("create"));
+                if (result == null) {
+                    throw versionConflict(docId);
+                }
+                return writeBody(index, docId, result).put("status", result.result().equals("created") ? 201 : 200);
+            case "update":
+                result = update(autoCreated(index), id, source);
+                return writeBody(index, id, result).put("status", result.result().equals("created") ? 201 : 200);
+            case "delete":
+                StandInIndex target = indices.get(index);
+                result = target == null ? new StandInIndex.WriteResult(null, "not_found") : target.delete(id);
+                return writeBody(index, id, result).put("status", result.document() == null ? 404 : 200);
+            default:
+                throw new IllegalArgumentException("Malformed action/metadata line, expected one of [create, delete, index, update] but found [" + type + "]");
+        }
+    }
+
+    private Response multiGet(String defaultIndex, byte[] body) throws IOException {
+        JsonNode request = parseObject(body);
+        List<String[]> targets = new ArrayList<>();
+        for (JsonNode doc : request.path("docs")) {
+            targets.add(new String[]{doc.path("_index").asText(defaultIndex), doc.path("_id").asText()});
+        }
+        for (JsonNode id : request.path("ids")) {
+            targets.add(new String[]{defaultIndex, id.asText()});
+        }
+        ArrayNode docs = MAPPER.createArrayNode();
+        for (String[] target : targets) {
+            StandInIndex index = target[0] == null ? null : indices.get(target[0]);
+            docs.add(getBody(target[0], target[1], index == null ? null : index.get(target[1])));
+        }
+        return new Response(200, MAPPER.createObjectNode().set("docs", docs));
+    }
+
+    private static ObjectNode getBody(String index, String id, StandInIndex.Document document) {
+        ObjectNode body = MAPPER.createObjectNode()
+                .put("_index", index)
+                .put("_type", "_doc")
+                .put("_id", id);
+        if (document == null) {
+            return body.put("found", false);
+        }
+        body.put("_version", document.version())
+                .put("_seq_no", document.seqNo())
+                .put("_primary_term", 1)
+                .put("found", true)
+                .set("_source", document.source());
+        return body;
+    }
+
+    private static ObjectNode writeBody(String index, String id, StandInIndex.WriteResult result) {
+        StandInIndex.Document document = result.document();
+        ObjectNode body = MAPPER.createObjectNode()
+                .put("_index", index)
+                .put("_type", "_doc")
+                .put("_id", id)
+                .put("_version", document == null ? 1 : document.version())
+                .put("result", result.result());
+        body.set("_shards", shards());
+        return body.put("_seq_no", document == null ? 0 : document.seqNo())
+                .put("_primary_term", 1);
+    }
+
+    private static ObjectNode itemError(String index, String id, int status, String type, String reason) {
+        ObjectNode item = MAPPER.createObjectNode()
+                .put("_index", index)
+                .put("_type", "_doc")
+                .put("_id", id)
+                .put("status", status);
+        item.set("error", MAPPER.createObjectNode().put("type", type).put("reason", reason));
+        return item;
+    }
+
+    private static ObjectNode shards() {
+        return MAPPER.createObjectNode()
+                .put("total", 1)
+                .put("successful", 1)
+                .put("failed", 0);
+    }
+
+    private static ObjectNode info() {
+        ObjectNode version = MAPPER.createObjectNode()
+                .put("number", "7.14.1")
+                .put("build_flavor", "default")
+                .put("build_type", "tar")
+                .put("build_hash", "stand-in")
+                .put("build_date", "2021-08-26T09:01:05.390870785Z")
+                .put("build_snapshot", false)
+                .put("lucene_version", "8.9.0")
+                .put("minimum_wire_compatibility_version", "6.8.0")
+                .put("minimum_index_compatibility_version", "6.0.0-beta1");
+        ObjectNode info = MAPPER.createObjectNode()
+                .put("name", "stand-in")
+                .put("cluster_name", "stand-in")
+                .put("cluster_uuid", "stand-in");
+        info.set("version", version);
+        // Checked by the high level client together with the version before its first request
+        return info.put("tagline", "You Know, for Search");
+    }
+
+    private ObjectNode indexInfo(String name) {
+        if (!indices.containsKey(name)) {
+            return error("index_not_found_exception", "no such index [" + name + "]", 404);
+        }
+        ObjectNode index = MAPPER.createObjectNode();
+        index.set("aliases", MAPPER.createObjectNode());
+        index.set("mappings", MAPPER.createObjectNode());
+        index.set("settings", MAPPER.createObjectNode().set("index", MAPPER.createObjectNode()
+                .put("number_of_shards", "1")
+                .put("number_of_replicas", "0")
+                .put("provided_name", name)));
+        return MAPPER.createObjectNode().set(name, index);
+    }
+
+    private static ObjectNode error(String type, String reason, int status) {
+        ObjectNode cause = MAPPER.createObjectNode().put("type", type).put("reason", reason);
+        ObjectNode error = cause.deepCopy();
+        error.set("root_cause", MAPPER.createArrayNode().add(cause));
+        ObjectNode body = MAPPER.createObjectNode();
+        body.set("error", error);
+        return body.put("status", status);
+    }
+
+    /**
+     * Resolve an index expression: null or _all for every index, otherwise comma separated names
+     * and wildcard patterns. A missing index named without wildcards is an error.
+     */
+    private List<StandInIndex> resolve(String expression) {
+        List<StandInIndex> resolved = new ArrayList<>();
+        if (expression == null || expression.equals("_all")) {
+            resolved.addAll(indices.values());
+            return resolved;
+        }
+        for (String name : expression.split(",")) {
+            if (WILDCARD.matcher(name).find()) {
+                Pattern pattern = Pattern.compile(Pattern.quote(name).replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+                indices.values().stream()
+                        .filter(index -> pattern.matcher(index.getName()).matches())
+                        .forEach(resolved::add);
+            } else {
+                resolved.add(existing(name));
+            }
+        }
+        return resolved;
+    }
+
+    private StandInIndex existing(String name) {
+        StandInIndex index = indices.get(name);
+        if (index == null) {
+            throw new RestError(404, "index_not_found_exception", "no such index [" + name + "]");
+        }
+        return index;
+    }
+
+    private StandInIndex autoCreated(String name) {
+        return indices.computeIfAbsent(name, StandInIndex::new);
+    }
+
+    private static RestError rejection(String reason) {
+        return new RestError(429, "es_rejected_execution_exception", reason);
+    }
+
+    private static RestError versionConflict(String id) {
+        return new RestError(409, "version_conflict_engine_exception", "[" + id + "]: version conflict, document already exists");
+    }
+
+    private static void delay(FaultSettings faults) {
+        long millis = faults.getLatencyMillis();
+        if (faults.getLatencyJitterMillis() > 0) {
+            millis += ThreadLocalRandom.current().nextLong(faults.getLatencyJitterMillis() + 1);
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long tookMillis(long startedAt) {
+        return (System.nanoTime() - startedAt) / 1_000_000;
+    }
+
+    private static String generateId() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+    }
+
+    private static JsonNode parseObject(byte[] json) throws IOException {
+        return parseObject(new String(json, StandardCharsets.UTF_8));
+    }
+
+    private static JsonNode parseObject(String json) throws JsonProcessingException {
+        JsonNode node = MAPPER.readTree(json);
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("request body must be a JSON object");
+        }
+        return node;
+    }
+
+    private static List<String> segments(String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            params.put(name, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    return gzip.readAllBytes();
+                }
+            }
+            return body;
+        }
+    }
+
+    private static void send(HttpExchange exchange, String method, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        if (method.equals("HEAD") || response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        byte[] bytes = MAPPER.writeValueAsBytes(response.body());
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Run a server until the process is stopped.
+     * Options: --port (default 9200), --latency and --jitter in milliseconds, --error-rate,
+     * --rejection-rate and --max-concurrent, as in {@link FaultSettings}.
+     * @param args options in the form --name=value
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty(NODELAY_PROPERTY, "true");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        StandInServer server = new StandInServer(Integer.parseInt(options.getOrDefault("port", "9200")));
+        server.setFaults(new FaultSettings(
+                Long.parseLong(options.getOrDefault("latency", "0")),
+                Long.parseLong(options.getOrDefault("jitter", "0")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")),
+                Double.parseDouble(options.getOrDefault("rejection-rate", "0")),
+                Integer.parseInt(options.getOrDefault("max-concurrent", "0"))));
+        log.info("Injecting {}", server.getFaults());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    private record Response(int status, JsonNode body) {
+    }
+
+    private record Hit(String index, StandInIndex.Document document) {
+    }
+
+    /**
+     * An error answered with an Elasticsearch error body
+     */
+    private static class RestError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+        private final String type;
+
+        RestError(int status, String type, String reason) {
+            super(reason);
+            this.status = status;
+            this.type = type;
+        }
+    }
+}
@@ -17,15 +17,126 @@ public final class Constants {
     public static final String ELASTICSEARCH_CONNECT_TIMEOUT = "elasticsearch.connectTimeout";
     public static final String ELASTICSEARCH_SOCKET_TIMEOUT = "elasticsearch.socketTimeout";
     public static final String ELASTICSEARCH_CONNECTION_REQUEST_TIMEOUT = "elasticsearch.connectionRequestTimeout";
+    public static final String ELASTICSEARCH_MAX_CONN_TOTAL = "elasticsearch.maxConnTotal";
+    public static final String ELASTICSEARCH_MAX_CONN_PER_ROUTE = "elasticsearch.maxConnPerRoute";
+    public static final String ELASTICSEARCH_IO_THREAD_COUNT = "elasticsearch.ioThreadCount";
+    public static final String ELASTICSEARCH_KEEP_ALIVE = "elasticsearch.keepAlive";
+    public static final String ELASTICSEARCH_COMPRESSION = "elasticsearch.compression";
+    public static final String ELASTICSEARCH_COMPRESSION_THRESHOLD = "elasticsearch.compressionThreshold";
+    public static final String ELASTICSEARCH_NODE_SELECTOR = "elasticsearch.nodeSelector";
+    public static final String ELASTICSEARCH_SNIFF_INTERVAL = "elasticsearch.sniffInterval";
+    public static final String ELASTICSEARCH_CIRCUIT_BREAKER_THRESHOLD = "elasticsearch.circuitBreakerThreshold";
+    public static final String ELASTICSEARCH_CIRCUIT_BREAKER_OPEN_TIME = "elasticsearch.circuitBreakerOpenTime";
+    public static final String ELASTICSEARCH_DRAIN_TIMEOUT = "elasticsearch.drainTimeout";
+    
+    // Name of the client configured by the elasticsearch.* properties without a client name
+    public static final String DEFAULT_CLIENT_NAME = "default";
     
     // Default values
     public static final String DEFAULT_SCHEME = "http";
     public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
     public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
     public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 5000;
+    // The RestClientBuilder defaults are 30 in total and 10 per node
+    public static final int DEFAULT_MAX_CONN_TOTAL = 100;
+    public static final int DEFAULT_MAX_CONN_PER_ROUTE = 50;
+    // 0 uses one IO thread per available processor
+    public static final int DEFAULT_IO_THREAD_COUNT = 0;
+    // Idle connections are closed before proxies and load balancers silently drop them
+    public static final long DEFAULT_KEEP_ALIVE = 60000;
+    // "none" or "gzip"
+    public static final String DEFAULT_COMPRESSION = "none";
+    // Request bodies below this size in bytes are sent uncompressed
+    public static final long DEFAULT_COMPRESSION_THRESHOLD = 4096;
+    // "round_robin" or "latency"
+    public static final String DEFAULT_NODE_SELECTOR = "round_robin";
+    // 0 disables sniffing
+    public static final long DEFAULT_SNIFF_INTERVAL = 0;
+    // Consecutive failures that take a node out of rotation, 0 disables circuit breaking
+    public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 0;
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_TIME = 10000;
+    // How long a client whose last reference is released waits for requests in flight before closing
+    public static final long DEFAULT_DRAIN_TIMEOUT = 10000;
+    
+    // Bulk indexing defaults
+    public static final int DEFAULT_BULK_ACTIONS = 1000;
+    public static final long DEFAULT_BULK_SIZE_BYTES = 5L * 1024 * 1024;
+    public static final long DEFAULT_BULK_FLUSH_INTERVAL_MS = 1000;
+    public static final int DEFAULT_BULK_CONCURRENT_REQUESTS = 1;
+    
+    // Retry defaults
+    public static final int DEFAULT_RETRY_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_INITIAL_BACKOFF_MS = 50;
+    public static final long DEFAULT_RETRY_MAX_BACKOFF_MS = 2000;
+    
+    // Hedged read defaults
+    public static final double DEFAULT_HEDGE_DELAY_PERCENTILE = 95.0;
+    public static final long DEFAULT_HEDGE_MIN_DELAY_MS = 10;
+    public static final double DEFAULT_HEDGE_BUDGET_RATIO = 0.05;
+    
+    // Adaptive concurrency defaults for bulk requests
+    public static final int DEFAULT_CONCURRENCY_INITIAL_LIMIT = 4;
+    public static final int DEFAULT_CONCURRENCY_MIN_LIMIT = 1;
+    public static final int DEFAULT_CONCURRENCY_MAX_LIMIT = 64;
+    
+    // Operation names reported to metrics registries; async variants report under the same name
+    public static final String OPERATION_INDEX = "index";
+    public static final String OPERATION_BULK = "bulk";
+    public static final String OPERATION_GET = "get";
+    public static final String OPERATION_MGET = "mget";
+    public static final String OPERATION_UPDATE = "update";
+    public static final String OPERATION_DELETE = "delete";
+    public static final String OPERATION_SEARCH_BY_NAME = "search_by_name";
+    public static final String OPERATION_SEARCH_BY_WILDCARD = "search_by_wildcard";
+    public static final String OPERATION_SEARCH_BY_DATE_RANGE = "search_by_date_range";
+    public static final String OPERATION_SEARCH_WITH_SORTING = "search_with_sorting";
+    public static final String OPERATION_COUNT = "count";
+    
+    // Import defaults
+    public static final long DEFAULT_IMPORT_PROGRESS_INTERVAL_MS = 5000;
+    
+    // Paging defaults
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final long DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS = 60000;
+    
+    // Multi-get defaults
+    public static final int DEFAULT_MGET_CHUNK_SIZE = 500;
+    
+    // Write-behind defaults
+    public static final int DEFAULT_WRITE_BEHIND_CAPACITY = 10000;
+    public static final long DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT_MS = 1000;
+    
+    // Get batching defaults
+    public static final long DEFAULT_GET_BATCH_WINDOW_MICROS = 1000;
+    public static final int DEFAULT_GET_BATCH_MAX_SIZE = 100;
+    
+    // Document cache defaults
+    public static final long DEFAULT_DOCUMENT_CACHE_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_DOCUMENT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_DOCUMENT_CACHE_TTL_MS = 60000;
+    
+    // Query result cache defaults
+    public static final long DEFAULT_QUERY_CACHE_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_QUERY_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_QUERY_CACHE_TTL_MS = 10000;
+    // Matches the default index.refresh_interval
+    public static final long DEFAULT_QUERY_CACHE_REFRESH_INTERVAL_MS = 1000;
+    
+    // Concurrency defaults
+    public static final int DEFAULT_VIRTUAL_THREAD_CONCURRENCY = 256;
+    
+    // Load test defaults; a rate of 0 runs at maximum throughput
+    public static final String DEFAULT_LOAD_MIX = "insert:20,get:50,update:10,search:15,delete:5";
+    public static final double DEFAULT_LOAD_RATE = 0;
+    public static final long DEFAULT_LOAD_DURATION_S = 60;
+    public static final long DEFAULT_LOAD_WARMUP_S = 10;
+    public static final int DEFAULT_LOAD_CONCURRENCY = 64;
+    public static final long DEFAULT_LOAD_REPORT_INTERVAL_S = 10;
+    public static final int DEFAULT_LOAD_DOCUMENTS = 10000;
     
     // Index names
     public static final String SAMPLE_INDEX_NAME = "sample_data";
+    public static final String LOAD_INDEX_NAME = "load_test";
     
     // Document fields
     public static final String FIELD_ID = "id";
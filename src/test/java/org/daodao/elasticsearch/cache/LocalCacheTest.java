@@ -0,0 +1,116 @@
+package org.daodao.elasticsearch.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LocalCache, no cluster required
+ */
+class LocalCacheTest {
+
+    @Test
+    void testEntryLimit() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(10, 0, 0));
+        for (int i = 0; i < 100; i++) {
+            cache.put("key-" + i, "value-" + i, 1);
+        }
+
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.stats().getEvictions() + cache.stats().getRejections());
+    }
+
+    @Test
+    void testByteLimit() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(0, 1000, 0));
+        for (int i = 0; i < 20; i++) {
+            cache.put("key-" + i, "value-" + i, 100);
+        }
+        assertEquals(1000, cache.stats().getWeightBytes());
+
+        // An entry larger than the whole cache is not kept
+        cache.put("huge", "value", 5000);
+        assertNull(cache.get("huge"));
+        assertTrue(cache.stats().getWeightBytes() <= 1000);
+    }
+
+    @Test
+    void testHotKeysSurviveScan() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(100, 0, 0));
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                readThrough(cache, "hot-" + i);
+            }
+        }
+        // One-off keys interleaved with reads of the hot keys
+        for (int i = 0; i < 10000; i++) {
+            readThrough(cache, "scan-" + i);
+            readThrough(cache, "hot-" + (i % 50));
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(cache.get("hot-" + i), "Hot key " + i + " should still be cached");
+        }
+    }
+
+    @Test
+    void testExpiry() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(10, 0, 50));
+        cache.put("key", "value", 1);
+        assertEquals("value", cache.get("key"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.stats().getExpirations());
+    }
+
+    @Test
+    void testInvalidation() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(10, 0, 0));
+        cache.put("a:1", "value", 1);
+        cache.put("a:2", "value", 1);
+        cache.put("b:1", "value", 1);
+
+        cache.invalidate("a:1");
+        assertNull(cache.get("a:1"));
+
+        cache.invalidateIf(key -> key.startsWith("b:"));
+        assertNull(cache.get("b:1"));
+        assertEquals("value", cache.get("a:2"));
+        assertEquals(2, cache.stats().getInvalidations());
+    }
+
+    @Test
+    void testStalePutAfterInvalidation() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(10, 0, 0));
+
+        // A load that started before the key was invalidated must not be cached
+        long stamp = cache.stamp();
+        cache.invalidate("key");
+        assertFalse(cache.put("key", "stale", 1, stamp));
+        assertNull(cache.get("key"));
+
+        assertTrue(cache.put("key", "fresh", 1, cache.stamp()));
+        assertEquals("fresh", cache.get("key"));
+    }
+
+    @Test
+    void testHitAndMissCounts() {
+        LocalCache<String, String> cache = new LocalCache<>(new CacheSettings(10, 0, 0));
+        assertNull(cache.get("key"));
+        cache.put("key", "value", 1);
+        assertEquals("value", cache.get("key"));
+        assertEquals("value", cache.get("key"));
+
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(2.0 / 3, stats.getHitRate(), 0.0001);
+    }
+
+    private static void readThrough(LocalCache<String, String> cache, String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key, 1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.daodao.elasticsearch.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight, no cluster required
+ */
+class SingleFlightTest {
+
+    @Test
+    void testIdenticalCallsShareOneFlight() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(flights.execute("key", () -> {
+                started.incrementAndGet();
+                return response;
+            }));
+        }
+        assertEquals(1, flights.getInFlightCount());
+
+        response.complete("value");
+        for (CompletableFuture<String> result : results) {
+            assertEquals("value", result.get());
+        }
+        assertEquals(1, started.get());
+        assertEquals(10, flights.getCallCount());
+        assertEquals(9, flights.getCollapsedCount());
+        assertEquals(0, flights.getInFlightCount());
+    }
+
+    @Test
+    void testCompletedFlightIsNotReused() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        AtomicInteger started = new AtomicInteger();
+
+        assertEquals(1, flights.execute("key", () -> CompletableFuture.completedFuture(started.incrementAndGet())).get());
+        assertEquals(2, flights.execute("key", () -> CompletableFuture.completedFuture(started.incrementAndGet())).get());
+        assertEquals(0, flights.getCollapsedCount());
+    }
+
+    @Test
+    void testDifferentKeysDoNotShare() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        flights.execute("a", CompletableFuture::new);
+        flights.execute("b", CompletableFuture::new);
+
+        assertEquals(2, flights.getInFlightCount());
+        assertEquals(0, flights.getCollapsedCount());
+    }
+
+    @Test
+    void testFailureReachesEveryCaller() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.execute("key", () -> response);
+        CompletableFuture<String> second = flights.execute("key", () -> response);
+
+        response.completeExceptionally(new IOException("connection reset"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, first::get);
+        assertTrue(e.getCause() instanceof IOException);
+        e = assertThrows(ExecutionException.class, second::get);
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals(0, flights.getInFlightCount());
+    }
+
+    @Test
+    void testCancellingOneCallerLeavesOthersWaiting() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.execute("key", () -> response);
+        CompletableFuture<String> second = flights.execute("key", () -> response);
+
+        second.cancel(true);
+        response.complete("value");
+
+        assertEquals("value", first.get());
+        assertFalse(response.isCancelled());
+    }
+}
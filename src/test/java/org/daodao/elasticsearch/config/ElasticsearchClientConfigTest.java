@@ -6,8 +6,15 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit tests for ElasticsearchClientConfig focusing on cluster connection functionality
@@ -42,4 +49,92 @@ class ElasticsearchClientConfigTest {
             ElasticsearchClientConfig.closeClient();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConnectionPoolMetrics() {
+        ElasticsearchClientConfig.getClient();
+        ConnectionPoolMetrics metrics = ElasticsearchClientConfig.getConnectionPoolMetrics();
+        assertNotNull(metrics, "Pool metrics should be available once the client exists");
+        
+        // Limits come from application.properties
+        assertEquals(100, metrics.getMaxConnTotal());
+        assertEquals(50, metrics.getMaxConnPerRoute());
+        assertEquals(0, metrics.getTotalStats().getLeased());
+        
+        ElasticsearchClientConfig.closeClient();
+        assertNull(ElasticsearchClientConfig.getConnectionPoolMetrics());
+    }
+
+    @Test
+    void testCompressionThreshold() {
+        // Compression is off in application.properties, every request uses the same client
+        RestHighLevelClient client = ElasticsearchClientConfig.getClient();
+        assertSame(client, ElasticsearchClientConfig.getClient(10L * 1024 * 1024));
+        ElasticsearchClientConfig.closeClient();
+        
+        System.setProperty("elasticsearch.compression", "gzip");
+        try {
+            client = ElasticsearchClientConfig.getClient();
+            assertSame(client, ElasticsearchClientConfig.getClient(100));
+            assertNotSame(client, ElasticsearchClientConfig.getClient(10L * 1024 * 1024));
+        } finally {
+            // Later tests must not get the compressing client
+            ElasticsearchClientConfig.closeClient();
+            System.clearProperty("elasticsearch.compression");
+        }
+    }
+
+    @Test
+    void testClientIsSharedUntilLastRelease() {
+        SharedClient first = ElasticsearchClientConfig.acquire("shared");
+        SharedClient second = ElasticsearchClientConfig.acquire("shared");
+        assertSame(first, second);
+        assertEquals(2, first.getReferenceCount());
+        
+        first.release();
+        assertFalse(second.isReleased(), "Client should stay open while a reference is held");
+        second.release();
+        assertTrue(second.isReleased());
+        assertThrows(IllegalStateException.class, second::retain);
+        
+        try (SharedClient third = ElasticsearchClientConfig.acquire("shared")) {
+            assertNotSame(second, third, "A released client should be replaced by a new one");
+        }
+    }
+    
+    @Test
+    void testReleaseAfterCloseAllClients() {
+        SharedClient shared = ElasticsearchClientConfig.acquire("shutdown");
+        ElasticsearchClientConfig.closeAllClients();
+        assertTrue(shared.isReleased());
+        
+        assertDoesNotThrow(shared::release, "References may still be given back after shutdown");
+        assertDoesNotThrow(shared::close);
+        assertThrows(IllegalStateException.class, shared::retain);
+    }
+    
+    @Test
+    void testGetClientHoldsDefaultClient() {
+        RestHighLevelClient client = ElasticsearchClientConfig.getClient();
+        try (SharedClient shared = ElasticsearchClientConfig.acquire()) {
+            assertSame(client, shared.getClient());
+            ElasticsearchClientConfig.closeClient();
+            assertFalse(shared.isReleased(), "closeClient should only give back the reference of getClient");
+        }
+        assertNull(ElasticsearchClientConfig.getConnectionPoolMetrics());
+    }
+    
+    @Test
+    void testNamedClientOverridesSettings() {
+        System.setProperty("elasticsearch.reporting.maxConnTotal", "7");
+        try (SharedClient reporting = ElasticsearchClientConfig.acquire("reporting");
+             SharedClient defaults = ElasticsearchClientConfig.acquire()) {
+            assertNotSame(defaults, reporting);
+            assertEquals(7, reporting.getConnectionPoolMetrics().getMaxConnTotal());
+            assertEquals(100, defaults.getConnectionPoolMetrics().getMaxConnTotal());
+        } finally {
+            System.clearProperty("elasticsearch.reporting.maxConnTotal");
+        }
+        assertThrows(IllegalArgumentException.class, () -> ElasticsearchClientConfig.acquire("bad.name"));
+    }
+}
@@ -0,0 +1,63 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.daodao.elasticsearch.metrics.ClientMetrics;
+import org.daodao.elasticsearch.metrics.TrafficStats;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HttpTrafficMeter, no cluster required
+ */
+class HttpTrafficMeterTest {
+
+    private final HttpTrafficMeter meter = new HttpTrafficMeter();
+
+    @Test
+    void testEndpoints() {
+        assertEquals("get", HttpTrafficMeter.endpointOf(new BasicHttpRequest("GET", "/sample/_doc/1")));
+        assertEquals("index", HttpTrafficMeter.endpointOf(new BasicHttpRequest("PUT", "/sample/_doc/1?refresh=true")));
+        assertEquals("index", HttpTrafficMeter.endpointOf(new BasicHttpRequest("POST", "/sample/_doc")));
+        assertEquals("delete", HttpTrafficMeter.endpointOf(new BasicHttpRequest("DELETE", "/sample/_doc/1")));
+        assertEquals("search", HttpTrafficMeter.endpointOf(new BasicHttpRequest("POST", "/sample/_search?typed_keys=true")));
+        assertEquals("search", HttpTrafficMeter.endpointOf(new BasicHttpRequest("POST", "/_search/scroll")));
+        assertEquals("bulk", HttpTrafficMeter.endpointOf(new BasicHttpRequest("POST", "/_bulk")));
+        assertEquals("mget", HttpTrafficMeter.endpointOf(new BasicHttpRequest("POST", "/_mget")));
+        assertEquals("indices", HttpTrafficMeter.endpointOf(new BasicHttpRequest("HEAD", "/sample")));
+    }
+
+    @Test
+    void testExchangesAreReportedToRegistries() throws Exception {
+        ClientMetrics metrics = new ClientMetrics();
+        meter.addRegistry(metrics);
+
+        HttpContext context = new BasicHttpContext();
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", "/sample/_search");
+        request.setEntity(new StringEntity("{\"query\":{\"match_all\":{}}}"));
+        meter.requestInterceptor().process(request, context);
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContentLength(512);
+        response.setEntity(entity);
+        meter.responseInterceptor().process(response, context);
+
+        TrafficStats search = metrics.getTraffic().get("search");
+        assertEquals(1, search.getExchanges());
+        assertEquals(26, search.getRequestBytes());
+        assertEquals(512, search.getResponseBytes());
+
+        // Nothing is noted without registries
+        meter.removeRegistry(metrics);
+        HttpContext unmetered = new BasicHttpContext();
+        meter.requestInterceptor().process(request, unmetered);
+        assertNull(unmetered.getAttribute(HttpTrafficMeter.class.getName() + ".exchange"));
+    }
+}
@@ -0,0 +1,97 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyAwareNodeSelector, no cluster required
+ */
+class LatencyAwareNodeSelectorTest {
+
+    private final Map<HttpHost, Integer> inFlight = new HashMap<>();
+    private final LatencyAwareNodeSelector selector =
+            new LatencyAwareNodeSelector(host -> inFlight.getOrDefault(host, 0));
+
+    private final Node fast = new Node(new HttpHost("localhost", 9200));
+    private final Node slow = new Node(new HttpHost("localhost", 9201));
+
+    // Runs a request against the node through the interceptors, taking at least the given time
+    private void request(Node node, long millis) throws Exception {
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, node.getHost());
+        selector.requestInterceptor().process(new BasicHttpRequest("GET", "/"), context);
+        Thread.sleep(millis);
+        selector.responseInterceptor().process(new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), context);
+    }
+
+    private Node select(Node... nodes) {
+        List<Node> candidates = new ArrayList<>(List.of(nodes));
+        selector.select(candidates);
+        assertEquals(1, candidates.size(), "Exactly one node should be left");
+        return candidates.get(0);
+    }
+
+    @Test
+    void testPrefersFasterNode() throws Exception {
+        request(fast, 1);
+        request(slow, 50);
+
+        assertSame(fast, select(fast, slow));
+        assertSame(fast, select(slow, fast));
+        assertTrue(selector.getLatencyMillis().get("http://localhost:9201") >= 40);
+    }
+
+    @Test
+    void testUnsampledNodeIsTriedFirst() throws Exception {
+        request(fast, 1);
+
+        assertSame(slow, select(fast, slow));
+    }
+
+    @Test
+    void testBusyNodeLosesToIdleOne() throws Exception {
+        request(fast, 5);
+        request(slow, 15);
+        inFlight.put(fast.getHost(), 20);
+
+        assertSame(slow, select(fast, slow));
+    }
+
+    @Test
+    void testFailedNodeIsAvoided() throws Exception {
+        request(fast, 1);
+        request(slow, 50);
+        selector.failureListener().onFailure(fast);
+
+        assertSame(slow, select(fast, slow));
+        // A failed node is still better than none
+        assertSame(fast, select(fast));
+    }
+
+    @Test
+    void testDedicatedMasterIsLastResort() {
+        Node master = new Node(new HttpHost("localhost", 9202), null, "master", "7.14.1",
+                new Node.Roles(Set.of("master")), Collections.emptyMap());
+        Node data = new Node(new HttpHost("localhost", 9203), null, "data", "7.14.1",
+                new Node.Roles(Set.of("data", "ingest")), Collections.emptyMap());
+
+        assertSame(data, select(master, data));
+        assertSame(master, select(master));
+    }
+}
@@ -0,0 +1,125 @@
+package org.daodao.elasticsearch.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NodeCircuitBreaker, no cluster required
+ */
+class NodeCircuitBreakerTest {
+
+    private final NodeCircuitBreaker breaker = new NodeCircuitBreaker(NodeSelector.ANY, 3, 100);
+
+    private final Node healthy = new Node(new HttpHost("localhost", 9200));
+    private final Node overloaded = new Node(new HttpHost("localhost", 9201));
+
+    // Passes a response from the node through the interceptor
+    private void respond(Node node, int status) throws Exception {
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, node.getHost());
+        breaker.responseInterceptor().process(new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null), context);
+    }
+
+    private void fail(Node node) {
+        breaker.failureListener().onFailure(node);
+    }
+
+    private List<Node> select() {
+        List<Node> nodes = new ArrayList<>(List.of(healthy, overloaded));
+        breaker.select(nodes);
+        return nodes;
+    }
+
+    @Test
+    void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        fail(overloaded);
+        fail(overloaded);
+        assertEquals(List.of(healthy, overloaded), select());
+
+        fail(overloaded);
+        assertEquals(List.of(healthy), select());
+        assertEquals(NodeCircuitBreaker.State.OPEN, breaker.getStates().get("http://localhost:9201"));
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() throws Exception {
+        fail(overloaded);
+        fail(overloaded);
+        respond(overloaded, 200);
+        fail(overloaded);
+        fail(overloaded);
+
+        assertEquals(List.of(healthy, overloaded), select());
+        assertEquals(NodeCircuitBreaker.State.CLOSED, breaker.getStates().get("http://localhost:9201"));
+    }
+
+    @Test
+    void testServerErrorIsNotCountedAgainstNode() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            respond(overloaded, 500);
+        }
+
+        assertEquals(List.of(healthy, overloaded), select());
+    }
+
+    @Test
+    void testRejectionIsNotCountedAgainstNode() throws Exception {
+        fail(overloaded);
+        fail(overloaded);
+        // Backpressure from the cluster, the node itself answered
+        respond(overloaded, 429);
+        fail(overloaded);
+        for (int i = 0; i < 5; i++) {
+            respond(overloaded, 429);
+        }
+
+        assertEquals(List.of(healthy, overloaded), select());
+        assertEquals(NodeCircuitBreaker.State.CLOSED, breaker.getStates().get("http://localhost:9201"));
+    }
+
+    @Test
+    void testHalfOpenCircuitLetsOneTrialThrough() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            fail(overloaded);
+        }
+        Thread.sleep(150);
+        assertEquals(NodeCircuitBreaker.State.HALF_OPEN, breaker.getStates().get("http://localhost:9201"));
+
+        assertEquals(List.of(healthy, overloaded), select());
+        // Only one trial at a time
+        assertEquals(List.of(healthy), select());
+
+        // A failed trial opens the circuit again right away
+        fail(overloaded);
+        assertEquals(NodeCircuitBreaker.State.OPEN, breaker.getStates().get("http://localhost:9201"));
+
+        Thread.sleep(150);
+        assertEquals(List.of(healthy, overloaded), select());
+        respond(overloaded, 200);
+        assertEquals(NodeCircuitBreaker.State.CLOSED, breaker.getStates().get("http://localhost:9201"));
+        assertEquals(List.of(healthy, overloaded), select());
+    }
+
+    @Test
+    void testEveryNodeOpenLeavesNothingToSelect() {
+        for (int i = 0; i < 3; i++) {
+            fail(healthy);
+            fail(overloaded);
+        }
+
+        assertTrue(select().isEmpty());
+        assertTrue(breaker.toString().contains("OPEN"));
+    }
+}
@@ -0,0 +1,106 @@
+package org.daodao.elasticsearch.load;
+
+import org.daodao.elasticsearch.metrics.OperationStats;
+import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.daodao.elasticsearch.standin.FaultSettings;
+import org.daodao.elasticsearch.standin.StandInServer;
+import org.daodao.elasticsearch.util.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of LoadSettings and of LoadGenerator against a StandInServer, no cluster required
+ */
+class LoadGeneratorTest {
+
+    private static final String CLIENT = "load_test";
+    private static final String HOSTS = "elasticsearch." + CLIENT + ".hosts";
+    private static final String CIRCUIT_BREAKER_THRESHOLD = "elasticsearch." + CLIENT + ".circuitBreakerThreshold";
+
+    private StandInServer server;
+    private ElasticsearchService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StandInServer();
+        System.setProperty(HOSTS, server.getHostAndPort());
+        System.setProperty(CIRCUIT_BREAKER_THRESHOLD, "0");
+        service = new ElasticsearchService(CLIENT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+        System.clearProperty(HOSTS);
+        System.clearProperty(CIRCUIT_BREAKER_THRESHOLD);
+        server.close();
+    }
+
+    @Test
+    void testParseSettings() {
+        LoadSettings defaults = LoadSettings.parse();
+        assertEquals(Constants.DEFAULT_LOAD_CONCURRENCY, defaults.getConcurrency());
+        assertEquals(Integer.valueOf(50), defaults.getMix().get(LoadOperation.GET));
+
+        LoadSettings settings = LoadSettings.parse("--mix=get:3,search:1", "--rate=250", "--duration=5",
+                "--warmup=0", "--index=other");
+        assertEquals(Map.of(LoadOperation.GET, 3, LoadOperation.SEARCH, 1), settings.getMix());
+        assertEquals(250.0, settings.getRate());
+        assertEquals(5, settings.getDurationSeconds());
+        assertEquals(0, settings.getWarmupSeconds());
+        assertEquals("other", settings.getIndexName());
+
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--speed=10"));
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--rate=fast"));
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--mix=scan:10"));
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--mix=get:0"));
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("--duration=0"));
+        assertThrows(IllegalArgumentException.class, () -> LoadSettings.parse("rate=10"));
+    }
+
+    @Test
+    void testOpenLoopRunsEveryOperation() throws IOException, InterruptedException {
+        LoadSettings settings = LoadSettings.parse("--mix=insert:1,get:1,update:1,search:1,delete:1",
+                "--rate=200", "--duration=1", "--warmup=0", "--documents=20", "--report-interval=0");
+
+        Map<String, OperationStats> results = new LoadGenerator(service, settings).run();
+
+        long count = results.values().stream().mapToLong(OperationStats::getCount).sum();
+        assertTrue(count >= 150 && count <= 200, "operations sent: " + count);
+        for (LoadOperation operation : LoadOperation.values()) {
+            assertTrue(results.containsKey(operation.label()), operation + " missing from " + results.keySet());
+        }
+    }
+
+    @Test
+    void testOpenLoopLatencyIncludesTimeHeldBack() throws IOException, InterruptedException {
+        server.setFaults(new FaultSettings(100, 0, 0, 0, 0));
+        // One operation in flight at a time while 20 are due every second, so most wait far longer than 100 ms
+        LoadSettings settings = LoadSettings.parse("--mix=get:1", "--rate=20", "--duration=1", "--warmup=0",
+                "--concurrency=1", "--documents=1", "--report-interval=0");
+
+        OperationStats get = new LoadGenerator(service, settings).run().get(LoadOperation.GET.label());
+
+        assertTrue(get.getLatencyMaxMillis() > 300, "max latency " + get.getLatencyMaxMillis());
+    }
+
+    @Test
+    void testClosedLoopRecordsErrors() throws IOException, InterruptedException {
+        LoadSettings settings = LoadSettings.parse("--mix=get:1", "--duration=1", "--warmup=0",
+                "--concurrency=2", "--documents=10", "--report-interval=0");
+        LoadGenerator generator = new LoadGenerator(service, settings);
+        generator.prepare();
+        server.setFaults(new FaultSettings(0, 0, 0.5, 0, 0));
+
+        OperationStats get = generator.sendLoad().get(LoadOperation.GET.label());
+
+        assertTrue(get.getErrorCount() > 0);
+        assertTrue(get.getErrors().containsKey("503"), get.getErrors().toString());
+    }
+}
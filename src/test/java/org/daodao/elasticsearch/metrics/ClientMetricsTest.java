@@ -0,0 +1,105 @@
+package org.daodao.elasticsearch.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ClientMetrics
+ */
+class ClientMetricsTest {
+
+    private final ClientMetrics metrics = new ClientMetrics();
+
+    @AfterEach
+    void tearDown() {
+        metrics.unregisterMBean();
+    }
+
+    @Test
+    void testLatencyAndErrorsPerOperation() {
+        for (int i = 0; i < 98; i++) {
+            metrics.recordLatency("get", TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        metrics.recordError("get", TimeUnit.MILLISECONDS.toNanos(100), "429");
+        metrics.recordError("get", TimeUnit.MILLISECONDS.toNanos(100), "SocketTimeoutException");
+        metrics.recordLatency("search_by_name", TimeUnit.MILLISECONDS.toNanos(5));
+
+        OperationStats get = metrics.getOperation("get");
+        assertEquals(100, get.getCount());
+        assertEquals(2, get.getErrorCount());
+        assertEquals(Map.of("429", 1L, "SocketTimeoutException", 1L), get.getErrors());
+        assertEquals(2.0, get.getLatencyP50Millis(), 0.2);
+        assertEquals(100.0, get.getLatencyP999Millis(), 7);
+        assertEquals(100.0, get.getLatencyMaxMillis());
+        assertTrue(get.getThroughputPerSecond() > 0);
+        assertEquals(0, get.getServerTimeCount());
+
+        assertEquals(2, metrics.getOperations().size());
+        assertNull(metrics.getOperation("delete"));
+    }
+
+    @Test
+    void testServerTimeComparedWithRoundTrip() {
+        metrics.recordServerTime("search_by_name", 3, TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordServerTime("search_by_name", 5, TimeUnit.MILLISECONDS.toNanos(12));
+
+        OperationStats search = metrics.getOperation("search_by_name");
+        assertEquals(2, search.getServerTimeCount());
+        assertEquals(4.0, search.getServerTimeMeanMillis(), 0.01);
+        assertEquals(11.0, search.getRoundTripMeanMillis(), 0.01);
+        assertEquals(7.0, search.getOutsideServerMeanMillis(), 0.01);
+    }
+
+    @Test
+    void testTrafficPerEndpoint() {
+        metrics.recordTraffic("bulk", 5000, 300);
+        metrics.recordTraffic("bulk", -1, 200);
+        metrics.recordTraffic("get", 0, -1);
+
+        TrafficStats bulk = metrics.getTraffic().get("bulk");
+        assertEquals(2, bulk.getExchanges());
+        assertEquals(5000, bulk.getRequestBytes());
+        assertEquals(500, bulk.getResponseBytes());
+        assertEquals(1, bulk.getUnsizedRequests());
+        assertEquals(1, metrics.getTraffic().get("get").getUnsizedResponses());
+
+        metrics.reset();
+        assertTrue(metrics.getTraffic().isEmpty());
+        assertTrue(metrics.getOperations().isEmpty());
+    }
+
+    @Test
+    void testPublishedOverJmx() throws Exception {
+        metrics.registerMBean("metrics-test");
+        metrics.recordLatency("count", TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.recordTraffic("count", 40, 120);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.getObjectName();
+        assertTrue(server.isRegistered(name));
+        TabularData operations = (TabularData) server.getAttribute(name, "Operations");
+        CompositeData count = (CompositeData) operations.get(new Object[]{"count"}).get("value");
+        assertEquals(1L, count.get("count"));
+        TabularData traffic = (TabularData) server.getAttribute(name, "Traffic");
+        CompositeData countTraffic = (CompositeData) traffic.get(new Object[]{"count"}).get("value");
+        assertEquals(120L, countTraffic.get("responseBytes"));
+
+        // The name cannot be taken twice
+        ClientMetrics other = new ClientMetrics();
+        assertThrows(IllegalStateException.class, () -> other.registerMBean("metrics-test"));
+
+        metrics.unregisterMBean();
+        assertFalse(server.isRegistered(name));
+        assertNull(metrics.getObjectName());
+    }
+}
@@ -0,0 +1,75 @@
+package org.daodao.elasticsearch.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyHistogram
+ */
+class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void testEmptyHistogram() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0.0, histogram.getMeanNanos());
+    }
+
+    @Test
+    void testPercentilesStayWithinBucketPrecision() {
+        // 1 to 1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5e3, histogram.getMeanNanos(), 1);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertWithin(500_000, histogram.getPercentileNanos(50));
+        assertWithin(990_000, histogram.getPercentileNanos(99));
+        assertWithin(999_000, histogram.getPercentileNanos(99.9));
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        for (int i = 0; i < 32; i++) {
+            histogram.record(i);
+        }
+        assertEquals(15, histogram.getPercentileNanos(50));
+        assertEquals(31, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void testBucketsCoverTheWholeRange() {
+        for (long value : new long[]{0, 31, 32, 33, 1_000_000_007L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value, "Bucket of " + value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < value, "Bucket of " + value);
+        }
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(100));
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    void testReset() {
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    // Buckets split every power of two in 16, so a reported value is at most 1/16 above the true one
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+                "Expected about " + expected + " but was " + actual);
+    }
+}
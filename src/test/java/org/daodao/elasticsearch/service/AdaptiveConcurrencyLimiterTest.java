@@ -0,0 +1,167 @@
+package org.daodao.elasticsearch.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AdaptiveConcurrencyLimiter, no cluster required
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final String OK = "ok";
+    private static final String REJECTED = "rejected";
+
+    private static boolean isRejected(String response) {
+        return REJECTED.equals(response);
+    }
+
+    // Submits a request whose response is sent by completing the returned future
+    private static CompletableFuture<String> submit(AdaptiveConcurrencyLimiter limiter, List<CompletableFuture<String>> sent) {
+        return limiter.submit(1, () -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        }, AdaptiveConcurrencyLimiterTest::isRejected);
+    }
+
+    @Test
+    void testRequestsOverTheLimitWaitInOrder() throws Exception {
+        // A fixed limit, so response latencies cannot lower it
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 2);
+        List<CompletableFuture<String>> sent = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(submit(limiter, sent));
+        }
+        assertEquals(2, sent.size());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(2, limiter.getWaitingCount());
+
+        sent.get(0).complete("first");
+        assertEquals("first", results.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(3, sent.size());
+        sent.get(2).complete("third");
+        assertEquals("third", results.get(2).get(5, TimeUnit.SECONDS));
+        assertEquals(4, sent.size());
+        assertFalse(results.get(3).isDone());
+        assertEquals(0, limiter.getWaitingCount());
+    }
+
+    @Test
+    void testLimitGrowsWhileUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 3);
+        List<CompletableFuture<String>> sent = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submit(limiter, sent);
+        }
+
+        sent.get(0).complete(OK);
+        assertEquals(3, limiter.getLimit());
+        // The raised limit lets both waiting requests through
+        assertEquals(3, limiter.getInFlight());
+        assertEquals(0, limiter.getWaitingCount());
+
+        for (int i = 1; i < 4; i++) {
+            sent.get(i).complete(OK);
+        }
+        assertTrue(limiter.getLimit() <= limiter.getMaxLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, limiter.getRequestCount());
+    }
+
+    @Test
+    void testRejectionHalvesLimitOncePerRoundTrip() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+        List<CompletableFuture<String>> sent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            submit(limiter, sent);
+        }
+
+        sent.get(0).complete(REJECTED);
+        assertEquals(4, limiter.getLimit());
+        // Sent before the limit was lowered, so it says nothing about the new limit
+        sent.get(1).completeExceptionally(new SocketTimeoutException("Read timed out"));
+        assertEquals(4, limiter.getLimit());
+        assertEquals(2, limiter.getDropCount());
+
+        submit(limiter, sent);
+        sent.get(3).complete(REJECTED);
+        assertEquals(2, limiter.getLimit());
+        sent.get(2).complete(OK);
+    }
+
+    @Test
+    void testLimitStaysWithinBounds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 4);
+        List<CompletableFuture<String>> sent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            submit(limiter, sent);
+            sent.get(i).complete(REJECTED);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(5, 1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 0, 4));
+    }
+
+    @Test
+    void testRisingLatencyLowersLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10);
+        for (int i = 0; i < 3; i++) {
+            limiter.call(1, () -> {
+                sleep(10);
+                return OK;
+            }, AdaptiveConcurrencyLimiterTest::isRejected);
+        }
+        assertEquals(10, limiter.getLimit());
+
+        limiter.call(1, () -> {
+            sleep(200);
+            return OK;
+        }, AdaptiveConcurrencyLimiterTest::isRejected);
+        assertEquals(9, limiter.getLimit());
+        assertTrue(limiter.getBaselineLatencyMillis() < 100);
+    }
+
+    @Test
+    void testFailedCallReleasesPermit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        assertThrows(IOException.class, () -> limiter.call(1, () -> {
+            throw new IOException("Connection reset");
+        }, AdaptiveConcurrencyLimiterTest::isRejected));
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, limiter.getDropCount());
+    }
+
+    @Test
+    void testCancelledWaiterLeavesQueue() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        List<CompletableFuture<String>> sent = new ArrayList<>();
+        submit(limiter, sent);
+        CompletableFuture<String> cancelled = submit(limiter, sent);
+        CompletableFuture<String> next = submit(limiter, sent);
+
+        cancelled.cancel(true);
+        sent.get(0).complete(OK);
+        assertEquals(2, sent.size());
+        sent.get(1).complete("next");
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -8,11 +8,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -73,6 +83,47 @@ class ElasticsearchServiceAdvancedTest {
         assertEquals("bulk-item-3", retrieved3.getName());
     }
     
+    // Test case for multi-document _bulk inserts
+    @Test
+    void testInsertDocumentsInBulk() throws IOException {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(new SampleData("bulk-batch-" + i, "Bulk batch item " + i));
+        }
+        
+        // Use a small batch size so the documents are split across several bulk requests
+        BulkResult result = service.insertDocuments(testIndexName, documents, new BulkSettings(10, 1024 * 1024, 0, 0));
+        
+        assertFalse(result.hasFailures(), "No document should fail: " + result.getFailures());
+        assertEquals(25, result.getIndexedCount());
+        
+        SampleData retrieved = service.getDocument(testIndexName, result.getIndexedIds().get(0));
+        assertNotNull(retrieved);
+        assertEquals("bulk-batch-0", retrieved.getName());
+    }
+    
+    // Test case for the long-lived bulk ingester
+    @Test
+    void testBulkIngester() throws IOException {
+        List<BulkResult.Failure> failures = new CopyOnWriteArrayList<>();
+        BulkIngester ingester = service.createBulkIngester(testIndexName, 
+                new BulkSettings(5, 1024 * 1024, 100, 1), failures::add);
+        try (ingester) {
+            for (int i = 0; i < 12; i++) {
+                ingester.add(new SampleData("ingest-" + i, "Ingested item " + i));
+            }
+        }
+        
+        // Closing waited for every bulk request
+        assertEquals(12, ingester.getSubmittedCount());
+        assertEquals(12, ingester.getIndexedCount());
+        assertTrue(ingester.getBulkRequestCount() >= 3, "Documents should be sent in several bulk requests");
+        assertTrue(failures.isEmpty(), "No document should fail: " + failures);
+        
+        forceIndexRefresh();
+        assertEquals(12, service.getDocumentCount(testIndexName));
+    }
+    
     // Test case for document search with wildcard query
     @Test
     void testWildcardSearch() throws IOException {
@@ -282,6 +333,121 @@ class ElasticsearchServiceAdvancedTest {
         assertNotNull(retrieved);
     }
     
+    // Test case for the sliced scroll export
+    @Test
+    void testSlicedScrollExport() throws IOException {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            documents.add(new SampleData("export-" + i, "Exported item " + i));
+        }
+        service.insertDocuments(testIndexName, documents);
+        forceIndexRefresh();
+        
+        // The consumer is not thread-safe on purpose, the exporter serializes the calls
+        List<String> names = new ArrayList<>();
+        long exported = service.exportAllDocuments(testIndexName, 3, data -> names.add(data.getName()));
+        
+        assertEquals(40, exported);
+        assertEquals(40, names.size());
+        assertEquals(40, names.stream().distinct().count(), "Every document should be exported exactly once");
+        
+        // Default slice count is derived from the primary shards of the test index
+        assertEquals(1, service.getPrimaryShardCount(testIndexName));
+        assertEquals(40, service.exportAllDocuments(testIndexName, data -> { }));
+    }
+    
+    // Test case for importing the NDJSON sample file
+    @Test
+    void testImportNdjsonFile() throws Exception {
+        Path file = Paths.get(getClass().getClassLoader().getResource("sample_test_data.txt").toURI());
+        
+        ImportReport report = service.importNdjson(testIndexName, file);
+        
+        assertEquals(2, report.getLines());
+        assertEquals(2, report.getIndexed());
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getSkipped());
+        assertEquals(100.0, report.getPercentComplete(), 0.001);
+        
+        // Decoded lines keep the IDs from the file
+        SampleData imported = service.getDocument(testIndexName, "file-test-2");
+        assertNotNull(imported);
+        assertEquals("File Import Test 2", imported.getName());
+    }
+    
+    // Test case for exporting an index to NDJSON files
+    @Test
+    void testExportNdjson() throws IOException {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(new SampleData("ndjson-" + i, "NDJSON item " + i));
+        }
+        service.insertDocuments(testIndexName, documents);
+        forceIndexRefresh();
+        
+        Path plain = Files.createTempFile("export", ".ndjson");
+        Path gzip = Files.createTempFile("export", ".ndjson.gz");
+        try {
+            assertEquals(25, service.exportNdjson(testIndexName, plain, false));
+            assertEquals(25, Files.readAllLines(plain).size());
+            
+            assertEquals(25, service.exportNdjson(testIndexName, gzip, true));
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(gzip)), StandardCharsets.UTF_8))) {
+                assertEquals(25, reader.lines().count());
+            }
+            
+            // The exported file can be imported again
+            service.deleteTestIndex();
+            service.initializeTestIndex();
+            ImportReport report = service.importNdjson(testIndexName, plain);
+            assertEquals(25, report.getIndexed());
+            assertEquals(0, report.getSkipped());
+        } finally {
+            Files.deleteIfExists(plain);
+            Files.deleteIfExists(gzip);
+        }
+    }
+    
+    // Test case for caching search results
+    @Test
+    void testQueryResultCache() throws IOException {
+        service.enableQueryCache();
+        service.insertDocument(testIndexName, new SampleData("dashboard", "Polled by a dashboard"));
+        forceIndexRefresh();
+        
+        List<SampleData> first = service.searchDocumentsByName(testIndexName, "dashboard");
+        List<SampleData> second = service.searchDocumentsByName(testIndexName, "dashboard");
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        assertEquals(1, service.getQueryCacheStats().getMisses());
+        assertEquals(1, service.getQueryCacheStats().getHits());
+        
+        // A write to the index invalidates its cached results
+        service.insertDocument(testIndexName, new SampleData("dashboard", "Another polled document"));
+        forceIndexRefresh();
+        assertEquals(2, service.searchDocumentsByName(testIndexName, "dashboard").size());
+        assertEquals(2, service.getQueryCacheStats().getMisses());
+    }
+    
+    // Test case for fan-out on virtual threads
+    @Test
+    void testVirtualThreadFanOut() throws IOException {
+        service.enableVirtualThreads(8);
+        
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(service.insertDocument(testIndexName, new SampleData("virtual-" + i, "Virtual thread item " + i)));
+        }
+        
+        Map<String, SampleData> results = service.invokeAll(ids, id -> service.getDocument(testIndexName, id));
+        
+        assertEquals(20, results.size());
+        assertEquals(ids, new ArrayList<>(results.keySet()), "Results should keep the input order");
+        assertEquals("virtual-3", results.get(ids.get(3)).getName());
+        assertEquals(0, service.getVirtualThreadExecutor().getActiveCount());
+    }
+    
     /**
      * Force index refresh to make documents immediately searchable
      */
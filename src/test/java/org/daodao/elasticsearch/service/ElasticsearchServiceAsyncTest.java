@@ -0,0 +1,231 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.metrics.ClientMetrics;
+import org.daodao.elasticsearch.metrics.OperationStats;
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.util.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the asynchronous operations of ElasticsearchService
+ */
+class ElasticsearchServiceAsyncTest {
+
+    private ElasticsearchService service;
+    private String testIndexName;
+
+    @BeforeEach
+    void setUp() {
+        service = new ElasticsearchService();
+        // Initialize a unique index for each test to ensure clean state
+        try {
+            service.initializeTestIndex();
+            testIndexName = service.getTestIndexName();
+        } catch (Exception e) {
+            fail("Failed to set up test environment: " + e.getMessage());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Clean up the test index
+        service.deleteTestIndex();
+        service.close();
+    }
+
+    @Test
+    void testAsyncDocumentLifecycle() throws Exception {
+        String id = service.insertDocumentAsync(testIndexName, new SampleData("async-item", "Async item"))
+                .get(10, TimeUnit.SECONDS);
+        assertNotNull(id);
+
+        SampleData retrieved = service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS);
+        assertNotNull(retrieved);
+        assertEquals("async-item", retrieved.getName());
+
+        retrieved.setDescription("Updated async item");
+        assertTrue(service.updateDocumentAsync(testIndexName, id, retrieved).get(10, TimeUnit.SECONDS));
+        assertEquals("Updated async item",
+                service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS).getDescription());
+
+        assertTrue(service.deleteDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS));
+        assertNull(service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testManyRequestsInFlight() throws Exception {
+        // Start all inserts before waiting for any of them
+        List<CompletableFuture<String>> inserts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inserts.add(service.insertDocumentAsync(testIndexName, new SampleData("async-many-" + i, "Item " + i)));
+        }
+        CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        // Wait a bit for the documents to become searchable
+        Thread.sleep(2000);
+
+        assertEquals(50L, service.getDocumentCountAsync(testIndexName).get(10, TimeUnit.SECONDS));
+        List<SampleData> results = service.searchDocumentsByNameAsync(testIndexName, "async-many-7")
+                .get(10, TimeUnit.SECONDS);
+        assertTrue(results.stream().anyMatch(d -> "async-many-7".equals(d.getName())));
+    }
+
+    @Test
+    void testAsyncFailureCompletesExceptionally() {
+        CompletableFuture<List<SampleData>> future =
+                service.searchDocumentsByNameAsync("missing_index_" + System.nanoTime(), "anything");
+        assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testConcurrentIdenticalReadsAreCoalesced() throws Exception {
+        service.enableReadCoalescing();
+        String id = service.insertDocumentAsync(testIndexName, new SampleData("coalesced", "Hot document"))
+                .get(10, TimeUnit.SECONDS);
+
+        // Issue all reads before any response can arrive
+        List<CompletableFuture<SampleData>> reads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            reads.add(service.getDocumentAsync(testIndexName, id));
+        }
+        for (CompletableFuture<SampleData> read : reads) {
+            assertEquals("coalesced", read.get(10, TimeUnit.SECONDS).getName());
+        }
+
+        assertEquals(50, service.getCoalescedReadCallCount());
+        assertTrue(service.getCollapsedReadCount() > 0, "Identical reads in flight should share a request");
+        // Every caller gets its own document
+        assertNotSame(reads.get(0).get(), reads.get(1).get());
+    }
+
+    @Test
+    void testConcurrentGetsAreBatched() throws Exception {
+        service.enableGetBatching();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(service.insertDocumentAsync(testIndexName, new SampleData("batched_" + i, "Batched document"))
+                    .get(10, TimeUnit.SECONDS));
+        }
+
+        List<CompletableFuture<SampleData>> reads = new ArrayList<>();
+        for (String id : ids) {
+            reads.add(service.getDocumentAsync(testIndexName, id));
+        }
+        CompletableFuture<SampleData> missing = service.getDocumentAsync(testIndexName, "missing_" + System.nanoTime());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals("batched_" + i, reads.get(i).get(10, TimeUnit.SECONDS).getName());
+        }
+        assertNull(missing.get(10, TimeUnit.SECONDS));
+
+        MultiGetBatcher batcher = service.getMultiGetBatcher();
+        assertEquals(21, batcher.getGetCount());
+        assertTrue(batcher.getBatchCount() < 21, "Gets within the window should share an _mget");
+        // The synchronous API goes through the same batches
+        assertEquals("batched_0", service.getDocument(testIndexName, ids.get(0)).getName());
+    }
+
+    @Test
+    void testWriteBehindBuffering() throws Exception {
+        service.enableWriteBehind(WriteAck.INDEXED);
+        List<CompletableFuture<String>> inserts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inserts.add(service.insertDocumentAsync(testIndexName, new SampleData("buffered_" + i, "Buffered document")));
+        }
+        List<String> ids = new ArrayList<>();
+        for (CompletableFuture<String> insert : inserts) {
+            ids.add(insert.get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(service.getWriteBehindBuffer().getBulkRequestCount() < 50, "Buffered writes should share _bulk requests");
+        assertEquals("buffered_0", service.getDocument(testIndexName, ids.get(0)).getName());
+
+        // Acknowledged once buffered, the buffer is flushed when write-behind is turned off
+        service.enableWriteBehind(WriteAck.ENQUEUED);
+        assertTrue(service.updateDocument(testIndexName, ids.get(0), new SampleData("rewritten", "Buffered update")));
+        service.disableWriteBehind();
+        assertEquals("rewritten", service.getDocument(testIndexName, ids.get(0)).getName());
+    }
+
+    @Test
+    void testRetriesEnabled() throws Exception {
+        service.enableRetries(new RetrySettings(2, 10, 100));
+        String id = service.insertDocumentAsync(testIndexName, new SampleData("retried", "Retried document"))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("retried", service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS).getName());
+        assertEquals("retried", service.getDocument(testIndexName, id).getName());
+
+        // Permanent failures are reported right away
+        CompletableFuture<List<SampleData>> failed =
+                service.searchDocumentsByNameAsync("missing_index_" + System.nanoTime(), "anything");
+        assertThrows(Exception.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertEquals(0, service.getRequestRetrier().getRetryCount());
+    }
+
+    @Test
+    void testAdaptiveConcurrencyEnabled() throws Exception {
+        service.enableAdaptiveConcurrency(2, 1, 8);
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            documents.add(new SampleData("limited" + i, "Limited document " + i));
+        }
+        // Four bulk requests sent at once, at most two of them in flight at first
+        BulkSettings settings = new BulkSettings(5, 1024 * 1024, 0, 0);
+        assertFalse(service.insertDocumentsAsync(testIndexName, documents, settings).get(10, TimeUnit.SECONDS).hasFailures());
+
+        AdaptiveConcurrencyLimiter limiter = service.getConcurrencyLimiter();
+        assertEquals(4, limiter.getRequestCount());
+        assertEquals(0, limiter.getInFlight());
+        service.disableAdaptiveConcurrency();
+        assertNull(service.getConcurrencyLimiter());
+    }
+
+    @Test
+    void testHedgingEnabled() throws Exception {
+        service.enableHedging(new HedgeSettings(95, 5, 0.5));
+        String id = service.insertDocumentAsync(testIndexName, new SampleData("hedged", "Hedged document"))
+                .get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 25; i++) {
+            assertEquals("hedged", service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS).getName());
+        }
+        assertEquals("hedged", service.getDocument(testIndexName, id).getName());
+
+        ReadHedger hedger = service.getReadHedger();
+        assertEquals(26, hedger.getReadCount());
+        assertTrue(hedger.getDelayMillis() >= 5);
+        service.disableHedging();
+        assertNull(service.getReadHedger());
+    }
+
+    @Test
+    void testMetricsEnabled() throws Exception {
+        ClientMetrics metrics = service.enableMetrics();
+        String id = service.insertDocumentAsync(testIndexName, new SampleData("measured", "Measured document"))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("measured", service.getDocumentAsync(testIndexName, id).get(10, TimeUnit.SECONDS).getName());
+        assertEquals("measured", service.getDocument(testIndexName, id).getName());
+        service.getDocumentCount(testIndexName);
+        assertThrows(Exception.class, () -> service.getDocumentCount("missing_index_" + System.nanoTime()));
+
+        assertEquals(1, metrics.getOperation(Constants.OPERATION_INDEX).getCount());
+        assertEquals(2, metrics.getOperation(Constants.OPERATION_GET).getCount());
+        OperationStats count = metrics.getOperation(Constants.OPERATION_COUNT);
+        assertEquals(2, count.getCount());
+        assertEquals(Map.of("404", 1L), count.getErrors());
+        assertEquals(1, count.getServerTimeCount());
+        assertTrue(metrics.getTraffic().get("index").getRequestBytes() > 0);
+        assertTrue(metrics.getTraffic().get("get").getResponseBytes() > 0);
+
+        service.disableMetrics();
+        assertNull(service.getMetricsRegistry());
+        assertNull(metrics.getObjectName());
+    }
+}
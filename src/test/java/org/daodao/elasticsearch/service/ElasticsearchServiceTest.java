@@ -2,12 +2,18 @@ package org.daodao.elasticsearch.service;
 
 import org.daodao.elasticsearch.util.Constants;
 import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.cache.CacheSettings;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -63,6 +69,21 @@ class ElasticsearchServiceTest {
         assertEquals(id, retrievedData.getId());
     }
     
+    @Test
+    void testGetDocuments() throws IOException {
+        // Insert documents
+        String id1 = service.insertDocument(testIndexName, new SampleData("mget-1", "First multi-get item"));
+        String id2 = service.insertDocument(testIndexName, new SampleData("mget-2", "Second multi-get item"));
+        
+        // Retrieve them together with an ID that does not exist
+        Map<String, SampleData> documents = service.getDocuments(testIndexName, List.of(id2, "missing-id", id1));
+        
+        assertEquals(List.of(id2, id1), List.copyOf(documents.keySet()), "Missing IDs should be left out");
+        assertEquals("mget-1", documents.get(id1).getName());
+        assertEquals("mget-2", documents.get(id2).getName());
+        assertEquals(id1, documents.get(id1).getId());
+    }
+    
     @Test
     void testUpdateDocument() throws IOException {
         // Insert a document
@@ -145,4 +166,63 @@ class ElasticsearchServiceTest {
         // Should have the initial count plus the two we just inserted
         assertEquals(initialCount + 2, allDocuments.size(), "Document count should increase by 2");
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testStreamAllDocuments() throws IOException {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(new SampleData("stream-" + i, "Streamed item " + i));
+        }
+        service.insertDocuments(testIndexName, documents);
+        
+        // Add a small delay to ensure documents are indexed
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Page through the index 10 documents at a time
+        try (Stream<SampleData> stream = service.streamAllDocuments(testIndexName, 10)) {
+            Set<String> names = stream.map(SampleData::getName).collect(Collectors.toSet());
+            assertEquals(25, names.size(), "Every document should be streamed exactly once");
+        }
+        
+        try (DocumentIterator iterator = service.iterateAllDocuments(testIndexName, 10)) {
+            int count = 0;
+            while (iterator.hasNext()) {
+                assertNotNull(iterator.next().getId());
+                count++;
+            }
+            assertEquals(25, count);
+            assertEquals(3, iterator.getPageCount());
+        }
+        
+        // getAllDocuments is no longer limited to the first page of hits
+        assertEquals(25, service.getAllDocuments(testIndexName).size());
+    }
+    
+    @Test
+    void testDocumentCache() throws IOException {
+        service.enableDocumentCache(new CacheSettings(100, 0, 60000));
+        String id = service.insertDocument(testIndexName, new SampleData("cached-item", "Cached item"));
+        
+        SampleData first = service.getDocument(testIndexName, id);
+        SampleData second = service.getDocument(testIndexName, id);
+        assertEquals("cached-item", second.getName());
+        assertEquals(1, service.getDocumentCacheStats().getMisses());
+        assertEquals(1, service.getDocumentCacheStats().getHits());
+        
+        // Callers get their own copies
+        first.setName("modified locally");
+        assertEquals("cached-item", service.getDocument(testIndexName, id).getName());
+        
+        // Writes through the service invalidate the cached copy
+        service.updateDocument(testIndexName, id, new SampleData("cached-item-updated", "Updated"));
+        assertEquals("cached-item-updated", service.getDocument(testIndexName, id).getName());
+        
+        service.deleteDocument(testIndexName, id);
+        assertNull(service.getDocument(testIndexName, id));
+        assertTrue(service.getDocumentCacheStats().getInvalidations() >= 2);
+    }
+}
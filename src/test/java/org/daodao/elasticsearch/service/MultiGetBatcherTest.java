@@ -0,0 +1,109 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MultiGetBatcher, no cluster required
+ */
+class MultiGetBatcherTest {
+
+    private final List<MultiGetRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    // Answers every item as not found, except ids starting with "fail"
+    private void respond(MultiGetRequest request, ActionListener<MultiGetResponse> listener) {
+        requests.add(request);
+        List<MultiGetItemResponse> items = new ArrayList<>();
+        for (MultiGetRequest.Item item : request.getItems()) {
+            if (item.id().startsWith("fail")) {
+                items.add(new MultiGetItemResponse(null, new MultiGetResponse.Failure(
+                        item.index(), "_doc", item.id(), new IllegalStateException("shard unavailable"))));
+            } else {
+                items.add(new MultiGetItemResponse(new GetResponse(new GetResult(item.index(), "_doc", item.id(),
+                        SequenceNumbers.UNASSIGNED_SEQ_NO, SequenceNumbers.UNASSIGNED_PRIMARY_TERM, -1, false,
+                        null, null, null)), null));
+            }
+        }
+        listener.onResponse(new MultiGetResponse(items.toArray(new MultiGetItemResponse[0])));
+    }
+
+    @Test
+    void testFullBatchIsSentRightAway() throws Exception {
+        // The window is far longer than the test, only a full batch can be sent
+        try (MultiGetBatcher batcher = new MultiGetBatcher(this::respond, TimeUnit.MINUTES.toMicros(10), 3)) {
+            CompletableFuture<GetResponse> a = batcher.get("index", "a");
+            CompletableFuture<GetResponse> b = batcher.get("index", "b");
+            assertFalse(a.isDone());
+
+            CompletableFuture<GetResponse> c = batcher.get("index", "c");
+            assertEquals(1, requests.size());
+            assertEquals(3, requests.get(0).getItems().size());
+            assertEquals("a", a.get().getId());
+            assertEquals("b", b.get().getId());
+            assertEquals("c", c.get().getId());
+            assertFalse(c.get().isExists());
+        }
+    }
+
+    @Test
+    void testWindowSendsPartialBatch() throws Exception {
+        try (MultiGetBatcher batcher = new MultiGetBatcher(this::respond, 1000, 100)) {
+            CompletableFuture<GetResponse> a = batcher.get("index", "a");
+            CompletableFuture<GetResponse> b = batcher.get("other", "b");
+
+            assertEquals("index", a.get(5, TimeUnit.SECONDS).getIndex());
+            assertEquals("other", b.get(5, TimeUnit.SECONDS).getIndex());
+            assertEquals(1, batcher.getBatchCount());
+            assertEquals(2.0, batcher.getAverageBatchSize());
+        }
+    }
+
+    @Test
+    void testItemFailureOnlyFailsThatGet() throws Exception {
+        try (MultiGetBatcher batcher = new MultiGetBatcher(this::respond, 1000, 2)) {
+            CompletableFuture<GetResponse> ok = batcher.get("index", "ok");
+            CompletableFuture<GetResponse> failed = batcher.get("index", "fail");
+
+            assertEquals("ok", ok.get().getId());
+            ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+            assertTrue(e.getCause().getMessage().contains("shard unavailable"));
+        }
+    }
+
+    @Test
+    void testRequestFailureFailsWholeBatch() {
+        try (MultiGetBatcher batcher = new MultiGetBatcher(
+                (request, listener) -> listener.onFailure(new IllegalStateException("node down")), 1000, 2)) {
+            CompletableFuture<GetResponse> a = batcher.get("index", "a");
+            CompletableFuture<GetResponse> b = batcher.get("index", "b");
+
+            assertThrows(ExecutionException.class, a::get);
+            assertThrows(ExecutionException.class, b::get);
+        }
+    }
+
+    @Test
+    void testCloseSendsQueuedGetsAndRejectsNewOnes() throws Exception {
+        MultiGetBatcher batcher = new MultiGetBatcher(this::respond, TimeUnit.MINUTES.toMicros(10), 100);
+        CompletableFuture<GetResponse> queued = batcher.get("index", "queued");
+        batcher.close();
+
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS).getId());
+        assertThrows(ExecutionException.class, () -> batcher.get("index", "late").get());
+    }
+}
@@ -0,0 +1,133 @@
+package org.daodao.elasticsearch.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReadHedger, no cluster required
+ */
+class ReadHedgerTest {
+
+    private ReadHedger hedger = new ReadHedger(new HedgeSettings(95, 5, 0.25));
+
+    @AfterEach
+    void tearDown() {
+        hedger.close();
+    }
+
+    // Fast reads that teach the hedger what normal latency is
+    private void warmUp() {
+        for (int i = 0; i < 20; i++) {
+            hedger.hedge(preference -> CompletableFuture.completedFuture("fast")).join();
+        }
+    }
+
+    @Test
+    void testReadsAreNotHedgedUntilLatenciesAreKnown() throws Exception {
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> "slow",
+                CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        assertEquals("slow", hedger.hedge(preference -> slow).get(5, TimeUnit.SECONDS));
+
+        assertEquals(-1.0, hedger.getDelayMillis());
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    @Test
+    void testSlowReadIsHedgedWithAnotherPreference() throws Exception {
+        warmUp();
+        assertEquals(5.0, hedger.getDelayMillis());
+
+        List<String> preferences = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> stalled = new CompletableFuture<>();
+        CompletableFuture<String> result = hedger.hedge(preference -> {
+            preferences.add(String.valueOf(preference));
+            return preference == null ? stalled : CompletableFuture.completedFuture("hedged");
+        });
+
+        assertEquals("hedged", result.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("null", "hedge-1"), preferences);
+        // The stalled copy is cancelled
+        assertTrue(stalled.isCancelled());
+        assertEquals(1, hedger.getHedgeCount());
+        assertEquals(1, hedger.getHedgeWinCount());
+    }
+
+    @Test
+    void testFastReadIsNotHedged() throws Exception {
+        warmUp();
+        List<String> preferences = new CopyOnWriteArrayList<>();
+        assertEquals("fast", hedger.hedge(preference -> {
+            preferences.add(String.valueOf(preference));
+            return CompletableFuture.completedFuture("fast");
+        }).get(5, TimeUnit.SECONDS));
+
+        Thread.sleep(50);
+        assertEquals(List.of("null"), preferences);
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    @Test
+    void testBudgetLimitsHedges() throws Exception {
+        // 27 reads at 0.25 each pay for 6 hedges
+        warmUp();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(hedger.hedge(preference -> preference == null
+                    ? new CompletableFuture<>() : CompletableFuture.completedFuture("hedged")));
+        }
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals("hedged", results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hedger.getBudgetExhaustedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, hedger.getBudgetExhaustedCount());
+        assertEquals(6, hedger.getHedgeCount());
+        assertFalse(results.get(6).isDone());
+        results.get(6).cancel(true);
+    }
+
+    @Test
+    void testFailedHedgeLeavesFirstCopyRunning() throws Exception {
+        warmUp();
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> "first",
+                CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+        CompletableFuture<String> result = hedger.hedge(preference -> preference == null
+                ? slow : CompletableFuture.failedFuture(new IOException("Connection reset")));
+
+        assertEquals("first", result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, hedger.getHedgeCount());
+        assertEquals(0, hedger.getHedgeWinCount());
+    }
+
+    @Test
+    void testFailureBeforeHedgeIsReported() throws Exception {
+        warmUp();
+        CompletableFuture<String> result = hedger.hedge(preference -> preference == null
+                ? CompletableFuture.failedFuture(new IOException("index_not_found")) : CompletableFuture.completedFuture("hedged"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        Thread.sleep(50);
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HedgeSettings(0, 5, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new HedgeSettings(95, -1, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new HedgeSettings(95, 5, 0));
+    }
+}
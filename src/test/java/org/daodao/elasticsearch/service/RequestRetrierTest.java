@@ -0,0 +1,159 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RequestRetrier, no cluster required
+ */
+class RequestRetrierTest {
+
+    private final RequestRetrier retrier = new RequestRetrier(new RetrySettings(3, 1, 5));
+
+    @AfterEach
+    void tearDown() {
+        retrier.close();
+    }
+
+    private static ElasticsearchStatusException rejected() {
+        return new ElasticsearchStatusException("rejected execution", RestStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void testIdempotentRequestIsRetriedAfterTimeout() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = retrier.call(true, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, retrier.getRetryCount());
+    }
+
+    @Test
+    void testNonIdempotentRequestIsOnlyRetriedWhenRejected() throws Exception {
+        // The request may have been executed before the timeout, so it is not sent again
+        AtomicInteger timeouts = new AtomicInteger();
+        assertThrows(SocketTimeoutException.class, () -> retrier.call(false, () -> {
+            timeouts.incrementAndGet();
+            throw new SocketTimeoutException("Read timed out");
+        }));
+        assertEquals(1, timeouts.get());
+
+        AtomicInteger rejections = new AtomicInteger();
+        String result = retrier.call(false, () -> {
+            if (rejections.incrementAndGet() == 1) {
+                throw rejected();
+            }
+            if (rejections.get() == 2) {
+                throw new ConnectException("Connection refused");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, rejections.get());
+    }
+
+    @Test
+    void testPermanentFailureIsNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ElasticsearchStatusException.class, () -> retrier.call(true, () -> {
+            attempts.incrementAndGet();
+            throw new ElasticsearchStatusException("mapping conflict", RestStatus.BAD_REQUEST);
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(0, retrier.getRetryCount());
+    }
+
+    @Test
+    void testRetriesAreLimited() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ElasticsearchStatusException.class, () -> retrier.call(true, () -> {
+            attempts.incrementAndGet();
+            throw new ElasticsearchStatusException("unavailable", RestStatus.SERVICE_UNAVAILABLE);
+        }));
+        assertEquals(4, attempts.get());
+        assertEquals(1, retrier.getExhaustedCount());
+    }
+
+    @Test
+    void testAsyncRequestIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = retrier.callAsync(true, () -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new IOException("Connection reset"))
+                : CompletableFuture.completedFuture("ok"));
+
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+
+        CompletableFuture<String> failed = retrier.callAsync(false,
+                () -> CompletableFuture.failedFuture(new IOException("Connection reset")));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void testOnlyRejectedBulkItemsAreResent() throws Exception {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (int i = 0; i < 6; i++) {
+            bulkRequest.add(new IndexRequest("index").id("doc" + i).source("{}", XContentType.JSON));
+        }
+        // Every document but doc0 is rejected the first time it is sent, odd ones the second time too
+        Set<String> seen = new HashSet<>();
+        List<Integer> roundSizes = new ArrayList<>();
+        BulkResponse response = retrier.bulk(bulkRequest, request -> {
+            roundSizes.add(request.numberOfActions());
+            List<BulkItemResponse> items = new ArrayList<>();
+            for (int i = 0; i < request.requests().size(); i++) {
+                DocWriteRequest<?> write = request.requests().get(i);
+                int number = Integer.parseInt(write.id().substring(3));
+                boolean firstTime = seen.add(write.id() + "#1") || (number % 2 == 1 && seen.add(write.id() + "#2"));
+                if (firstTime && !write.id().equals("doc0")) {
+                    items.add(new BulkItemResponse(i, DocWriteRequest.OpType.INDEX, new BulkItemResponse.Failure(
+                            write.index(), "_doc", write.id(), rejected(), RestStatus.TOO_MANY_REQUESTS)));
+                } else {
+                    items.add(new BulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                            new IndexResponse(new ShardId(write.index(), "_na_", 0), "_doc", write.id(), 1, 1, 1, true)));
+                }
+            }
+            return new BulkResponse(items.toArray(new BulkItemResponse[0]), 10);
+        });
+
+        assertEquals(List.of(6, 5, 3), roundSizes);
+        assertFalse(response.hasFailures());
+        assertEquals(30, response.getTook().millis());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, response.getItems()[i].getItemId());
+            assertEquals("doc" + i, response.getItems()[i].getId());
+        }
+        assertEquals(8, retrier.getRetriedBulkItemCount());
+    }
+}
@@ -0,0 +1,60 @@
+package org.daodao.elasticsearch.service;
+
+import org.daodao.elasticsearch.model.SampleData;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SampleDataCodec, no cluster required
+ */
+class SampleDataCodecTest {
+
+    private final SampleDataCodec codec = new SampleDataCodec();
+
+    @Test
+    void testRoundTrip() throws IOException {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 1, 15, 10, 30, 0);
+        SampleData data = new SampleData("codec-1", "Codec Test", "Round trip through bytes", timestamp);
+
+        BytesReference source = codec.encode(data);
+        assertTrue(source.utf8ToString().contains("\"timestamp\":\"2024-01-15 10:30:00\""));
+
+        SampleData decoded = codec.decode(source, "other-id");
+        assertEquals("other-id", decoded.getId());
+        assertEquals("Codec Test", decoded.getName());
+        assertEquals("Round trip through bytes", decoded.getDescription());
+        assertEquals(timestamp, decoded.getTimestamp());
+    }
+
+    @Test
+    void testDecodeSlice() throws IOException {
+        // Only the bytes between offset and length belong to the document
+        byte[] line = "  {\"name\":\"Slice\",\"description\":\"Part of a buffer\"}\n{".getBytes(StandardCharsets.UTF_8);
+        SampleData decoded = codec.decode(new BytesArray(line, 2, line.length - 4));
+
+        assertEquals("Slice", decoded.getName());
+        assertEquals("Part of a buffer", decoded.getDescription());
+    }
+
+    @Test
+    void testDecodeCompositeSource() throws IOException {
+        byte[] json = "{\"name\":\"Composite\",\"description\":\"Split source\"}".getBytes(StandardCharsets.UTF_8);
+        BytesReference source = CompositeBytesReference.of(
+                new BytesArray(json, 0, 10), new BytesArray(json, 10, json.length - 10));
+
+        assertEquals("Composite", codec.decode(source).getName());
+    }
+
+    @Test
+    void testDecodeInvalidSource() {
+        assertThrows(IOException.class, () -> codec.decode(new BytesArray("{\"name\":")));
+    }
+}
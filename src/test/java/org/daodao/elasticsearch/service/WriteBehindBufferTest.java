@@ -0,0 +1,191 @@
+package org.daodao.elasticsearch.service;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for WriteBehindBuffer, no cluster required
+ */
+class WriteBehindBufferTest {
+
+    private final List<BulkRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    // Acknowledges every item, except ids starting with "fail"
+    private void respond(BulkRequest request, ActionListener<BulkResponse> listener) {
+        requests.add(request);
+        List<BulkItemResponse> items = new ArrayList<>();
+        for (int i = 0; i < request.requests().size(); i++) {
+            DocWriteRequest<?> write = request.requests().get(i);
+            if (write.id().startsWith("fail")) {
+                items.add(new BulkItemResponse(i, DocWriteRequest.OpType.INDEX, new BulkItemResponse.Failure(
+                        write.index(), "_doc", write.id(), new IllegalArgumentException("mapping conflict"))));
+            } else {
+                items.add(new BulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                        new IndexResponse(new ShardId(write.index(), "_na_", 0), "_doc", write.id(), 1, 1, 1, true)));
+            }
+        }
+        listener.onResponse(new BulkResponse(items.toArray(new BulkItemResponse[0]), 1));
+    }
+
+    private static IndexRequest request(String id) {
+        return new IndexRequest("index").id(id).source("{}", XContentType.JSON);
+    }
+
+    @Test
+    void testWritesAreSentAfterFlushInterval() throws Exception {
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(this::respond, 100,
+                new BulkSettings(1000, 1024 * 1024, 50, 1), 1000)) {
+            List<CompletableFuture<IndexResponse>> writes = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                writes.add(buffer.add(request("doc" + i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals("doc" + i, writes.get(i).get(5, TimeUnit.SECONDS).getId());
+            }
+            assertEquals(10, buffer.getIndexedCount());
+            assertEquals(1, buffer.getBulkRequestCount());
+        }
+    }
+
+    @Test
+    void testFullBatchIsSentBeforeFlushInterval() throws Exception {
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(this::respond, 1000,
+                new BulkSettings(1, 1024 * 1024, TimeUnit.MINUTES.toMillis(10), 1), 1000)) {
+            assertEquals("doc", buffer.add(request("doc")).get(5, TimeUnit.SECONDS).getId());
+        }
+    }
+
+    @Test
+    void testItemFailureOnlyFailsThatWrite() throws Exception {
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(this::respond, 100,
+                new BulkSettings(1000, 1024 * 1024, 10, 1), 1000)) {
+            CompletableFuture<IndexResponse> ok = buffer.add(request("ok"));
+            CompletableFuture<IndexResponse> failed = buffer.add(request("fail"));
+            buffer.flush();
+
+            assertEquals("ok", ok.get(5, TimeUnit.SECONDS).getId());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause().getMessage().contains("mapping conflict"));
+            assertEquals(1, buffer.getFailedCount());
+        }
+    }
+
+    @Test
+    void testFullBufferRejectsWrites() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Bulk requests hang until released, so the flusher cannot make room
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer((request, listener) -> new Thread(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(request, listener);
+        }).start(), 1, new BulkSettings(1, 1024 * 1024, 10, 1), 50)) {
+            List<CompletableFuture<IndexResponse>> writes = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                writes.add(buffer.add(request("doc" + i)));
+            }
+            assertTrue(buffer.getRejectedCount() > 0);
+            release.countDown();
+            for (CompletableFuture<IndexResponse> write : writes) {
+                try {
+                    write.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().getMessage().contains("full"));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCloseSendsBufferedWritesAndRejectsNewOnes() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer(this::respond, 100,
+                new BulkSettings(1000, 1024 * 1024, TimeUnit.MINUTES.toMillis(10), 1), 1000);
+        CompletableFuture<IndexResponse> buffered = buffer.add(request("buffered"));
+        buffer.close();
+
+        assertTrue(buffered.isDone());
+        assertEquals("buffered", buffered.get().getId());
+        assertThrows(ExecutionException.class, () -> buffer.add(request("late")).get());
+    }
+
+    @Test
+    void testWritesOfADocumentStayInOrderWithConcurrentRequests() throws Exception {
+        Set<String> inFlight = ConcurrentHashMap.newKeySet();
+        Map<String, Integer> applied = new ConcurrentHashMap<>();
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        // Completes bulk requests out of order, applying their writes when they complete
+        BiConsumer<BulkRequest, ActionListener<BulkResponse>> consumer = (request, listener) -> {
+            Set<String> ids = request.requests().stream().map(DocWriteRequest::id).collect(Collectors.toSet());
+            for (String id : ids) {
+                if (!inFlight.add(id)) {
+                    violations.add("document " + id + " sent while an earlier write of it was in flight");
+                }
+            }
+            new Thread(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextInt(20)));
+                for (DocWriteRequest<?> write : request.requests()) {
+                    int sequence = (Integer) ((IndexRequest) write).sourceAsMap().get("sequence");
+                    Integer previous = applied.put(write.id(), sequence);
+                    if (previous != null && previous > sequence) {
+                        violations.add("document " + write.id() + " went back from " + previous + " to " + sequence);
+                    }
+                }
+                inFlight.removeAll(ids);
+                respond(request, listener);
+            }).start();
+        };
+
+        List<CompletableFuture<IndexResponse>> writes = new ArrayList<>();
+        try (WriteBehindBuffer buffer = new WriteBehindBuffer(consumer, 1000,
+                new BulkSettings(5, 1024 * 1024, 5, 4), 1000)) {
+            for (int sequence = 0; sequence < 100; sequence++) {
+                for (int doc = 0; doc < 3; doc++) {
+                    writes.add(buffer.add(new IndexRequest("index").id("doc" + doc)
+                            .source("{\"sequence\":" + sequence + "}", XContentType.JSON)));
+                }
+                if (sequence % 10 == 0) {
+                    buffer.flush();
+                }
+            }
+        }
+
+        for (CompletableFuture<IndexResponse> write : writes) {
+            write.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of(), violations);
+        assertEquals(Map.of("doc0", 99, "doc1", 99, "doc2", 99), applied);
+    }
+
+    @Test
+    void testFlushIntervalIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindBuffer(this::respond, 100,
+                new BulkSettings(1000, 1024 * 1024, 0, 1), 1000));
+    }
+}
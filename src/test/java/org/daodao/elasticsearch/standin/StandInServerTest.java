@@ -0,0 +1,272 @@
+package org.daodao.elasticsearch.standin;
+
+import org.daodao.elasticsearch.config.ElasticsearchClientConfig;
+import org.daodao.elasticsearch.metrics.ClientMetrics;
+import org.daodao.elasticsearch.model.SampleData;
+import org.daodao.elasticsearch.service.BulkIngester;
+import org.daodao.elasticsearch.service.BulkResult;
+import org.daodao.elasticsearch.service.BulkSettings;
+import org.daodao.elasticsearch.service.DocumentIterator;
+import org.daodao.elasticsearch.service.ElasticsearchService;
+import org.daodao.elasticsearch.service.RetrySettings;
+import org.daodao.elasticsearch.util.Constants;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of StandInServer through ElasticsearchService, no cluster required
+ */
+class StandInServerTest {
+
+    private static final String INDEX = "stand_in_test";
+    private static final String CLIENT = "stand_in";
+    private static final String HOSTS = "elasticsearch." + CLIENT + ".hosts";
+    private static final String CIRCUIT_BREAKER_THRESHOLD = "elasticsearch." + CLIENT + ".circuitBreakerThreshold";
+
+    private static StandInServer server;
+    private ElasticsearchService service;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = new StandInServer();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // A client of its own, whatever other tests left the default client connected to
+        System.setProperty(HOSTS, server.getHostAndPort());
+        System.setProperty(CIRCUIT_BREAKER_THRESHOLD, "0");
+        service = new ElasticsearchService(CLIENT);
+        service.createIndex(INDEX);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+        System.clearProperty(HOSTS);
+        System.clearProperty(CIRCUIT_BREAKER_THRESHOLD);
+        server.setFaults(new FaultSettings());
+        server.clear();
+    }
+
+    @Test
+    void testDocumentLifecycle() throws IOException {
+        assertTrue(service.indexExists(INDEX));
+        assertFalse(service.indexExists("missing_index"));
+
+        String id = service.insertDocument(INDEX, new SampleData("alpha", "First item"));
+        assertEquals("alpha", service.getDocument(INDEX, id).getName());
+
+        assertTrue(service.updateDocument(INDEX, id, new SampleData("alpha", "Changed item")));
+        assertEquals("Changed item", service.getDocument(INDEX, id).getDescription());
+
+        assertTrue(service.deleteDocument(INDEX, id));
+        assertNull(service.getDocument(INDEX, id));
+        assertFalse(service.deleteDocument(INDEX, id));
+
+        service.deleteIndex(INDEX);
+        assertFalse(service.indexExists(INDEX));
+    }
+
+    @Test
+    void testSearches() throws IOException {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        service.insertDocument(INDEX, new SampleData("1", "alpha one", "First item", start));
+        service.insertDocument(INDEX, new SampleData("2", "alpha two", "Second item", start.plusDays(1)));
+        service.insertDocument(INDEX, new SampleData("3", "bravo", "Third item", start.plusDays(2)));
+
+        assertEquals(3, service.getDocumentCount(INDEX));
+        assertEquals(2, service.searchDocumentsByName(INDEX, "alpha").size());
+        assertEquals(List.of("bravo"), names(service.searchDocumentsByWildcard(INDEX, Constants.FIELD_NAME, "br*")));
+        assertEquals(List.of("alpha two", "bravo"), names(service.searchDocumentsByDateRange(INDEX,
+                Constants.FIELD_TIMESTAMP, start.plusDays(1), start.plusDays(5))));
+        assertEquals(List.of("bravo", "alpha two"), names(service.searchDocumentsWithSorting(INDEX,
+                Constants.FIELD_TIMESTAMP, SortOrder.DESC, 2)));
+    }
+
+    @Test
+    void testBulkAndMultiGet() throws IOException {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            documents.add(new SampleData("bulk-" + i, "item-" + i, "Bulk item " + i, LocalDateTime.now()));
+        }
+        BulkResult result = service.insertDocuments(INDEX, documents);
+        assertFalse(result.hasFailures());
+        assertEquals(50, service.getDocumentCount(INDEX));
+
+        Map<String, SampleData> found = service.getDocuments(INDEX, List.of("bulk-7", "missing", "bulk-3"));
+        assertEquals(2, found.size());
+        assertEquals("item-7", found.get("bulk-7").getName());
+    }
+
+    @Test
+    void testPagingThroughAPointInTime() throws Exception {
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(new SampleData("page-" + i, "item-" + i, "Paged item " + i, LocalDateTime.now()));
+        }
+        service.insertDocuments(INDEX, documents);
+
+        try (Stream<SampleData> stream = service.streamAllDocuments(INDEX, 10)) {
+            Set<String> ids = stream.map(SampleData::getId).collect(Collectors.toSet());
+            assertEquals(25, ids.size(), "Every document should be streamed exactly once");
+        }
+
+        try (DocumentIterator iterator = service.iterateAllDocuments(INDEX, 10)) {
+            List<String> ids = new ArrayList<>();
+            ids.add(iterator.next().getId());
+            // The point in time keeps paging over the documents as they were when it was opened
+            service.insertDocument(INDEX, new SampleData("page-late", "late", "Written while paging", LocalDateTime.now()));
+            iterator.forEachRemaining(document -> ids.add(document.getId()));
+            assertEquals(25, ids.size());
+            assertEquals(ids.stream().sorted(Comparator.comparingInt(id -> Integer.parseInt(id.substring(5)))).toList(), ids);
+            assertEquals(3, iterator.getPageCount());
+        }
+
+        assertEquals(26, service.getAllDocuments(INDEX).size());
+        assertEquals(0, server.getOpenPointInTimeCount(), "Every point in time should be closed");
+
+        assertEquals(26, service.getAllDocumentsAsync(INDEX).get().size());
+        // The asynchronous variant does not wait for the point in time to be closed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getOpenPointInTimeCount() > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getOpenPointInTimeCount());
+    }
+
+    @Test
+    void testRejectedBulkItemsAreRetried() throws IOException {
+        service.enableRetries(new RetrySettings(10, 1, 5));
+        server.setFaults(new FaultSettings(0, 0, 0, 0.2, 0));
+        List<SampleData> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            documents.add(new SampleData("retry-" + i, "item-" + i, "Retried item " + i, LocalDateTime.now()));
+        }
+
+        BulkResult result = service.insertDocuments(INDEX, documents);
+
+        assertFalse(result.hasFailures(), result.toString());
+        assertTrue(server.getRejectedCount() > 0);
+        server.setFaults(new FaultSettings());
+        assertEquals(100, service.getDocumentCount(INDEX));
+    }
+
+    @Test
+    void testIngesterResendsRejectedItemsWithoutRetries() throws IOException {
+        // No enableRetries(): the ingester backs off and resends the rejected items itself
+        server.setFaults(new FaultSettings(0, 0, 0, 0.2, 0));
+        BulkIngester ingester = service.createBulkIngester(INDEX, new BulkSettings(20, 5L * 1024 * 1024, 0, 1), null);
+        for (int i = 0; i < 100; i++) {
+            ingester.add(new SampleData("ingest-" + i, "item-" + i, "Ingested item " + i, LocalDateTime.now()));
+        }
+        ingester.close();
+
+        assertEquals(100, ingester.getIndexedCount());
+        assertEquals(0, ingester.getFailedCount());
+        assertTrue(server.getRejectedCount() > 0);
+        server.setFaults(new FaultSettings());
+        assertEquals(100, service.getDocumentCount(INDEX));
+    }
+
+    @Test
+    void testInjectedFaults() throws IOException {
+        String id = service.insertDocument(INDEX, new SampleData("slow", "Slow item"));
+
+        server.setFaults(new FaultSettings(50, 0, 0, 0, 0));
+        long start = System.nanoTime();
+        assertNotNull(service.getDocument(INDEX, id));
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+
+        server.setFaults(new FaultSettings(0, 0, 1, 0, 0));
+        ElasticsearchStatusException failure = assertThrows(ElasticsearchStatusException.class,
+                () -> service.getDocument(INDEX, id));
+        assertEquals(RestStatus.SERVICE_UNAVAILABLE, failure.status());
+
+        server.setFaults(new FaultSettings(0, 0, 0, 1, 0));
+        ElasticsearchStatusException rejection = assertThrows(ElasticsearchStatusException.class,
+                () -> service.getDocument(INDEX, id));
+        assertEquals(RestStatus.TOO_MANY_REQUESTS, rejection.status());
+    }
+
+    @Test
+    void testServicesShareOneClient() throws IOException {
+        String id = service.insertDocument(INDEX, new SampleData("shared", "Shared item"));
+        ElasticsearchService other = new ElasticsearchService(CLIENT);
+        other.close();
+
+        // The first service still holds the client, so its connections stay open
+        assertNotNull(service.getDocument(INDEX, id));
+    }
+
+    @Test
+    void testServiceClosesAfterAllClientsWereClosed() throws IOException {
+        // At shutdown every client is closed first, then whatever services are still open
+        ElasticsearchClientConfig.closeAllClients();
+        assertDoesNotThrow(service::close);
+
+        // The next service gets a new client
+        service = new ElasticsearchService(CLIENT);
+        assertTrue(service.indexExists(INDEX));
+    }
+
+    @Test
+    void testCloseDrainsRequestsInFlight() throws Exception {
+        String id = service.insertDocument(INDEX, new SampleData("draining", "Draining item"));
+        server.setFaults(new FaultSettings(200, 0, 0, 0, 0));
+        CompletableFuture<SampleData> pending = service.getDocumentAsync(INDEX, id);
+
+        service.close();
+
+        assertTrue(pending.isDone(), "close should wait for the request in flight");
+        assertEquals("draining", pending.get().getName());
+    }
+
+    @Test
+    void testMetricsOnlySeeTheirOwnClient() throws IOException {
+        ClientMetrics metrics = new ClientMetrics();
+        service.enableMetrics(metrics);
+        String other = CLIENT + "_other";
+        System.setProperty("elasticsearch." + other + ".hosts", server.getHostAndPort());
+        ElasticsearchService otherService = new ElasticsearchService(other);
+        try {
+            otherService.insertDocument(INDEX, new SampleData("other", "Other item"));
+            assertTrue(metrics.getTraffic().isEmpty(), metrics.getTraffic().toString());
+
+            service.getDocument(INDEX, "other");
+            assertEquals(1, metrics.getTraffic().get("get").getExchanges());
+        } finally {
+            otherService.close();
+            System.clearProperty("elasticsearch." + other + ".hosts");
+        }
+    }
+
+    private static List<String> names(List<SampleData> documents) {
+        return documents.stream().map(SampleData::getName).collect(Collectors.toList());
+    }
+}